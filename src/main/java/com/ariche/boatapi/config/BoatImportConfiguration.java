@@ -0,0 +1,33 @@
+package com.ariche.boatapi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class BoatImportConfiguration {
+
+    /**
+     * Executor running the imports of boats. Each import holds a connection for its whole duration:
+     * imports are rejected once the queue is full rather than exhausting the pool.
+     * @param threads the number of imports run in parallel
+     * @param queueSize the number of imports waiting to be run
+     * @return the executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService importExecutor(@Value("${boats.import.threads:1}") int threads,
+                                          @Value("${boats.import.queue-size:4}") int queueSize) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads,
+            60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            runnable -> new Thread(runnable, "boat-import-%d".formatted(counter.incrementAndGet())),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+}
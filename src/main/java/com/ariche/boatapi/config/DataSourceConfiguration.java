@@ -0,0 +1,96 @@
+package com.ariche.boatapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read replicas, serving the read-only transactions. Without replica, the data source of Spring Boot is used as is.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnExpression("!'${datasource.replicas.urls:}'.isBlank()")
+public class DataSourceConfiguration {
+
+    /**
+     * Pool of the primary, configured by the spring.datasource.hikari properties as the data source of Spring Boot
+     * @param properties the properties of the primary
+     * @return the pool of the primary
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        final HikariDataSource primary = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return primary;
+    }
+
+    /**
+     * Data source routing between the primary and the replicas, each with its own pool
+     * @param primary the pool of the primary
+     * @param properties the properties of the primary, the replicas sharing its credentials
+     * @param urls the JDBC URLs of the replicas
+     * @param poolSize the maximum number of connections to each replica
+     * @param maxLag the maximum lag of a replica serving reads
+     * @param stickyWindow the time the reads of a user go to the primary once a write of theirs is committed
+     * @return the routing data source
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primary,
+                                                             DataSourceProperties properties,
+                                                             @Value("${datasource.replicas.urls}") List<String> urls,
+                                                             @Value("${datasource.replicas.pool-size:10}") int poolSize,
+                                                             @Value("${datasource.replicas.max-lag:PT5S}") Duration maxLag,
+                                                             @Value("${datasource.replicas.sticky-window:PT5S}") Duration stickyWindow) {
+        final Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            final String name = "replica-%d".formatted(i + 1);
+            final HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            replicas.put(name, replica);
+        }
+        log.info("DataSource: routing read-only transactions to {} replica(s)", replicas.size());
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag, stickyWindow, DataSourceConfiguration::currentUser);
+    }
+
+    /**
+     * Data source injected in JPA and the JDBC templates. Connections are only picked on the first statement,
+     * once the transaction is flagged read-only or not
+     * @param replicaRoutingDataSource the routing data source
+     * @return the data source to be used
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    private static String currentUser() {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return Objects.isNull(authentication) ? null : authentication.getName();
+    }
+}
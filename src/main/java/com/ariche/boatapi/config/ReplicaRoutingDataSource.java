@@ -0,0 +1,217 @@
+package com.ariche.boatapi.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Route the connections of the read-only transactions to the read replicas, in turn, and all others to the primary.
+ * A replica lagging behind or not answering is skipped until it catches up, reads going to the primary when no
+ * replica is left. The reads of a user who just committed a write go to the primary for a while, so that users
+ * read their own writes, including the reads run on their behalf by another thread. To be wrapped in a lazy proxy:
+ * the connection must be picked once the transaction is flagged read-only.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    static final String PRIMARY = "primary";
+    // 0 when the replica has replayed all it received, or when it is not a replica
+    static final String LAG_QUERY = """
+            SELECT CASE WHEN PG_LAST_WAL_RECEIVE_LSN() = PG_LAST_WAL_REPLAY_LSN() THEN 0
+            ELSE COALESCE(EXTRACT(EPOCH FROM NOW() - PG_LAST_XACT_REPLAY_TIMESTAMP()), 0) END
+            """;
+
+    // users the reads of the current thread are run for, besides the current user
+    private static final ThreadLocal<Collection<String>> READERS = new ThreadLocal<>();
+    // set while the reads of the current thread must see all the committed writes
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final Duration maxLag;
+    private final Supplier<String> currentUser;
+    private final Cache<String, Boolean> recentWriters;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private volatile List<String> availableReplicas = Collections.emptyList();
+
+    /**
+     * @param primary the primary, serving the writes
+     * @param replicas the replicas by name, serving the read-only transactions
+     * @param maxLag the maximum lag of a replica serving reads
+     * @param stickyWindow the time the reads of a user go to the primary once a write of theirs is committed
+     * @param currentUser the supplier of the name of the current user, null when anonymous
+     */
+    public ReplicaRoutingDataSource(final DataSource primary,
+                                    final Map<String, DataSource> replicas,
+                                    final Duration maxLag,
+                                    final Duration stickyWindow,
+                                    final Supplier<String> currentUser) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLag = maxLag;
+        this.currentUser = currentUser;
+        this.recentWriters = Caffeine.newBuilder()
+            .expireAfterWrite(stickyWindow)
+            .maximumSize(100_000)
+            .build();
+
+        final Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                rememberWriterAfterCommit();
+            }
+            return PRIMARY;
+        }
+
+        if (Objects.nonNull(PRIMARY_READS.get())
+            || isRecentWriter(currentUser.get()) || readers().stream().anyMatch(this::isRecentWriter)) {
+            return PRIMARY;
+        }
+        final List<String> available = availableReplicas;
+        if (available.isEmpty()) {
+            return PRIMARY;
+        }
+        return available.get(Math.floorMod(counter.getAndIncrement(), available.size()));
+    }
+
+    /**
+     * Run reads on behalf of several users, such as a query shared by their requests: they go to the primary
+     * whenever one of the users just committed a write
+     * @param users the names of the users, null for the anonymous ones
+     * @param reads the reads, run on the current thread
+     * @return the result of the reads
+     * @param <T> the type of the result
+     */
+    public static <T> T readFor(final Collection<String> users,
+                                final Supplier<T> reads) {
+        final Collection<String> previous = READERS.get();
+        READERS.set(users);
+        try {
+            return reads.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                READERS.remove();
+            } else {
+                READERS.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Run reads on the primary, such as those kept in memory and shared by all users: a replica could still
+     * serve the state preceding a committed write
+     * @param reads the reads, run on the current thread
+     * @return the result of the reads
+     * @param <T> the type of the result
+     */
+    public static <T> T readFromPrimary(final Supplier<T> reads) {
+        final Boolean previous = PRIMARY_READS.get();
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+
+    private static Collection<String> readers() {
+        return Objects.requireNonNullElse(READERS.get(), Collections.emptyList());
+    }
+
+    private boolean isRecentWriter(final String user) {
+        return Objects.nonNull(user) && Objects.nonNull(recentWriters.getIfPresent(user));
+    }
+
+    private void rememberWriterAfterCommit() {
+        final String user = currentUser.get();
+        if (Objects.isNull(user)) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentWriters.put(user, Boolean.TRUE);
+            }
+        });
+    }
+
+    /**
+     * Measure the lag of the replicas, keeping those close enough to the primary
+     */
+    @Scheduled(fixedDelayString = "${datasource.replicas.check-interval:PT5S}")
+    public void checkReplicas() {
+        final List<String> available = new ArrayList<>();
+        replicas.forEach((name, replica) -> {
+            try {
+                final Duration lag = measureLag(replica);
+                if (lag.compareTo(maxLag) <= 0) {
+                    available.add(name);
+                } else {
+                    log.warn("Replica '{}' lagging behind ({}), reads go to the other ones", name, lag);
+                }
+            } catch (SQLException e) {
+                log.warn("Replica '{}' unavailable, reads go to the other ones: {}", name, e.getMessage());
+            }
+        });
+        availableReplicas = List.copyOf(available);
+    }
+
+    static Duration measureLag(final DataSource replica) throws SQLException {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+            if (!resultSet.next()) {
+                throw new SQLException("No lag returned");
+            }
+            return Duration.ofMillis(Math.round(resultSet.getDouble(1) * 1_000));
+        }
+    }
+
+    List<String> getAvailableReplicas() {
+        return availableReplicas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final DataSource replica : replicas.values()) {
+            if (replica instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -38,7 +38,7 @@ public class SecurityConfiguration {
             .csrf(AbstractHttpConfigurer::disable) // FIXME: DISABLED FOR LOCAL POSTMAN
             .authorizeHttpRequests(authorize -> authorize
                 .requestMatchers(HttpMethod.POST, "/auth/token").permitAll()
-                .requestMatchers(HttpMethod.GET, "/v3/api-docs/**", "/swagger-ui/**", "/actuator/**", "/favicon.ico").permitAll()
+                .requestMatchers(HttpMethod.GET, "/v3/api-docs/**", "/swagger-ui/**", "/actuator/health/**", "/favicon.ico").permitAll()
                 .requestMatchers(HttpMethod.GET, API_PATH).hasAnyAuthority(CAuthorityNames.ROLE_USER, CAuthorityNames.ROLE_ADMIN)
                 .requestMatchers(HttpMethod.POST, API_PATH).hasAuthority(CAuthorityNames.ROLE_ADMIN)
                 .requestMatchers(HttpMethod.PUT, API_PATH).hasAuthority(CAuthorityNames.ROLE_ADMIN)
@@ -1,6 +1,8 @@
 package com.ariche.boatapi.config;
 
+import com.ariche.boatapi.service.storage.CachingStorageService;
 import com.ariche.boatapi.service.storage.CloudStorageService;
+import com.ariche.boatapi.service.storage.DiskCacheStorageService;
 import com.ariche.boatapi.service.storage.LocalStorageService;
 import com.ariche.boatapi.service.storage.StorageException;
 import com.ariche.boatapi.service.storage.StorageService;
@@ -11,17 +13,35 @@ import com.ibm.cloud.objectstorage.client.builder.AwsClientBuilder;
 import com.ibm.cloud.objectstorage.oauth.BasicIBMOAuthCredentials;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3ClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Configuration
 public class StorageConfiguration {
 
+    static final String STORAGE_BACKEND = "storageBackend";
+
     @Bean
+    @Qualifier(STORAGE_BACKEND)
     @Profile({"local"})
     public StorageService localStorageService(@Value("${io.path.storage}") String ioStorageFolderPath) {
         log.info("StorageService: init LocalStorageService");
@@ -29,17 +49,100 @@ public class StorageConfiguration {
     }
 
     @Bean
+    @Qualifier(STORAGE_BACKEND)
     @Profile({"!local"})
-    public StorageService cloudCOSClient(@Value("${cos.endpoint:}") String endpoint,
-                                         @Value("${cos.location:}") String location,
-                                         @Value("${cos.timeout:30000}") int timeout,
-                                         @Value("${cos.bucket-name:}") String bucketName,
-                                         @Value("${cos.endpoint-IAM:}") String endpointIAM,
-                                         @Value("${cos.credentials.api-key:}") String apiKey,
-                                         @Value("${cos.credentials.resource-id:}") String resourceId) throws StorageException {
+    public CloudStorageService cloudCOSClient(@Value("${cos.endpoint:}") String endpoint,
+                                              @Value("${cos.location:}") String location,
+                                              @Value("${cos.timeout:30000}") int timeout,
+                                              @Value("${cos.bucket-name:}") String bucketName,
+                                              @Value("${cos.endpoint-IAM:}") String endpointIAM,
+                                              @Value("${cos.credentials.api-key:}") String apiKey,
+                                              @Value("${cos.credentials.resource-id:}") String resourceId,
+                                              @Qualifier("cosUploadExecutor") ExecutorService uploadExecutor,
+                                              @Value("${cos.multipart.threshold:16MB}") DataSize multipartThreshold,
+                                              @Value("${cos.multipart.part-size:8MB}") DataSize partSize,
+                                              @Value("${cos.multipart.abandoned-after:P1D}") Duration abandonedAfter,
+                                              MeterRegistry meterRegistry) throws StorageException {
         log.info("StorageService: init CloudStorageService");
         final AmazonS3 amazonS3 = buildClient(endpoint, location, endpointIAM, apiKey, resourceId, timeout);
-        return new CloudStorageService(amazonS3, bucketName);
+        final CloudStorageService.MultipartSettings multipartSettings = new CloudStorageService.MultipartSettings(
+            multipartThreshold.toBytes(), partSize.toBytes(), abandonedAfter);
+        return new CloudStorageService(amazonS3, bucketName, uploadExecutor, multipartSettings, meterRegistry);
+    }
+
+    /**
+     * Local folder caching the files of the COS, enabled by its path. A bean of its own, as the COS storage
+     * it wraps, so that both run their scheduled cleanups
+     * @param cloudStorageService the storage actually holding the files
+     * @param diskCachePath the folder caching the files
+     * @param diskCacheMaxSize the maximum total size of the cached files
+     * @param diskCacheDeletionDelay the time a dropped file is kept once no longer read
+     * @param meterRegistry the registry exporting the cache metrics
+     * @return the disk cache
+     */
+    @Bean
+    @Profile({"!local"})
+    @ConditionalOnExpression("!'${storage.disk-cache.path:}'.isBlank()")
+    public DiskCacheStorageService diskCacheStorageService(@Qualifier(STORAGE_BACKEND) CloudStorageService cloudStorageService,
+                                                           @Value("${storage.disk-cache.path}") String diskCachePath,
+                                                           @Value("${storage.disk-cache.max-size:10GB}") DataSize diskCacheMaxSize,
+                                                           @Value("${storage.disk-cache.deletion-delay:PT1M}") Duration diskCacheDeletionDelay,
+                                                           MeterRegistry meterRegistry) {
+        log.info("StorageService: init DiskCacheStorageService in '{}' ({})", diskCachePath, diskCacheMaxSize);
+        return new DiskCacheStorageService(cloudStorageService, Path.of(diskCachePath), diskCacheMaxSize.toBytes(),
+            diskCacheDeletionDelay, meterRegistry);
+    }
+
+    /**
+     * Storage injected in the services: the disk cache when enabled, otherwise the backend picked above,
+     * decorated with an in-memory cache. The cache is not enabled in front of the local storage or of the disk cache:
+     * their files are served from the local disk, and so never kept in memory
+     * @param backend the storage actually holding the files
+     * @param diskCache the disk cache in front of the backend, when enabled
+     * @param maxSize the maximum total size of the cached files, 0 to disable the cache
+     * @param maxEntrySize the maximum size of a cached file
+     * @param meterRegistry the registry exporting the cache metrics
+     * @return the storage to be used
+     */
+    @Bean
+    @Primary
+    public StorageService storageService(@Qualifier(STORAGE_BACKEND) StorageService backend,
+                                         ObjectProvider<DiskCacheStorageService> diskCache,
+                                         @Value("${storage.cache.max-size:64MB}") DataSize maxSize,
+                                         @Value("${storage.cache.max-entry-size:4MB}") DataSize maxEntrySize,
+                                         MeterRegistry meterRegistry) {
+        final DiskCacheStorageService diskCacheStorageService = diskCache.getIfAvailable();
+        if (Objects.nonNull(diskCacheStorageService)) {
+            log.info("StorageService: cache disabled, files are served from the disk cache");
+            return diskCacheStorageService;
+        }
+        if (maxSize.toBytes() <= 0) {
+            log.info("StorageService: cache disabled");
+            return backend;
+        }
+        if (backend instanceof LocalStorageService) {
+            log.info("StorageService: cache disabled, files are served from the local disk");
+            return backend;
+        }
+        log.info("StorageService: init CachingStorageService ({})", maxSize);
+        return new CachingStorageService(backend, maxSize.toBytes(), maxEntrySize.toBytes(), meterRegistry);
+    }
+
+    /**
+     * Executor uploading the parts of the multipart uploads. Its queue is bounded, and the caller uploads
+     * the part itself once the queue is full, so that the parts buffered in memory stay bounded.
+     * @param threads the number of parts uploaded in parallel
+     * @return the executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Profile({"!local"})
+    public ExecutorService cosUploadExecutor(@Value("${cos.multipart.threads:4}") int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads,
+            60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads),
+            runnable -> new Thread(runnable, "cos-upload-%d".formatted(counter.incrementAndGet())),
+            new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
     protected AmazonS3 buildClient(final String endpoint,
@@ -24,7 +24,7 @@ public class SwaggerConfiguration {
             .group("Boat")
             .packagesToScan("com.ariche.boatapi")
             .addOpenApiCustomizer(boatApiCustomizer())
-            .pathsToMatch("/api/v1/boats/**")
+            .pathsToMatch("/api/v1/boats/**", "/api/v1/boats:*")
             .build();
     }
 
@@ -0,0 +1,33 @@
+package com.ariche.boatapi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ThumbnailConfiguration {
+
+    /**
+     * Executor generating the thumbnails. Its queue is bounded, as each task holds an image in memory:
+     * tasks are rejected once it is full.
+     * @param threads the number of images processed in parallel
+     * @param queueSize the number of images waiting to be processed
+     * @return the executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService thumbnailExecutor(@Value("${storage.thumbnails.threads:2}") int threads,
+                                             @Value("${storage.thumbnails.queue-size:16}") int queueSize) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads,
+            60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            runnable -> new Thread(runnable, "thumbnail-%d".formatted(counter.incrementAndGet())),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+}
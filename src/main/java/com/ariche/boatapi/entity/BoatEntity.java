@@ -6,6 +6,8 @@ import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Instant;
+
 @Getter
 @Setter
 @Entity(name = "BoatEntity")
@@ -14,7 +16,9 @@ public class BoatEntity {
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "boat_sequence")
-    @SequenceGenerator(name = "boat_sequence", sequenceName = "boat_sequence", allocationSize = 1, initialValue = 1)
+    // ids are allocated by blocks, matching the increment of the sequence. Each value of the sequence is the first id
+    // of its block (hibernate.id.optimizer.pooled.preferred: pooled-lo), so that a fresh sequence gives positive ids
+    @SequenceGenerator(name = "boat_sequence", sequenceName = "boat_sequence", allocationSize = 50, initialValue = 10)
     private Long id;
 
     @NotBlank(message = "{boat.validation.error.name.blank}")
@@ -29,4 +33,17 @@ public class BoatEntity {
     @Column(name = "img_name", nullable = true, length = 255)
     private String imgName;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "img_etag", nullable = true, length = 64)
+    private String imgEtag;
+
+    @Column(name = "img_updated_at", nullable = true)
+    private Instant imgUpdatedAt;
+
+    @Column(name = "img_blob_hash", nullable = true, length = 64)
+    private String imgBlobHash;
+
 }
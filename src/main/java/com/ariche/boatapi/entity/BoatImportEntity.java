@@ -0,0 +1,46 @@
+package com.ariche.boatapi.entity;
+
+import com.ariche.boatapi.service.importmanager.dto.EImportStatus;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Entity(name = "BoatImportEntity")
+@Table(name = "boat_imports", schema = "public")
+public class BoatImportEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "boat_import_sequence")
+    @SequenceGenerator(name = "boat_import_sequence", sequenceName = "boat_import_sequence", allocationSize = 1, initialValue = 1)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private EImportStatus status;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "copied_rows", nullable = true)
+    private Long copiedRows;
+
+    @Column(name = "rejected_rows", nullable = true)
+    private Long rejectedRows;
+
+    @Column(name = "imported_rows", nullable = true)
+    private Long importedRows;
+
+    @Column(name = "error", length = 1000, nullable = true)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+}
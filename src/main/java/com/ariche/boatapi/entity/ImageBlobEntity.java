@@ -0,0 +1,34 @@
+package com.ariche.boatapi.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Entity(name = "ImageBlobEntity")
+@Table(name = "image_blobs", schema = "public")
+public class ImageBlobEntity {
+
+    @Id
+    @Column(name = "hash", length = 64, nullable = false)
+    private String hash;
+
+    @Column(name = "mime_type", length = 100, nullable = false)
+    private String mimeType;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "unreferenced_at", nullable = true)
+    private Instant unreferencedAt;
+
+}
@@ -0,0 +1,46 @@
+package com.ariche.boatapi.entity;
+
+import com.ariche.boatapi.service.outboxmanager.dto.EStorageAction;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Entity(name = "StorageOutboxEntity")
+@Table(name = "storage_outbox", schema = "public")
+public class StorageOutboxEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "storage_outbox_sequence")
+    @SequenceGenerator(name = "storage_outbox_sequence", sequenceName = "storage_outbox_sequence", allocationSize = 1, initialValue = 1)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "action", length = 20, nullable = false)
+    private EStorageAction action;
+
+    @Column(name = "file_name", length = 255, nullable = true)
+    private String fileName;
+
+    @Column(name = "folder", length = 255, nullable = false)
+    private String folder;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000, nullable = true)
+    private String lastError;
+
+    @Column(name = "claimed_until", nullable = true)
+    private Instant claimedUntil;
+
+}
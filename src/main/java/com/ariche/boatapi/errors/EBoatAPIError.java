@@ -11,6 +11,7 @@ public enum EBoatAPIError {
     INTERNAL_ERROR("Internal error", HttpStatus.INTERNAL_SERVER_ERROR),
     TECHNICAL_ERROR("Technical error", HttpStatus.INTERNAL_SERVER_ERROR),
     NOT_FOUND_ERROR("Resource not found", HttpStatus.NOT_FOUND),
+    PRECONDITION_FAILED_ERROR("Precondition failed", HttpStatus.PRECONDITION_FAILED),
     UNAUTHORIZED_ERROR("Unauthorized", HttpStatus.UNAUTHORIZED);
 
     private final String category;
@@ -0,0 +1,9 @@
+package com.ariche.boatapi.repository;
+
+import com.ariche.boatapi.entity.BoatImportEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BoatImportRepository extends JpaRepository<BoatImportEntity, Long> {
+}
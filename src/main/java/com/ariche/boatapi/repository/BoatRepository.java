@@ -2,38 +2,309 @@ package com.ariche.boatapi.repository;
 
 import com.ariche.boatapi.entity.BoatEntity;
 import com.ariche.boatapi.repository.customset.IBoatImgSet;
+import com.ariche.boatapi.repository.customset.IBoatNameSet;
+import com.ariche.boatapi.repository.customset.IBoatSearchSet;
+import com.ariche.boatapi.repository.customset.IBoatSet;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+// as the inherited methods: queries run in read-only transactions, served by the read replicas if any
 @Repository
+@Transactional(readOnly = true)
 public interface BoatRepository extends JpaRepository<BoatEntity, Long> {
 
+    /**
+     * Find a page of boats without counting them: one more boat is fetched to tell whether a next page exists
+     * @param pageable the pageable to paginate and sort boats
+     * @return the slice of boats
+     */
+    Slice<BoatEntity> findSliceBy(final Pageable pageable);
+
+    /**
+     * Estimate the number of boats from the statistics of the planner, refreshed by (auto)vacuum and analyze
+     * @return the estimated number of boats, negative if the table has never been analyzed
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT CAST(RELTUPLES AS BIGINT) FROM PG_CLASS
+                WHERE OID = CAST('public.boats' AS REGCLASS)
+                """
+    )
+    long estimateBoatCount();
+
+    @Transactional
+    @Modifying
     @Query(
         nativeQuery = true,
-        value = "SELECT IMG_NAME FROM BOATS B WHERE B.ID = :id"
+        value = """
+                UPDATE BOATS SET IMG_NAME = :imgName,
+                IMG_ETAG = :imgEtag,
+                IMG_UPDATED_AT = CURRENT_TIMESTAMP,
+                IMG_BLOB_HASH = :imgBlobHash,
+                IMG_THUMBNAILS_ETAG = NULL
+                WHERE ID = :boatId
+                """
     )
-    Optional<String> fetchImgNameById(@Param("id") final Long boatId);
+    void updateImgByBoatId(@Param("boatId") final Long boatId,
+                           @Param("imgName") final String imgName,
+                           @Param("imgEtag") final String imgEtag,
+                           @Param("imgBlobHash") final String imgBlobHash);
 
+    /**
+     * Record that the thumbnails of the image have been generated, unless the image has been replaced meanwhile
+     * @param boatId the boat id
+     * @param imgEtag the ETag of the image the thumbnails were generated from
+     * @return the number of updated boats, 0 if the image has been replaced
+     */
+    @Transactional
     @Modifying
     @Query(
         nativeQuery = true,
-        value = "UPDATE BOATS SET IMG_NAME = :imgName WHERE ID = :boatId"
+        value = """
+                UPDATE BOATS SET IMG_THUMBNAILS_ETAG = :imgEtag
+                WHERE ID = :boatId AND IMG_ETAG = :imgEtag
+                """
     )
-    void updateImgNameByBoatId(@Param("boatId") final Long boatId,
-                               @Param("imgName") final String imgName);
+    int updateImgThumbnailsByBoatId(@Param("boatId") final Long boatId,
+                                    @Param("imgEtag") final String imgEtag);
 
     @Query(
         nativeQuery = true,
         value = """
                 SELECT IMG_NAME as imgName,
+                IMG_ETAG as imgEtag,
+                IMG_UPDATED_AT as imgUpdatedAt,
+                IMG_BLOB_HASH as imgBlobHash,
+                IMG_THUMBNAILS_ETAG as imgThumbnailsEtag,
                 ID as id
                 FROM BOATS WHERE ID = :boatId
                 """
     )
     Optional<IBoatImgSet> findBoatImgById(@Param("boatId") final Long boatId);
+
+    /**
+     * Find boats by ids in a single query, whatever their number
+     * @param ids the ids of the boats
+     * @return the boats found, in no particular order
+     */
+    default List<IBoatSet> findBoatsByIds(final Collection<Long> ids) {
+        return findBoatsByIdArray(ids.toArray(Long[]::new));
+    }
+
+    /**
+     * Find boats by ids. The ids are bound as a single array, so that the statement is the same whatever their number
+     * @param ids the ids of the boats, bound as a BIGINT[]
+     * @return the boats found, in no particular order
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT ID as id, NAME as name, DESCRIPTION as description, VERSION as version
+                FROM BOATS
+                WHERE ID = ANY(:ids)
+                """
+    )
+    List<IBoatSet> findBoatsByIdArray(@Param("ids") final Long[] ids);
+
+    /**
+     * Update the name and description of a boat in a single statement, without loading it.
+     * Not {@link org.springframework.data.jpa.repository.Modifying}, which can not return the updated row: no boat entity
+     * is to be loaded in the updating transaction
+     * @param boatId the boat id
+     * @param name the new name
+     * @param description the new description
+     * @return the updated boat, empty if it can not be found
+     */
+    @Transactional
+    @Query(
+        nativeQuery = true,
+        value = """
+                UPDATE BOATS SET NAME = :name,
+                DESCRIPTION = :description,
+                VERSION = VERSION + 1
+                WHERE ID = :boatId
+                RETURNING ID as id, NAME as name, DESCRIPTION as description, VERSION as version
+                """
+    )
+    Optional<IBoatSet> updateBoatById(@Param("boatId") final Long boatId,
+                                      @Param("name") final String name,
+                                      @Param("description") final String description);
+
+    /**
+     * Update the name and description of a boat in a single statement, unless it was updated since it was read.
+     * Concurrent updates wait for the row lock, then find the version changed
+     * @param boatId the boat id
+     * @param name the new name
+     * @param description the new description
+     * @param expectedVersion the version of the boat the update is based on
+     * @return the updated boat, empty if it can not be found or its version differs
+     */
+    @Transactional
+    @Query(
+        nativeQuery = true,
+        value = """
+                UPDATE BOATS SET NAME = :name,
+                DESCRIPTION = :description,
+                VERSION = VERSION + 1
+                WHERE ID = :boatId AND VERSION = :expectedVersion
+                RETURNING ID as id, NAME as name, DESCRIPTION as description, VERSION as version
+                """
+    )
+    Optional<IBoatSet> updateBoatByIdAndVersion(@Param("boatId") final Long boatId,
+                                                @Param("name") final String name,
+                                                @Param("description") final String description,
+                                                @Param("expectedVersion") final Long expectedVersion);
+
+    /**
+     * Delete a boat in a single statement, without loading it
+     * @param boatId the boat id
+     * @return the image of the deleted boat, empty if it can not be found
+     */
+    @Transactional
+    @Query(
+        nativeQuery = true,
+        value = """
+                DELETE FROM BOATS WHERE ID = :boatId
+                RETURNING IMG_NAME as imgName,
+                IMG_ETAG as imgEtag,
+                IMG_UPDATED_AT as imgUpdatedAt,
+                IMG_BLOB_HASH as imgBlobHash,
+                IMG_THUMBNAILS_ETAG as imgThumbnailsEtag,
+                ID as id
+                """
+    )
+    Optional<IBoatImgSet> deleteBoatImgById(@Param("boatId") final Long boatId);
+
+    // locks the row on the primary, within the transaction of the write
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT IMG_NAME as imgName,
+                IMG_ETAG as imgEtag,
+                IMG_UPDATED_AT as imgUpdatedAt,
+                IMG_BLOB_HASH as imgBlobHash,
+                IMG_THUMBNAILS_ETAG as imgThumbnailsEtag,
+                ID as id
+                FROM BOATS WHERE ID = :boatId
+                FOR UPDATE
+                """
+    )
+    Optional<IBoatImgSet> findBoatImgByIdForUpdate(@Param("boatId") final Long boatId);
+
+    /**
+     * Find the first boats sorted by name then id, the first page of the keyset pagination
+     * @param limit the maximum number of boats
+     * @return the boats
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT * FROM BOATS
+                ORDER BY NAME, ID
+                LIMIT :limit
+                """
+    )
+    List<BoatEntity> findFirstBoats(@Param("limit") final int limit);
+
+    /**
+     * Find the boats following a position in the list sorted by name then id, served by the (NAME, ID) index
+     * @param name the name of the last boat of the previous page
+     * @param id the id of the last boat of the previous page
+     * @param limit the maximum number of boats
+     * @return the boats
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT * FROM BOATS
+                WHERE (NAME, ID) > (:name, :id)
+                ORDER BY NAME, ID
+                LIMIT :limit
+                """
+    )
+    List<BoatEntity> findBoatsAfter(@Param("name") final String name,
+                                    @Param("id") final Long id,
+                                    @Param("limit") final int limit);
+
+    /**
+     * Search boats by full text, best ranked first, the first page of the search. A name matches above a description
+     * @param query the search, in the web search syntax: words, "quoted phrases", or, -excluded
+     * @param limit the maximum number of boats
+     * @return the matching boats with their rank
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT ID as id, NAME as name, DESCRIPTION as description, VERSION as version,
+                TS_RANK(SEARCH_VECTOR, WEBSEARCH_TO_TSQUERY('simple', :query)) as searchRank
+                FROM BOATS
+                WHERE SEARCH_VECTOR @@ WEBSEARCH_TO_TSQUERY('simple', :query)
+                ORDER BY searchRank DESC, ID
+                LIMIT :limit
+                """
+    )
+    List<IBoatSearchSet> searchFirstBoats(@Param("query") final String query,
+                                          @Param("limit") final int limit);
+
+    /**
+     * Search boats by full text, following a position in the list sorted by rank then id
+     * @param query the search, in the web search syntax
+     * @param rank the rank of the last boat of the previous page
+     * @param id the id of the last boat of the previous page
+     * @param limit the maximum number of boats
+     * @return the matching boats with their rank
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT * FROM (
+                    SELECT ID as id, NAME as name, DESCRIPTION as description, VERSION as version,
+                    TS_RANK(SEARCH_VECTOR, WEBSEARCH_TO_TSQUERY('simple', :query)) as searchRank
+                    FROM BOATS
+                    WHERE SEARCH_VECTOR @@ WEBSEARCH_TO_TSQUERY('simple', :query)
+                ) MATCHES
+                WHERE (-searchRank, id) > (-CAST(:rank AS REAL), :id)
+                ORDER BY searchRank DESC, id
+                LIMIT :limit
+                """
+    )
+    List<IBoatSearchSet> searchBoatsAfter(@Param("query") final String query,
+                                          @Param("rank") final float rank,
+                                          @Param("id") final Long id,
+                                          @Param("limit") final int limit);
+
+    /**
+     * Suggest boats whose name starts with, or looks like, the typed text: names starting with it first,
+     * then the names containing the most similar word. Both conditions are served by the trigram index
+     * @param query the typed text
+     * @param prefix the typed text, escaped for LIKE and followed by '%'
+     * @param limit the maximum number of boats
+     * @return the id and name of the suggested boats
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT ID as id, NAME as name
+                FROM BOATS
+                WHERE NAME ILIKE :prefix OR :query <% NAME
+                ORDER BY NAME ILIKE :prefix DESC, :query <<-> NAME, NAME, ID
+                LIMIT :limit
+                """
+    )
+    List<IBoatNameSet> suggestBoats(@Param("query") final String query,
+                                    @Param("prefix") final String prefix,
+                                    @Param("limit") final int limit);
 }
@@ -0,0 +1,59 @@
+package com.ariche.boatapi.repository;
+
+import com.ariche.boatapi.entity.ImageBlobEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ImageBlobRepository extends JpaRepository<ImageBlobEntity, String> {
+
+    @Modifying
+    @Query(
+        nativeQuery = true,
+        value = """
+                INSERT INTO IMAGE_BLOBS (HASH, MIME_TYPE, SIZE, REF_COUNT, CREATED_AT)
+                VALUES (:hash, :mimeType, :size, 1, CURRENT_TIMESTAMP)
+                ON CONFLICT (HASH) DO NOTHING
+                """
+    )
+    int insertIfAbsent(@Param("hash") final String hash,
+                       @Param("mimeType") final String mimeType,
+                       @Param("size") final long size);
+
+    @Modifying
+    @Query(
+        nativeQuery = true,
+        value = "UPDATE IMAGE_BLOBS SET REF_COUNT = REF_COUNT + 1, UNREFERENCED_AT = NULL WHERE HASH = :hash"
+    )
+    int incrementRefCount(@Param("hash") final String hash);
+
+    @Modifying
+    @Query(
+        nativeQuery = true,
+        value = """
+                UPDATE IMAGE_BLOBS SET REF_COUNT = REF_COUNT - 1,
+                UNREFERENCED_AT = CASE WHEN REF_COUNT = 1 THEN CURRENT_TIMESTAMP ELSE UNREFERENCED_AT END
+                WHERE HASH = :hash AND REF_COUNT > 0
+                """
+    )
+    int decrementRefCount(@Param("hash") final String hash);
+
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT * FROM IMAGE_BLOBS
+                WHERE REF_COUNT = 0 AND UNREFERENCED_AT < :before
+                ORDER BY UNREFERENCED_AT
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+                """
+    )
+    List<ImageBlobEntity> lockUnreferencedBlobs(@Param("before") final Instant before,
+                                                @Param("limit") final int limit);
+}
@@ -0,0 +1,54 @@
+package com.ariche.boatapi.repository;
+
+import com.ariche.boatapi.entity.StorageOutboxEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface StorageOutboxRepository extends JpaRepository<StorageOutboxEntity, Long> {
+
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT * FROM STORAGE_OUTBOX
+                WHERE NEXT_ATTEMPT_AT <= :now
+                ORDER BY NEXT_ATTEMPT_AT, ID
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+                """
+    )
+    List<StorageOutboxEntity> lockDueActions(@Param("now") final Instant now,
+                                             @Param("limit") final int limit);
+
+    @Modifying
+    @Query(
+        nativeQuery = true,
+        value = """
+                DELETE FROM STORAGE_OUTBOX
+                WHERE ACTION = 'DELETE_FILE' AND FOLDER = :folder AND FILE_NAME = :fileName
+                AND (CLAIMED_UNTIL IS NULL OR CLAIMED_UNTIL <= :now)
+                """
+    )
+    int deletePendingDeletions(@Param("fileName") final String fileName,
+                               @Param("folder") final String folder,
+                               @Param("now") final Instant now);
+
+    @Query(
+        nativeQuery = true,
+        value = """
+                SELECT EXISTS (
+                    SELECT 1 FROM STORAGE_OUTBOX
+                    WHERE ACTION = 'DELETE_FILE' AND FOLDER = :folder AND FILE_NAME = :fileName AND CLAIMED_UNTIL > :now
+                )
+                """
+    )
+    boolean existsClaimedDeletion(@Param("fileName") final String fileName,
+                                  @Param("folder") final String folder,
+                                  @Param("now") final Instant now);
+}
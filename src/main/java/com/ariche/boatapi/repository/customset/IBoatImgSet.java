@@ -1,6 +1,12 @@
 package com.ariche.boatapi.repository.customset;
 
+import java.time.Instant;
+
 public interface IBoatImgSet {
     Long getId();
     String getImgName();
+    String getImgEtag();
+    Instant getImgUpdatedAt();
+    String getImgBlobHash();
+    String getImgThumbnailsEtag();
 }
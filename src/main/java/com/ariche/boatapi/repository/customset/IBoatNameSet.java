@@ -0,0 +1,6 @@
+package com.ariche.boatapi.repository.customset;
+
+public interface IBoatNameSet {
+    Long getId();
+    String getName();
+}
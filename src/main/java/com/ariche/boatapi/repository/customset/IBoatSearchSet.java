@@ -0,0 +1,5 @@
+package com.ariche.boatapi.repository.customset;
+
+public interface IBoatSearchSet extends IBoatSet {
+    Float getSearchRank();
+}
@@ -0,0 +1,8 @@
+package com.ariche.boatapi.repository.customset;
+
+public interface IBoatSet {
+    Long getId();
+    String getName();
+    String getDescription();
+    Long getVersion();
+}
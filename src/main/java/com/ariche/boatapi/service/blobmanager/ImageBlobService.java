@@ -0,0 +1,157 @@
+package com.ariche.boatapi.service.blobmanager;
+
+import com.ariche.boatapi.entity.ImageBlobEntity;
+import com.ariche.boatapi.repository.ImageBlobRepository;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.StorageService;
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Content-addressed image store: each distinct content is stored once, keyed by its SHA-256,
+ * and shared by every boat referencing it. Blobs are reference-counted and garbage-collected
+ * once they have been unreferenced for longer than a grace period: their rows are deleted in a short transaction,
+ * and their files through the storage outbox.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageBlobService {
+
+    private static final int MAX_ACQUIRE_ATTEMPTS = 3;
+
+    private final ImageBlobRepository imageBlobRepository;
+    private final StorageService storageService;
+    private final StorageOutboxService storageOutboxService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Getter
+    @Value("${storage.content-addressed:false}")
+    private boolean enabled;
+
+    @Value("${storage.blobs.gc-grace-period:PT1H}")
+    private Duration gcGracePeriod = Duration.ofHours(1);
+
+    @Value("${storage.blobs.gc-batch-size:100}")
+    private int gcBatchSize = 100;
+
+    /**
+     * Reference the blob matching given hash, storing the file only if no boat references this content yet.
+     * The file is stored before any transaction is opened, so that no connection is held during the transfer:
+     * the reference is then taken in a short transaction, along with the changes of the caller.
+     * @param multipartFile the file to be stored
+     * @param hash the SHA-256 of the file content
+     * @param referencer the changes to commit along with the reference, given the name of the blob file
+     * @return the name of the blob file, to be read from {@link #buildBlobFolder(String)}
+     */
+    public String acquire(final MultipartFile multipartFile,
+                          final String hash,
+                          final Consumer<String> referencer) throws StorageException {
+        final String mimeType = multipartFile.getContentType();
+        boolean stored = false;
+        for (int attempt = 0; attempt < MAX_ACQUIRE_ATTEMPTS; attempt++) {
+            if (!stored && !imageBlobRepository.existsById(hash)) {
+                log.debug("Storing new blob: {}", hash);
+                // the blob may have been collected, its file being still to be deleted
+                storageOutboxService.cancelFileDeletion(buildBlobFileName(hash, mimeType), buildBlobFolder(hash));
+                storageService.storeFile(multipartFile, buildBlobFileName(hash, mimeType), buildBlobFolder(hash), true);
+                stored = true;
+            }
+
+            final boolean fileStored = stored;
+            final Optional<String> name = transactionTemplate.execute(status ->
+                reference(hash, mimeType, multipartFile.getSize(), fileStored)
+                    .map(blobName -> {
+                        referencer.accept(blobName);
+                        return blobName;
+                    }));
+            if (Objects.nonNull(name) && name.isPresent()) {
+                return name.get();
+            }
+        }
+
+        throw new StorageException(EStorageError.TECHNICAL_ERROR, "Could not reference blob: %s".formatted(hash));
+    }
+
+    private Optional<String> reference(final String hash,
+                                       final String mimeType,
+                                       final long size,
+                                       final boolean fileStored) {
+        // the row may have been collected since its file was checked, then the file is stored again
+        if (imageBlobRepository.incrementRefCount(hash) == 1) {
+            log.debug("Blob already stored: {}", hash);
+            return Optional.of(imageBlobRepository.findById(hash)
+                .map(blob -> buildBlobFileName(hash, blob.getMimeType()))
+                .orElseGet(() -> buildBlobFileName(hash, mimeType)));
+        }
+
+        // a row is only inserted once its file has been stored by this call
+        if (fileStored && imageBlobRepository.insertIfAbsent(hash, mimeType, size) == 1) {
+            return Optional.of(buildBlobFileName(hash, mimeType));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Drop a reference to the blob matching given hash. The blob is kept until the garbage collection
+     * @param hash the SHA-256 of the blob content
+     */
+    @Transactional(readOnly = false)
+    public void release(final String hash) {
+        if (imageBlobRepository.decrementRefCount(hash) == 0) {
+            log.warn("Blob ({}) not found or already unreferenced", hash);
+        }
+    }
+
+    /**
+     * Delete the blobs unreferenced for longer than the grace period. Their rows are locked and deleted in a short
+     * transaction, recording the deletion of their files in the outbox: the storage is not reached while the rows
+     * are locked. A concurrent upload of the same content cancels the pending deletion before storing the file again.
+     */
+    @Scheduled(fixedDelayString = "${storage.blobs.gc-delay:PT10M}")
+    @Transactional(readOnly = false)
+    public void collectGarbage() {
+        final List<ImageBlobEntity> blobs = imageBlobRepository
+            .lockUnreferencedBlobs(Instant.now().minus(gcGracePeriod), gcBatchSize);
+        for (final ImageBlobEntity blob : blobs) {
+            storageOutboxService.deleteFileAfterCommit(buildBlobFileName(blob.getHash(), blob.getMimeType()), buildBlobFolder(blob.getHash()));
+            imageBlobRepository.delete(blob);
+        }
+
+        if (!blobs.isEmpty()) {
+            log.info("Collected {} unreferenced blob(s)", blobs.size());
+        }
+    }
+
+    /**
+     * Build the folder of a blob, spread on the first two characters of its hash
+     * @param hash the SHA-256 of the blob content
+     * @return the folder of the blob
+     */
+    public static String buildBlobFolder(final String hash) {
+        return "blobs/%s".formatted(hash.substring(0, 2));
+    }
+
+    static String buildBlobFileName(final String hash,
+                                    final String mimeType) {
+        // keep an extension, the local storage guesses the mime type from it
+        return "%s.%s".formatted(hash, MediaType.parseMediaType(mimeType).getSubtype());
+    }
+}
@@ -0,0 +1,157 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.config.ReplicaRoutingDataSource;
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.repository.customset.IBoatSet;
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.boatmanager.mapper.BoatMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Load boats by id, coalescing the lookups of concurrent requests into a single query. The first lookup opens
+ * a batch and waits for a short window, during which the other lookups join it, then queries all their ids at once.
+ * A batch is queried right away once full. As each miss waits for the window, batching is opt-in: without window,
+ * each boat is queried on its own.
+ * The batch is queried on behalf of all the users of its lookups, so that a user reading their own write is served
+ * by the primary, whoever opened the batch.
+ */
+@Slf4j
+@Service
+public class BoatBatchLoader {
+
+    private final BoatRepository boatRepository;
+    private final Duration window;
+    private final int maxSize;
+
+    // guarded by this
+    private Batch current;
+
+    private static final class Batch {
+        private final Map<Long, CompletableFuture<Optional<BoatDTO>>> lookups = new LinkedHashMap<>();
+        // null for the anonymous lookups
+        private final Set<String> users = new HashSet<>();
+    }
+
+    /**
+     * @param boatRepository the repository querying the boats
+     * @param window the time a batch waits for other lookups, 0 to query each boat on its own
+     * @param maxSize the maximum number of boats queried at once
+     */
+    public BoatBatchLoader(final BoatRepository boatRepository,
+                           @Value("${boats.batch-loader.window:PT0S}") final Duration window,
+                           @Value("${boats.batch-loader.max-size:100}") final int maxSize) {
+        this.boatRepository = boatRepository;
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Load a boat, along with the boats looked up concurrently
+     * @param id the id of the boat
+     * @return the boat, empty if it can not be found
+     */
+    public Optional<BoatDTO> load(final Long id) {
+        if (window.isZero() || maxSize < 2) {
+            return boatRepository.findById(id).map(BoatMapper::toDTO);
+        }
+
+        final String user = currentUser();
+        final Batch batch;
+        final CompletableFuture<Optional<BoatDTO>> lookup;
+        final boolean opened;
+        final boolean full;
+        synchronized (this) {
+            opened = Objects.isNull(current);
+            if (opened) {
+                current = new Batch();
+            }
+            batch = current;
+            batch.users.add(user);
+            lookup = batch.lookups.computeIfAbsent(id, key -> new CompletableFuture<>());
+            full = batch.lookups.size() >= maxSize;
+            if (full) {
+                current = null;
+            }
+        }
+
+        if (full) {
+            dispatch(batch);
+        } else if (opened) {
+            awaitWindow(lookup);
+            if (close(batch)) {
+                dispatch(batch);
+            }
+        }
+        return await(lookup);
+    }
+
+    private void awaitWindow(final CompletableFuture<Optional<BoatDTO>> lookup) {
+        try {
+            // over early when the batch filled up and was queried meanwhile
+            lookup.get(window.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // the window is over, or the batch failed and the failure is rethrown once awaited
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean close(final Batch batch) {
+        // closed meanwhile once full
+        if (current != batch) {
+            return false;
+        }
+        current = null;
+        return true;
+    }
+
+    private void dispatch(final Batch batch) {
+        try {
+            final List<Long> ids = List.copyOf(batch.lookups.keySet());
+            // closed: no other lookup joins the batch anymore
+            final Map<Long, BoatDTO> boats = ReplicaRoutingDataSource.readFor(batch.users, () -> boatRepository.findBoatsByIds(ids))
+                .stream()
+                .collect(Collectors.toMap(IBoatSet::getId, BoatMapper::toDTO));
+            log.debug("Loaded {} boat(s) at once", batch.lookups.size());
+            batch.lookups.forEach((id, lookup) -> lookup.complete(Optional.ofNullable(boats.get(id))));
+        } catch (RuntimeException e) {
+            batch.lookups.values().forEach(lookup -> lookup.completeExceptionally(e));
+        }
+    }
+
+    private static String currentUser() {
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return Objects.isNull(authentication) ? null : authentication.getName();
+    }
+
+    private static Optional<BoatDTO> await(final CompletableFuture<Optional<BoatDTO>> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            // thrown by the query, on the thread of the batch
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
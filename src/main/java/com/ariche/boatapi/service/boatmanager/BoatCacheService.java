@@ -0,0 +1,122 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.config.ReplicaRoutingDataSource;
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.invalidationmanager.CacheInvalidationService;
+import com.ariche.boatapi.service.utils.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keep the most read boats in memory, by id. A boat is evicted once the transaction writing it is committed,
+ * so that readers never see a change that could still be rolled back, on this instance and on the other ones.
+ * Unknown boats are not cached. Concurrent misses on the same boat wait for a single load.
+ * Boats are loaded from the primary: a replica could still serve a boat as it was before an eviction, which would
+ * then be kept in memory until it expires. Users reading their own writes can thus join any load.
+ */
+@Service
+public class BoatCacheService {
+
+    static final String CACHE_NAME = "boats";
+
+    private final Cache<Long, BoatDTO> cache;
+    private final SingleFlight<Long, Optional<BoatDTO>> loads;
+    private final CacheInvalidationService cacheInvalidationService;
+    // incremented on each eviction, so that a boat read while being written is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param ttl the time a boat is kept in memory, bounding the staleness of writes not going through the service
+     * @param maxSize the maximum number of boats kept in memory, 0 to disable the cache
+     * @param meterRegistry the registry exporting the hit, miss, eviction and coalesced load metrics
+     * @param cacheInvalidationService the bus evicting the boats written by the other instances
+     */
+    public BoatCacheService(@Value("${boats.cache.ttl:PT5M}") final Duration ttl,
+                            @Value("${boats.cache.max-size:10000}") final long maxSize,
+                            final MeterRegistry meterRegistry,
+                            final CacheInvalidationService cacheInvalidationService) {
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.loads = new SingleFlight<>(CACHE_NAME, meterRegistry);
+        this.cacheInvalidationService = cacheInvalidationService;
+        cacheInvalidationService.register(CACHE_NAME, key -> evict(Long.valueOf(key)), this::evictAll);
+    }
+
+    /**
+     * Get a boat from memory, loading it on a miss
+     * @param id the id of the boat
+     * @param loader the loader of the boat
+     * @return the boat, empty if it can not be found
+     */
+    public Optional<BoatDTO> get(final Long id,
+                                 final Function<Long, Optional<BoatDTO>> loader) {
+        final BoatDTO cached = cache.getIfPresent(id);
+        if (Objects.nonNull(cached)) {
+            return Optional.of(cached);
+        }
+
+        return loads.execute(id, () -> load(id, loader));
+    }
+
+    private Optional<BoatDTO> load(final Long id,
+                                   final Function<Long, Optional<BoatDTO>> loader) {
+        final long loadGeneration = generation.get();
+        final Optional<BoatDTO> loaded = ReplicaRoutingDataSource.readFromPrimary(() -> loader.apply(id));
+        loaded.ifPresent(boat -> {
+            cache.put(id, boat);
+            // checked after the put: a concurrent eviction either sees the entry, or is seen here
+            if (generation.get() != loadGeneration) {
+                cache.asMap().remove(id, boat);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Evict a boat once the current transaction is committed, right away without transaction.
+     * The other instances are notified on commit as well
+     * @param id the id of the boat
+     */
+    public void evictAfterCommit(final Long id) {
+        cacheInvalidationService.publish(CACHE_NAME, String.valueOf(id));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(id);
+                }
+            });
+        } else {
+            evict(id);
+        }
+    }
+
+    void evict(final Long id) {
+        generation.incrementAndGet();
+        // the boat is read again by the next callers, instead of waiting for a load started before the write
+        loads.forget(id);
+        cache.invalidate(id);
+    }
+
+    void evictAll() {
+        generation.incrementAndGet();
+        loads.forgetAll();
+        cache.invalidateAll();
+    }
+}
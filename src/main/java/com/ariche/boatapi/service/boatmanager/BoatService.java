@@ -5,44 +5,108 @@ import com.ariche.boatapi.errors.BoatAPIException;
 import com.ariche.boatapi.errors.EBoatAPIError;
 import com.ariche.boatapi.repository.BoatRepository;
 import com.ariche.boatapi.repository.customset.IBoatImgSet;
+import com.ariche.boatapi.repository.customset.IBoatSearchSet;
+import com.ariche.boatapi.repository.customset.IBoatSet;
+import com.ariche.boatapi.service.blobmanager.ImageBlobService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursor;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursorPageDTO;
 import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatImageDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatLookupDTO;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.boatmanager.dto.ImageVersionDTO;
 import com.ariche.boatapi.service.boatmanager.mapper.BoatMapper;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
 import com.ariche.boatapi.service.storage.StorageException;
 import com.ariche.boatapi.service.storage.StorageService;
 import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import com.ariche.boatapi.service.thumbnailmanager.ThumbnailService;
+import jakarta.annotation.Nullable;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class BoatService {
 
+    // same as the default maximum of the offset pagination
+    private static final int MAX_PAGE_SIZE = 2_000;
+    private static final int MAX_QUERY_LENGTH = 200;
+    private static final int MAX_IDS = 500;
+
     private final BoatRepository boatRepository;
     private final StorageService storageService;
+    private final ImageBlobService imageBlobService;
+    private final ThumbnailService thumbnailService;
+    private final StorageOutboxService storageOutboxService;
+    private final BoatCacheService boatCacheService;
+    private final BoatBatchLoader boatBatchLoader;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${boats.total-estimate.ttl:PT1M}")
+    private Duration totalEstimateTtl = Duration.ofMinutes(1);
+
+    private volatile EstimatedTotal estimatedTotal;
 
     /**
-     * Find a boat by id
+     * Find a boat by id, from memory when recently read. Otherwise, it is queried along with the boats
+     * looked up concurrently
      * @param id the id of the boat
      * @return an optional representation of the BoatDTO matching given id
      */
     public Optional<BoatDTO> findBoatById(final Long id) {
-        return boatRepository.findById(id)
-            .map(BoatMapper::toDTO);
+        return boatCacheService.get(id, boatBatchLoader::load);
+    }
+
+    /**
+     * Find several boats by id in a single query
+     * @param ids the ids of the boats, possibly repeated
+     * @return the boat of each id, in the order of the ids, without boat when it can not be found
+     */
+    public List<BoatLookupDTO> findBoatsByIds(final List<Long> ids) {
+        if (Objects.isNull(ids) || ids.isEmpty()) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Ids must not be empty");
+        }
+        if (ids.size() > MAX_IDS) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Ids must not exceed %d".formatted(MAX_IDS));
+        }
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Ids must not be null");
+        }
+        final Map<Long, BoatDTO> boats = boatRepository.findBoatsByIds(ids.stream().distinct().toList()).stream()
+            .collect(Collectors.toMap(IBoatSet::getId, BoatMapper::toDTO));
+        return ids.stream()
+            .map(id -> new BoatLookupDTO(id, boats.get(id)))
+            .toList();
     }
 
     /**`
@@ -56,16 +120,131 @@ public class BoatService {
     }
 
     /**
-     * Delete the boat matching given id
+     * Find all boats, without counting them
+     * @param pageable the pageable to paginate and sort boats
+     * @return the slice of BoatDTO, telling whether a next page exists
+     */
+    public Slice<BoatDTO> findBoatsSlice(final Pageable pageable) {
+        return boatRepository.findSliceBy(pageable)
+            .map(BoatMapper::toDTO);
+    }
+
+    /**
+     * Find all boats, with a total estimated from the statistics of the planner instead of counted.
+     * The total is kept consistent with the page: it covers at least the boats returned so far, plus one if a next page exists
+     * @param pageable the pageable to paginate and sort boats
+     * @return the page of BoatDTO, with an estimated total
+     */
+    public Page<BoatDTO> findBoatsWithEstimatedTotal(final Pageable pageable) {
+        final Slice<BoatDTO> slice = findBoatsSlice(pageable);
+        final long seen = (pageable.isPaged() ? pageable.getOffset() : 0L) + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0);
+        return new PageImpl<>(slice.getContent(), pageable, Math.max(seen, estimateBoatCount()));
+    }
+
+    /**
+     * Estimate the number of boats, cached for a while. Falls back to counting them while the table has never been analyzed
+     * @return the estimated number of boats
+     */
+    long estimateBoatCount() {
+        final Instant now = Instant.now();
+        final EstimatedTotal current = estimatedTotal;
+        if (Objects.nonNull(current) && current.expiresAt().isAfter(now)) {
+            return current.total();
+        }
+
+        long total = boatRepository.estimateBoatCount();
+        if (total < 0) {
+            total = boatRepository.count();
+        }
+        // concurrent refreshes are harmless, the last one wins
+        estimatedTotal = new EstimatedTotal(total, now.plus(totalEstimateTtl));
+        return total;
+    }
+
+    /**
+     * Find boats sorted by name then id, page after page. Unlike the offset pagination, the cost of a page
+     * does not depend on its position, and no total is counted
+     * @param after the cursor returned with the previous page, blank for the first page
+     * @param size the maximum number of boats, capped
+     * @return the boats, with the cursor of the next page if any
+     */
+    public BoatCursorPageDTO findAllBoatsAfter(final String after,
+                                               final int size) {
+        final int limit = toLimit(size);
+        final List<BoatEntity> entities;
+        if (StringUtils.isBlank(after)) {
+            entities = boatRepository.findFirstBoats(limit);
+        } else {
+            final BoatCursor cursor = BoatCursor.decode(after);
+            entities = boatRepository.findBoatsAfter(cursor.sortKey(), cursor.id(), limit);
+        }
+        return toCursorPage(entities, limit, BoatMapper::toDTO,
+            entity -> new BoatCursor(entity.getName(), entity.getId()));
+    }
+
+    /**
+     * Search boats by full text in their name and description, best ranked first, page after page.
+     * A match in the name ranks above a match in the description
+     * @param query the search, in the web search syntax: words, "quoted phrases", or, -excluded
+     * @param after the cursor returned with the previous page, blank for the first page
+     * @param size the maximum number of boats, capped
+     * @return the matching boats, with the cursor of the next page if any
+     */
+    public BoatCursorPageDTO searchBoats(final String query,
+                                         final String after,
+                                         final int size) {
+        if (StringUtils.isBlank(query)) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Query must not be blank");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Query must not exceed %d characters".formatted(MAX_QUERY_LENGTH));
+        }
+        final int limit = toLimit(size);
+        final List<IBoatSearchSet> results;
+        if (StringUtils.isBlank(after)) {
+            results = boatRepository.searchFirstBoats(query, limit);
+        } else {
+            final BoatCursor cursor = BoatCursor.decode(after);
+            results = boatRepository.searchBoatsAfter(query, cursor.rank(), cursor.id(), limit);
+        }
+        // the rank is written as is, so that the next page starts exactly after it
+        return toCursorPage(results, limit, BoatMapper::toDTO,
+            result -> new BoatCursor(Float.toString(result.getSearchRank()), result.getId()));
+    }
+
+    private static int toLimit(final int size) {
+        if (size < 1) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Size must be positive");
+        }
+        // one more boat tells whether there is a next page
+        return Math.min(size, MAX_PAGE_SIZE) + 1;
+    }
+
+    private static <T> BoatCursorPageDTO toCursorPage(final List<T> rows,
+                                                      final int limit,
+                                                      final Function<T, BoatDTO> mapper,
+                                                      final Function<T, BoatCursor> cursor) {
+        final List<BoatDTO> boats = rows.stream()
+            .limit(limit - 1L)
+            .map(mapper)
+            .toList();
+        final String next = rows.size() == limit ? cursor.apply(rows.get(limit - 2)).encode() : null;
+        return new BoatCursorPageDTO(boats, next);
+    }
+
+    /**
+     * Delete the boat matching given id, in a single statement. Its folder is deleted once the deletion is committed
      * @param boatId the id of the boat
      */
     @Transactional(readOnly = false)
     public void deleteBoatById(final Long boatId) {
-        boatRepository.findBoatImgById(boatId).ifPresent(iBoatImgSet -> {
-            boatRepository.deleteById(iBoatImgSet.getId());
-            if (StringUtils.isNotBlank(iBoatImgSet.getImgName())) {
-                storageService.deleteFileQuietly(iBoatImgSet.getImgName(), buildBoatStorageFolder(iBoatImgSet.getId()));
+        boatRepository.deleteBoatImgById(boatId).ifPresent(iBoatImgSet -> {
+            boatCacheService.evictAfterCommit(iBoatImgSet.getId());
+            if (StringUtils.isNotBlank(iBoatImgSet.getImgBlobHash())) {
+                imageBlobService.release(iBoatImgSet.getImgBlobHash());
             }
+            // holds the image when not content-addressed, and the thumbnails
+            storageOutboxService.deleteFolderAfterCommit(buildBoatStorageFolder(iBoatImgSet.getId()));
         });
     }
 
@@ -85,26 +264,59 @@ public class BoatService {
     }
 
     /**
-     * Update Boat identified by its id with incoming BoatDTO values
+     * Create boats at once. Their ids are allocated by blocks of the sequence and their inserts are sent
+     * in JDBC batches: either all boats are created or none
+     * @param boats the boats to be created, validated
+     * @return the created boats, in the same order
+     */
+    @Transactional(readOnly = false)
+    public List<BoatDTO> createBoats(final List<BoatDTO> boats) {
+        for (int i = 0; i < boats.size(); i++) {
+            if (Objects.nonNull(boats.get(i).id())) {
+                throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Id must be blank (boats[%d])".formatted(i));
+            }
+        }
+        final List<BoatEntity> entities = boats.stream()
+            .map(BoatMapper::toEntity)
+            .toList();
+        return boatRepository.saveAll(entities).stream()
+            .map(BoatMapper::toDTO)
+            .toList();
+    }
+
+    /**
+     * Update Boat identified by its id with incoming BoatDTO values, in a single statement
      * @param id the id of th e boat to be updated
      * @param boat the BoatDTO containing new values
+     * @param expectedVersion the version of the boat the update is based on, null to update it whatever its version
      * @return the updated BoatEntity representation
+     * @throws BoatAPIException if the boat was updated since the expected version
      */
     @Transactional(readOnly = false)
     public BoatDTO updateBoat(final Long id,
-                              final BoatDTO boat) {
+                              final BoatDTO boat,
+                              @Nullable final Long expectedVersion) {
         if (!Objects.equals(id, boat.id())) {
             throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Inconsistent ids");
         }
-        final BoatEntity entity = boatRepository.findById(id)
+        final Optional<IBoatSet> updatedSet = Objects.isNull(expectedVersion) ?
+            boatRepository.updateBoatById(id, boat.name(), boat.description()) :
+            boatRepository.updateBoatByIdAndVersion(id, boat.name(), boat.description(), expectedVersion);
+        if (updatedSet.isEmpty() && Objects.nonNull(expectedVersion) && boatRepository.existsById(id)) {
+            throw new BoatAPIException(EBoatAPIError.PRECONDITION_FAILED_ERROR,
+                "Boat updated meanwhile, version %d expected".formatted(expectedVersion));
+        }
+        final BoatDTO updated = updatedSet
+            .map(BoatMapper::toDTO)
             .orElseThrow(() -> new EntityNotFoundException("Boat not found"));
-
-        BoatMapper.updateBoat(boat, entity);
-        return BoatMapper.toDTO(boatRepository.save(entity));
+        boatCacheService.evictAfterCommit(id);
+        return updated;
     }
 
     /**
-     * Upload an image for boat identified by its id
+     * Upload an image for boat identified by its id.
+     * The file is stored before the image of the boat is replaced in a short transaction, so that no connection
+     * is held during the transfer. The previous image is deleted once the transaction is committed.
      * @param boatId the boat id
      * @param file the image file
      * @apiNote the current solution force us to manually-handle the versioning of the file and to regard on the file name
@@ -112,45 +324,170 @@ public class BoatService {
      * the image and keeping only the document id in the database.
      * @see {@link StorageService}
      */
-    @Transactional(readOnly = false)
     public void uploadImageForBoat(Long boatId, MultipartFile file) {
         ensureIncomingFile(file, List.of(MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE));
         final IBoatImgSet imgSet = boatRepository.findBoatImgById(boatId)
             .orElseThrow(() -> new EntityNotFoundException("Boat not found"));
 
-        final String name = file.getOriginalFilename();
-        final String folder = buildBoatStorageFolder(boatId);
-        storageService.storeFile(file, name, folder, true);
+        final String eTag = computeETag(file);
+        final String name;
+        final String folder;
+        if (imageBlobService.isEnabled()) {
+            if (StringUtils.equals(imgSet.getImgBlobHash(), eTag)) {
+                log.debug("Boat ({}) already references this image", boatId);
+                return;
+            }
+            name = imageBlobService.acquire(file, eTag, blobName -> replaceImage(boatId, blobName, eTag, eTag));
+            folder = ImageBlobService.buildBlobFolder(eTag);
+        } else {
+            name = file.getOriginalFilename();
+            folder = buildBoatStorageFolder(boatId);
+            storageOutboxService.cancelFileDeletion(name, folder);
+            storageService.storeFile(file, name, folder, true);
+            try {
+                transactionTemplate.executeWithoutResult(status -> replaceImage(boatId, name, eTag, null));
+            } catch (EntityNotFoundException e) {
+                storageService.deleteFileQuietly(name, folder);
+                throw e;
+            }
+        }
+        thumbnailService.generateAfterCommit(boatId, eTag, name, folder, file.getContentType());
+    }
 
-        boatRepository.updateImgNameByBoatId(boatId, name);
+    /**
+     * Replace the image of a boat. Its row is locked, so that concurrent uploads do not release the same image
+     * @param boatId the boat id
+     * @param name the name of the new image
+     * @param eTag the ETag of the new image
+     * @param blobHash the hash of the new image when content-addressed, null otherwise
+     */
+    private void replaceImage(final Long boatId,
+                              final String name,
+                              final String eTag,
+                              final String blobHash) {
+        final IBoatImgSet previous = boatRepository.findBoatImgByIdForUpdate(boatId)
+            .orElseThrow(() -> new EntityNotFoundException("Boat not found"));
+        boatRepository.updateImgByBoatId(boatId, name, eTag, blobHash);
+        boatCacheService.evictAfterCommit(boatId);
 
-        if (StringUtils.isNotBlank(imgSet.getImgName())
-            && !StringUtils.equals(imgSet.getImgName(), name)) {    // prevent from removing just-added image
-            storageService.deleteFileQuietly(imgSet.getImgName(), folder);
+        if (Objects.nonNull(blobHash)
+            || StringUtils.isNotBlank(previous.getImgBlobHash())
+            || !StringUtils.equals(previous.getImgName(), name)) {    // prevent from removing just-added image
+            releaseImage(boatId, previous);
         }
+        thumbnailService.deleteThumbnails(boatId, previous);
     }
 
     /**
-     * Download image for boat identified by its id
+     * Find the image for boat identified by its id, with its validators, without reaching the storage.
+     * The image is then read from the storage as found here, even if it is replaced meanwhile
      * @param boatId the boat id
-     * @return true if the image can be stored, false otherwise
+     * @param size the requested size of the image, the original is sent while its thumbnails are not generated
+     * @return the image, empty if the boat or its image can not be found
      */
-    public Optional<FileResourceDTO> downloadImageForBoat(Long boatId) {
-        final Optional<String> optBoat = boatRepository.fetchImgNameById(boatId);
+    public Optional<BoatImageDTO> findImageForBoat(Long boatId, EImageSize size) {
+        final Optional<IBoatImgSet> optBoat = boatRepository.findBoatImgById(boatId)
+            .filter(imgSet -> StringUtils.isNotBlank(imgSet.getImgName()));
         if (optBoat.isEmpty()) {
-            log.warn("Boat ({}) not found", boatId);
+            log.warn("Boat ({}) or its image not found", boatId);
             return Optional.empty();
         }
 
+        final IBoatImgSet imgSet = optBoat.get();
+        final boolean thumbnail = hasThumbnail(imgSet, size);
+        final ImageVersionDTO version = StringUtils.isBlank(imgSet.getImgEtag()) ? null : new ImageVersionDTO(
+            thumbnail ? buildThumbnailETag(imgSet.getImgEtag(), size) : imgSet.getImgEtag(),
+            imgSet.getImgUpdatedAt());
+        if (thumbnail) {
+            return Optional.of(new BoatImageDTO(ThumbnailService.buildThumbnailName(imgSet.getImgEtag(), size, imgSet.getImgName()),
+                buildBoatStorageFolder(boatId), version));
+        }
+        return Optional.of(new BoatImageDTO(imgSet.getImgName(), buildImageStorageFolder(boatId, imgSet), version));
+    }
+
+    /**
+     * Download an image of a boat
+     * @param image the image, as found by {@link #findImageForBoat(Long, EImageSize)}
+     * @return the streamed image, empty if it can not be found in the storage
+     */
+    public Optional<FileResourceDTO> downloadImage(BoatImageDTO image) {
+        return readImage(image, storageService::downloadFile);
+    }
+
+    /**
+     * Download a byte range of an image of a boat
+     * @param image the image, as found by {@link #findImageForBoat(Long, EImageSize)}
+     * @param start the index of the first byte of the range
+     * @param end the index of the last byte of the range (inclusive)
+     * @return the streamed range of the image, empty if it can not be found in the storage
+     */
+    public Optional<FileResourceDTO> downloadImageRange(BoatImageDTO image, long start, long end) {
+        return readImage(image, (imgName, folder) -> storageService.downloadFileRange(imgName, folder, start, end));
+    }
+
+    /**
+     * Find the metadata (mime type, size) of an image of a boat, without opening it
+     * @param image the image, as found by {@link #findImageForBoat(Long, EImageSize)}
+     * @return the metadata of the image, empty if it can not be found in the storage
+     */
+    public Optional<FileMetadataDTO> findImageMetadata(BoatImageDTO image) {
+        return readImage(image, storageService::getFileMetadata);
+    }
+
+    private static <T> Optional<T> readImage(final BoatImageDTO image,
+                                             final BiFunction<String, String, T> reader) {
         try {
-            return Optional.of(storageService.downloadFile(optBoat.get(), buildBoatStorageFolder(boatId)));
+            return Optional.of(reader.apply(image.name(), image.folder()));
         } catch (StorageException e) {
             log.warn("Could not get image: {}", e.getMessage());
             return Optional.empty();
         }
     }
 
-    static String buildBoatStorageFolder(final Long boatId) {
+    /**
+     * Drop the current image of a boat: its blob is released, or its file deleted once the transaction is committed
+     * when not content-addressed
+     * @param boatId the boat id
+     * @param imgSet the current image of the boat
+     */
+    private void releaseImage(final Long boatId,
+                              final IBoatImgSet imgSet) {
+        if (StringUtils.isNotBlank(imgSet.getImgBlobHash())) {
+            imageBlobService.release(imgSet.getImgBlobHash());
+        } else if (StringUtils.isNotBlank(imgSet.getImgName())) {
+            storageOutboxService.deleteFileAfterCommit(imgSet.getImgName(), buildBoatStorageFolder(boatId));
+        }
+    }
+
+    static String buildImageStorageFolder(final Long boatId,
+                                          final IBoatImgSet imgSet) {
+        return StringUtils.isNotBlank(imgSet.getImgBlobHash()) ?
+            ImageBlobService.buildBlobFolder(imgSet.getImgBlobHash()) : buildBoatStorageFolder(boatId);
+    }
+
+    // read before storing: the hash names the content-addressed blob, and the upload is already buffered by Spring
+    static String computeETag(final MultipartFile multipartFile) {
+        try (InputStream inputStream = multipartFile.getInputStream()) {
+            return DigestUtils.sha256Hex(inputStream);
+        } catch (IOException e) {
+            log.error("Could not read incoming file: {}", e.getMessage());
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not read file", e);
+        }
+    }
+
+    static boolean hasThumbnail(final IBoatImgSet imgSet,
+                                final EImageSize size) {
+        return size.isThumbnail()
+            && StringUtils.isNotBlank(imgSet.getImgEtag())
+            && StringUtils.equals(imgSet.getImgEtag(), imgSet.getImgThumbnailsEtag());
+    }
+
+    static String buildThumbnailETag(final String eTag,
+                                     final EImageSize size) {
+        return "%s-%d".formatted(eTag, size.getWidth());
+    }
+
+    public static String buildBoatStorageFolder(final Long boatId) {
         return "boat-%09d".formatted(boatId);
     }
 
@@ -167,4 +504,7 @@ public class BoatService {
             throw new StorageException(EStorageError.WRONG_FILE_FORMAT, "Invalid file format");
         }
     }
+
+    private record EstimatedTotal(long total, Instant expiresAt) {
+    }
 }
@@ -0,0 +1,101 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.service.boatmanager.dto.BoatSuggestionDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Suggest boats while their name is being typed, tolerating typos. Suggestions are read from the trigram index
+ * of the names, without loading the boats, and the most typed texts are kept in memory for a short while:
+ * a boat created or renamed meanwhile is suggested once they expire.
+ */
+@Slf4j
+@Service
+public class BoatSuggestionService {
+
+    static final String CACHE_NAME = "boats.suggestions";
+    static final int MAX_SIZE = 20;
+    // shorter texts match too many names to be worth suggesting
+    static final int MIN_QUERY_LENGTH = 2;
+    // same as the maximum length of a name
+    static final int MAX_QUERY_LENGTH = 100;
+
+    private final BoatRepository boatRepository;
+    // always the maximum number of suggestions, whatever the size requested
+    private final Cache<String, List<BoatSuggestionDTO>> cache;
+
+    /**
+     * @param boatRepository the repository of the boats
+     * @param ttl the time the suggestions of a text are kept in memory
+     * @param maxEntries the maximum number of texts kept in memory
+     * @param meterRegistry the registry exporting the hit, miss and eviction metrics
+     */
+    public BoatSuggestionService(final BoatRepository boatRepository,
+                                 @Value("${boats.suggestions.ttl:PT30S}") final Duration ttl,
+                                 @Value("${boats.suggestions.max-entries:10000}") final long maxEntries,
+                                 final MeterRegistry meterRegistry) {
+        this.boatRepository = boatRepository;
+        this.cache = Caffeine.newBuilder()
+            .expireAfterWrite(ttl)
+            .maximumSize(maxEntries)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Suggest the boats whose name starts with the typed text, then those whose name looks like it
+     * @param query the typed text, case insensitive
+     * @param size the maximum number of suggestions, capped
+     * @return the suggested boats, none when the text is too short
+     */
+    public List<BoatSuggestionDTO> suggestBoats(final String query,
+                                                final int size) {
+        if (size < 1) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Size must be positive");
+        }
+        final String normalized = StringUtils.normalizeSpace(StringUtils.defaultString(query)).toLowerCase(Locale.ROOT);
+        if (normalized.length() < MIN_QUERY_LENGTH) {
+            return Collections.emptyList();
+        }
+        if (normalized.length() > MAX_QUERY_LENGTH) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Query must not exceed %d characters".formatted(MAX_QUERY_LENGTH));
+        }
+
+        // concurrent requests for the same text wait for a single query
+        final List<BoatSuggestionDTO> suggestions = cache.get(normalized, this::loadSuggestions);
+        return suggestions.subList(0, Math.min(size, suggestions.size()));
+    }
+
+    private List<BoatSuggestionDTO> loadSuggestions(final String query) {
+        log.debug("Loading suggestions for '{}'", query);
+        return boatRepository.suggestBoats(query, escapeLike(query) + "%", MAX_SIZE).stream()
+            .map(boat -> new BoatSuggestionDTO(boat.getId(), boat.getName()))
+            .toList();
+    }
+
+    /**
+     * Escape the wildcards of a LIKE pattern, with the default escape character
+     * @param value the value
+     * @return the value matched literally by LIKE
+     */
+    static String escapeLike(final String value) {
+        return value.replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_");
+    }
+}
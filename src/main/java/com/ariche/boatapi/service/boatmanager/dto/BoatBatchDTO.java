@@ -0,0 +1,18 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BoatBatchDTO(
+    @NotEmpty(message = "{boat.validation.error.batch.empty}")
+    @Size(max = BoatBatchDTO.MAX_SIZE, message = "{boat.validation.error.batch.too.large}")
+    @Schema(name = "boats", description = "Boats of the batch, at most " + BoatBatchDTO.MAX_SIZE, requiredMode = Schema.RequiredMode.REQUIRED)
+    List<@NotNull @Valid BoatDTO> boats) {
+
+    public static final int MAX_SIZE = 5_000;
+}
@@ -0,0 +1,61 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of a boat in a list of boats sorted by a key then id, handed to clients as an opaque cursor
+ * @param sortKey the sort key of the last boat returned, its name or its search rank
+ * @param id the id of the last boat returned
+ */
+public record BoatCursor(String sortKey, Long id) {
+
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Encode the cursor into an opaque, URL safe, string
+     * @return the encoded cursor
+     */
+    public String encode() {
+        // the id goes first, the key may contain the separator
+        final String raw = id + String.valueOf(SEPARATOR) + sortKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor previously returned by {@link #encode()}
+     * @param cursor the encoded cursor
+     * @return the cursor
+     * @throws BoatAPIException if the cursor is invalid
+     */
+    public static BoatCursor decode(final String cursor) {
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int separator = raw.indexOf(SEPARATOR);
+            if (separator < 1) {
+                throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Invalid cursor");
+            }
+            return new BoatCursor(raw.substring(separator + 1), Long.parseLong(raw.substring(0, separator)));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Invalid cursor");
+        }
+    }
+
+    /**
+     * Read the sort key as a search rank
+     * @return the search rank
+     * @throws BoatAPIException if the key is not a rank
+     */
+    public float rank() {
+        final float rank = NumberUtils.toFloat(sortKey, Float.NaN);
+        if (!Float.isFinite(rank)) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Invalid cursor");
+        }
+        return rank;
+    }
+}
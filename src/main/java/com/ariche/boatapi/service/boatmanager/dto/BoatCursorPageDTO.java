@@ -0,0 +1,15 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+public record BoatCursorPageDTO(
+    @Schema(name = "content", description = "Boats of the page, in the order of the listing", requiredMode = Schema.RequiredMode.REQUIRED)
+    List<BoatDTO> content,
+
+    @Nullable
+    @Schema(name = "next", description = "Cursor of the next page, absent on the last page", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    String next) {
+}
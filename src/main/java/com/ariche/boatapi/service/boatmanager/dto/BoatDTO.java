@@ -1,5 +1,6 @@
 package com.ariche.boatapi.service.boatmanager.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.Min;
@@ -24,8 +25,18 @@ public record BoatDTO(
     // TODO: Could be added to DTO to enable clients to get the URL directly in the returned object
     @Nullable
     @Schema(name = "imgUrl", description = "URL of the boat image", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
-    String imgUrl) {
+    String imgUrl,
+
+    // Row version, only exposed through the ETag header
+    @Nullable
+    @JsonIgnore
+    @Schema(hidden = true)
+    Long version) {
     public BoatDTO(Long id, String name, String description) {
         this(id, name, description, null);
     }
+
+    public BoatDTO(Long id, String name, String description, String imgUrl) {
+        this(id, name, description, imgUrl, null);
+    }
 }
@@ -0,0 +1,12 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Image of a boat as read from its row, so that its validators and its content always describe the same image
+ * @param name the name of the stored file
+ * @param folder the folder of the stored file
+ * @param version the validators of the image, null if it has no known ETag
+ */
+public record BoatImageDTO(String name, String folder, @Nullable ImageVersionDTO version) {
+}
@@ -0,0 +1,13 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.annotation.Nullable;
+
+public record BoatLookupDTO(
+    @Schema(name = "id", description = "Id looked up", requiredMode = Schema.RequiredMode.REQUIRED)
+    Long id,
+
+    @Nullable
+    @Schema(name = "boat", description = "Boat of the id, absent when it can not be found", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    BoatDTO boat) {
+}
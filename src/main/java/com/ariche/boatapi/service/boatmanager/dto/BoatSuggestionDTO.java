@@ -0,0 +1,11 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record BoatSuggestionDTO(
+    @Schema(name = "id", description = "Id of the boat", requiredMode = Schema.RequiredMode.REQUIRED)
+    Long id,
+
+    @Schema(name = "name", description = "Name of the boat", requiredMode = Schema.RequiredMode.REQUIRED)
+    String name) {
+}
@@ -0,0 +1,31 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sizes an image of boat can be downloaded in. Every size but the original is a thumbnail
+ * generated in the background after the upload, scaled down to a fixed width.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum EImageSize {
+    ORIGINAL(0),
+    SMALL(320),
+    MEDIUM(960);
+
+    private final int width;
+
+    public boolean isThumbnail() {
+        return width > 0;
+    }
+
+    public static List<EImageSize> thumbnails() {
+        return Arrays.stream(values())
+            .filter(EImageSize::isThumbnail)
+            .toList();
+    }
+}
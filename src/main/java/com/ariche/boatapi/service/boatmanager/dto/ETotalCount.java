@@ -0,0 +1,13 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+/**
+ * Total returned along a page of boats. Counting the boats exactly scans the whole table on each page.
+ */
+public enum ETotalCount {
+    /** No total, the page only tells whether a next one exists */
+    NONE,
+    /** Total estimated from the statistics of the planner, refreshed periodically */
+    ESTIMATE,
+    /** Exact total, counted on each page */
+    EXACT
+}
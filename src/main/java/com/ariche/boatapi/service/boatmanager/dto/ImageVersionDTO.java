@@ -0,0 +1,11 @@
+package com.ariche.boatapi.service.boatmanager.dto;
+
+import java.time.Instant;
+
+/**
+ * Validators of a stored image, known without reaching the storage
+ * @param eTag the SHA-256 of the image content
+ * @param lastModified the upload date of the image, null if unknown
+ */
+public record ImageVersionDTO(String eTag, Instant lastModified) {
+}
@@ -1,6 +1,7 @@
 package com.ariche.boatapi.service.boatmanager.mapper;
 
 import com.ariche.boatapi.entity.BoatEntity;
+import com.ariche.boatapi.repository.customset.IBoatSet;
 import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
 
 public final class BoatMapper {
@@ -11,7 +12,16 @@ public final class BoatMapper {
      * @return the {@link BoatDTO}
      */
     public static BoatDTO toDTO(final BoatEntity boatEntity) {
-        return new BoatDTO(boatEntity.getId(), boatEntity.getName(), boatEntity.getDescription(), null);
+        return new BoatDTO(boatEntity.getId(), boatEntity.getName(), boatEntity.getDescription(), null, boatEntity.getVersion());
+    }
+
+    /**
+     * Map a {@link IBoatSet} to a {@link BoatDTO}
+     * @param boatSet the boat columns to be mapped
+     * @return the {@link BoatDTO}
+     */
+    public static BoatDTO toDTO(final IBoatSet boatSet) {
+        return new BoatDTO(boatSet.getId(), boatSet.getName(), boatSet.getDescription(), null, boatSet.getVersion());
     }
 
     /**
@@ -0,0 +1,126 @@
+package com.ariche.boatapi.service.exportmanager;
+
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.exportmanager.dto.EExportFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export the whole boat catalog, streamed row by row: the boats are read through a forward-only cursor,
+ * fetched by batches, and written as soon as read. The memory used does not depend on the number of boats.
+ */
+@Slf4j
+@Service
+public class BoatExportService {
+
+    static final String SELECT_BOATS = "SELECT ID, NAME, DESCRIPTION FROM BOATS ORDER BY ID";
+    static final String CSV_HEADER = "id;name;description\n";
+
+    private static final char CSV_SEPARATOR = ';';
+    private static final String CSV_QUOTE = "\"";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${boats.export.fetch-size:1000}")
+    private int fetchSize = 1000;
+
+    public BoatExportService(final JdbcTemplate jdbcTemplate,
+                             final ObjectMapper objectMapper,
+                             final PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        // PostgreSQL only fetches by batches within a transaction, all rows are read at once otherwise
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Write all boats, sorted by id
+     * @param format the format of the export
+     * @param outputStream the stream to write to, left open
+     * @return the number of exported boats
+     * @throws IOException if the stream can not be written, the client is gone for instance
+     */
+    public long exportBoats(final EExportFormat format,
+                            final OutputStream outputStream) throws IOException {
+        final BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream);
+        final AtomicLong count = new AtomicLong();
+        try {
+            if (format == EExportFormat.CSV) {
+                bufferedOutputStream.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+            }
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                final PreparedStatement statement = connection.prepareStatement(SELECT_BOATS,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                final BoatDTO boat = new BoatDTO(resultSet.getLong("ID"), resultSet.getString("NAME"), resultSet.getString("DESCRIPTION"));
+                write(bufferedOutputStream, format, boat);
+                count.incrementAndGet();
+            }));
+        } catch (UncheckedIOException e) {
+            // stops the query, the cursor being closed with the transaction
+            throw e.getCause();
+        }
+        bufferedOutputStream.flush();
+
+        log.debug("{} boats exported as {}", count.get(), format);
+        return count.get();
+    }
+
+    private void write(final OutputStream outputStream,
+                       final EExportFormat format,
+                       final BoatDTO boat) {
+        try {
+            switch (format) {
+                case NDJSON -> outputStream.write(objectMapper.writeValueAsBytes(boat));
+                case CSV -> outputStream.write(toCsv(boat).getBytes(StandardCharsets.UTF_8));
+            }
+            outputStream.write('\n');
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize boat (%d)".formatted(boat.id()), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String toCsv(final BoatDTO boat) {
+        return boat.id() + String.valueOf(CSV_SEPARATOR) + escapeCsv(boat.name()) + CSV_SEPARATOR + escapeCsv(boat.description());
+    }
+
+    /**
+     * Escape a CSV field, quoted only when needed. A missing value is left empty, as read by COPY
+     * @param value the value of the field
+     * @return the escaped field
+     */
+    static String escapeCsv(final String value) {
+        if (Objects.isNull(value)) {
+            return StringUtils.EMPTY;
+        }
+        if (StringUtils.containsAny(value, CSV_SEPARATOR, '"', '\n', '\r') || value.isEmpty()) {
+            return CSV_QUOTE + value.replace(CSV_QUOTE, CSV_QUOTE + CSV_QUOTE) + CSV_QUOTE;
+        }
+        return value;
+    }
+}
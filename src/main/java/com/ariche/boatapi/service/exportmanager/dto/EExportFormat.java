@@ -0,0 +1,17 @@
+package com.ariche.boatapi.service.exportmanager.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Formats the boat catalog can be exported in, one boat per line
+ */
+@Getter
+@RequiredArgsConstructor
+public enum EExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String mimeType;
+    private final String extension;
+}
@@ -0,0 +1,312 @@
+package com.ariche.boatapi.service.importmanager;
+
+import com.ariche.boatapi.entity.BoatImportEntity;
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
+import com.ariche.boatapi.repository.BoatImportRepository;
+import com.ariche.boatapi.service.importmanager.dto.BoatImportDTO;
+import com.ariche.boatapi.service.importmanager.dto.EImportStatus;
+import com.ariche.boatapi.service.importmanager.mapper.BoatImportMapper;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Import boats from large CSV files in the background. The file is streamed into a temporary staging table
+ * through COPY, validated there with the constraints of BoatDTO, then merged into the boats in a single statement:
+ * either all rows are imported or none. The progress of an import is recorded step by step.
+ * The file is made of a header then one boat per line: name;description, UTF-8 encoded. The id;name;description
+ * files of the CSV export are accepted as well, their ids being ignored: the boats are created with new ids.
+ */
+@Slf4j
+@Service
+public class BoatImportService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final String BOM = "\uFEFF";
+    private static final int MAX_REPORTED_LINES = 20;
+    // the increment of boat_sequence, as the allocationSize of BoatEntity
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final List<String> COLUMNS = List.of("name", "description");
+    private static final List<String> EXPORT_COLUMNS = List.of("id", "name", "description");
+
+    // columns are not constrained, so that COPY does not stop at the first invalid row
+    private static final String CREATE_STAGING = """
+        CREATE TEMPORARY TABLE BOAT_IMPORT_STAGING (
+            LINE BIGINT GENERATED ALWAYS AS IDENTITY,
+            EXPORTED_ID TEXT,
+            NAME TEXT,
+            DESCRIPTION TEXT
+        ) ON COMMIT DROP
+        """;
+
+    private static final String COPY_STAGING = """
+        COPY BOAT_IMPORT_STAGING (%s) FROM STDIN WITH (FORMAT CSV, HEADER TRUE, DELIMITER ';')
+        """;
+
+    // same constraints as BoatDTO, never NULL
+    private static final String VALID_ROW = """
+        NAME IS NOT NULL AND NAME ~ '\\S' AND CHAR_LENGTH(NAME) BETWEEN 2 AND 100
+        AND COALESCE(CHAR_LENGTH(DESCRIPTION), 0) <= 2000
+        """;
+
+    private static final String COUNT_REJECTED = "SELECT COUNT(*) FROM BOAT_IMPORT_STAGING WHERE NOT (" + VALID_ROW + ")";
+
+    private static final String SELECT_REJECTED_LINES =
+        "SELECT LINE FROM BOAT_IMPORT_STAGING WHERE NOT (" + VALID_ROW + ") ORDER BY LINE LIMIT ?";
+
+    // each value of the sequence is the first id of its block, as for the entities (pooled-lo): one value per block of rows
+    private static final String MERGE = """
+        INSERT INTO BOATS (ID, NAME, DESCRIPTION, VERSION)
+        WITH NUMBERED AS (
+            SELECT NAME, DESCRIPTION, ROW_NUMBER() OVER (ORDER BY LINE) - 1 AS ROW_INDEX FROM BOAT_IMPORT_STAGING
+        ), BLOCKS AS MATERIALIZED (
+            SELECT BLOCK, NEXTVAL('boat_sequence') AS FIRST_ID
+            FROM GENERATE_SERIES(0, (SELECT CEIL(COUNT(*) / %1$d.0) - 1 FROM BOAT_IMPORT_STAGING)::BIGINT) AS BLOCK
+        )
+        SELECT B.FIRST_ID + N.ROW_INDEX %% %1$d, N.NAME, N.DESCRIPTION, 0
+        FROM NUMBERED N JOIN BLOCKS B ON B.BLOCK = N.ROW_INDEX / %1$d
+        ORDER BY N.ROW_INDEX
+        """.formatted(ID_BLOCK_SIZE);
+
+    private final BoatImportRepository boatImportRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate progressTemplate;
+    private final ExecutorService importExecutor;
+
+    @Value("${boats.import.max-file-size:512MB}")
+    private DataSize maxFileSize = DataSize.ofMegabytes(512);
+
+    public BoatImportService(final BoatImportRepository boatImportRepository,
+                             final JdbcTemplate jdbcTemplate,
+                             final PlatformTransactionManager transactionManager,
+                             @Qualifier("importExecutor") final ExecutorService importExecutor) {
+        this.boatImportRepository = boatImportRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // the progress is visible while the import transaction is still running
+        this.progressTemplate = new TransactionTemplate(transactionManager);
+        this.progressTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.importExecutor = importExecutor;
+    }
+
+    /**
+     * Upload a CSV file of boats, then import it in the background
+     * @param content the content of the file, read before returning
+     * @return the import, PENDING
+     * @throws BoatAPIException if the file is too big, or too many imports are waiting
+     */
+    public BoatImportDTO submitImport(final InputStream content) {
+        final Path file = storeUpload(content);
+
+        final BoatImportEntity entity = new BoatImportEntity();
+        entity.setStatus(EImportStatus.PENDING);
+        entity.setFileSize(file.toFile().length());
+        entity.setCreatedAt(Instant.now());
+        entity.setUpdatedAt(entity.getCreatedAt());
+        final BoatImportEntity saved = boatImportRepository.save(entity);
+
+        try {
+            importExecutor.execute(() -> runImport(saved.getId(), file));
+        } catch (RejectedExecutionException e) {
+            FileUtils.deleteQuietly(file.toFile());
+            fail(saved.getId(), "Too many imports in progress");
+            throw new BoatAPIException(EBoatAPIError.TECHNICAL_ERROR, "Too many imports in progress, retry later");
+        }
+        log.info("Import ({}) of {} submitted", saved.getId(), FileUtils.byteCountToDisplaySize(saved.getFileSize()));
+        return BoatImportMapper.toDTO(saved);
+    }
+
+    /**
+     * Find an import by id
+     * @param importId the id of the import
+     * @return an optional representation of the import
+     */
+    public Optional<BoatImportDTO> findImportById(final Long importId) {
+        return boatImportRepository.findById(importId)
+            .map(BoatImportMapper::toDTO);
+    }
+
+    void runImport(final Long importId,
+                   final Path file) {
+        try {
+            final Long imported = transactionTemplate.execute(status -> {
+                final Long rows = importRows(importId, file);
+                if (Objects.isNull(rows)) {
+                    status.setRollbackOnly();
+                }
+                return rows;
+            });
+
+            if (Objects.nonNull(imported)) {
+                progress(importId, job -> {
+                    job.setStatus(EImportStatus.COMPLETED);
+                    job.setImportedRows(imported);
+                });
+                log.info("Import ({}) completed, {} boats created", importId, imported);
+            }
+        } catch (RuntimeException e) {
+            log.error("Import ({}) failed: {}", importId, e.getMessage(), e);
+            fail(importId, e.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(file.toFile());
+        }
+    }
+
+    /**
+     * Copy, validate then merge the rows of the file, within the import transaction
+     * @param importId the id of the import
+     * @param file the file
+     * @return the number of created boats, null if some rows are invalid
+     */
+    private Long importRows(final Long importId,
+                            final Path file) {
+        jdbcTemplate.execute(CREATE_STAGING);
+        progress(importId, job -> job.setStatus(EImportStatus.COPYING));
+        final long copied = copy(file);
+
+        progress(importId, job -> {
+            job.setStatus(EImportStatus.VALIDATING);
+            job.setCopiedRows(copied);
+        });
+        final long rejected = Objects.requireNonNullElse(jdbcTemplate.queryForObject(COUNT_REJECTED, Long.class), 0L);
+        if (rejected > 0) {
+            // the header is the first line of the file
+            final String lines = jdbcTemplate.queryForList(SELECT_REJECTED_LINES, Long.class, MAX_REPORTED_LINES).stream()
+                .map(line -> String.valueOf(line + 1))
+                .collect(Collectors.joining(", "));
+            final String error = "%d invalid row(s), nothing imported. First invalid lines: %s".formatted(rejected, lines);
+            log.warn("Import ({}) rejected: {}", importId, error);
+            progress(importId, job -> {
+                job.setStatus(EImportStatus.FAILED);
+                job.setRejectedRows(rejected);
+                job.setError(error);
+            });
+            return null;
+        }
+
+        progress(importId, job -> {
+            job.setStatus(EImportStatus.MERGING);
+            job.setRejectedRows(0L);
+        });
+        return (long) jdbcTemplate.update(MERGE);
+    }
+
+    private long copy(final Path file) {
+        final String copy = COPY_STAGING.formatted(readColumns(file));
+        final Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try (InputStream input = Files.newInputStream(file)) {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copy, input);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return Objects.requireNonNullElse(copied, 0L);
+    }
+
+    /**
+     * Read the columns of the file from its header
+     * @param file the file
+     * @return the columns of the staging table the file is copied into
+     * @throws BoatAPIException if the header is neither name;description nor id;name;description
+     */
+    static String readColumns(final Path file) {
+        final String header;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            header = StringUtils.removeStart(reader.readLine(), BOM);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final List<String> columns = Objects.isNull(header) ? COLUMNS : Arrays.stream(header.split(";", -1))
+            .map(column -> StringUtils.strip(column, "\" ").toLowerCase(Locale.ROOT))
+            .toList();
+        if (COLUMNS.equals(columns)) {
+            return "NAME, DESCRIPTION";
+        }
+        if (EXPORT_COLUMNS.equals(columns)) {
+            return "EXPORTED_ID, NAME, DESCRIPTION";
+        }
+        throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST,
+            "Unexpected header: %s, expected name;description or id;name;description".formatted(StringUtils.abbreviate(header, 100)));
+    }
+
+    private void fail(final Long importId,
+                      final String error) {
+        try {
+            progress(importId, job -> {
+                job.setStatus(EImportStatus.FAILED);
+                job.setError(StringUtils.truncate(error, MAX_ERROR_LENGTH));
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not record the failure of import ({}): {}", importId, e.getMessage());
+        }
+    }
+
+    private void progress(final Long importId,
+                          final Consumer<BoatImportEntity> step) {
+        progressTemplate.executeWithoutResult(status -> boatImportRepository.findById(importId)
+            .ifPresent(job -> {
+                step.accept(job);
+                job.setUpdatedAt(Instant.now());
+                boatImportRepository.save(job);
+            }));
+    }
+
+    private Path storeUpload(final InputStream content) {
+        final Path file;
+        final long size;
+        try {
+            file = Files.createTempFile("boat-import-", ".csv");
+        } catch (IOException e) {
+            throw new StorageException(EStorageError.TECHNICAL_ERROR, "Could not create the import file", e);
+        }
+        try (OutputStream output = Files.newOutputStream(file)) {
+            // one more byte tells whether the file is too big, without reading it all
+            size = IOUtils.copyLarge(content, output, 0, maxFileSize.toBytes() + 1);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(file.toFile());
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not upload the import file", e);
+        }
+
+        if (size > maxFileSize.toBytes()) {
+            FileUtils.deleteQuietly(file.toFile());
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST,
+                "File too big, max size: %s".formatted(FileUtils.byteCountToDisplaySize(maxFileSize.toBytes())));
+        }
+        return file;
+    }
+}
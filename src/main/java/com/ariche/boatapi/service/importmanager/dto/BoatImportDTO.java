@@ -0,0 +1,39 @@
+package com.ariche.boatapi.service.importmanager.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.annotation.Nullable;
+
+import java.time.Instant;
+
+public record BoatImportDTO(
+    @Schema(name = "id", description = "Id of the import", requiredMode = Schema.RequiredMode.REQUIRED)
+    Long id,
+
+    @Schema(name = "status", description = "Current step of the import", requiredMode = Schema.RequiredMode.REQUIRED)
+    EImportStatus status,
+
+    @Schema(name = "fileSize", description = "Size of the uploaded file, in bytes", requiredMode = Schema.RequiredMode.REQUIRED)
+    Long fileSize,
+
+    @Nullable
+    @Schema(name = "copiedRows", description = "Number of rows read from the file, once copied", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    Long copiedRows,
+
+    @Nullable
+    @Schema(name = "rejectedRows", description = "Number of invalid rows, once validated", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    Long rejectedRows,
+
+    @Nullable
+    @Schema(name = "importedRows", description = "Number of created boats, once completed", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    Long importedRows,
+
+    @Nullable
+    @Schema(name = "error", description = "Reason of the failure", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    String error,
+
+    @Schema(name = "createdAt", description = "Upload time of the file", requiredMode = Schema.RequiredMode.REQUIRED)
+    Instant createdAt,
+
+    @Schema(name = "updatedAt", description = "Time of the last step", requiredMode = Schema.RequiredMode.REQUIRED)
+    Instant updatedAt) {
+}
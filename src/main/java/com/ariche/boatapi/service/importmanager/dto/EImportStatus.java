@@ -0,0 +1,13 @@
+package com.ariche.boatapi.service.importmanager.dto;
+
+/**
+ * Steps of an import of boats, in order. An import ends either COMPLETED or FAILED.
+ */
+public enum EImportStatus {
+    PENDING,
+    COPYING,
+    VALIDATING,
+    MERGING,
+    COMPLETED,
+    FAILED
+}
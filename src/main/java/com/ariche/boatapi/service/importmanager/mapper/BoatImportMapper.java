@@ -0,0 +1,21 @@
+package com.ariche.boatapi.service.importmanager.mapper;
+
+import com.ariche.boatapi.entity.BoatImportEntity;
+import com.ariche.boatapi.service.importmanager.dto.BoatImportDTO;
+
+public final class BoatImportMapper {
+
+    /**
+     * Map a {@link BoatImportEntity} to a {@link BoatImportDTO}
+     * @param entity the import entity to be mapped
+     * @return the {@link BoatImportDTO}
+     */
+    public static BoatImportDTO toDTO(final BoatImportEntity entity) {
+        return new BoatImportDTO(entity.getId(), entity.getStatus(), entity.getFileSize(),
+            entity.getCopiedRows(), entity.getRejectedRows(), entity.getImportedRows(), entity.getError(),
+            entity.getCreatedAt(), entity.getUpdatedAt());
+    }
+
+    private BoatImportMapper() {
+    }
+}
@@ -0,0 +1,194 @@
+package com.ariche.boatapi.service.invalidationmanager;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation of the in-memory caches across the instances of the API, over PostgreSQL LISTEN/NOTIFY.
+ * A write publishes the keys it changed in its transaction, so that they are only delivered once committed.
+ * Each instance listens on a dedicated connection, outside the pool, and evicts the keys from its own caches.
+ * Notifications sent while the connection is lost are not delivered: all caches are emptied once reconnected.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CacheInvalidationService {
+
+    static final String CHANNEL = "cache_invalidation";
+    private static final char SEPARATOR = ':';
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, CacheHandler> handlers = new ConcurrentHashMap<>();
+
+    @Value("${spring.datasource.url:}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Value("${cache.invalidation.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${cache.invalidation.poll-timeout:PT10S}")
+    private Duration pollTimeout = Duration.ofSeconds(10);
+
+    @Value("${cache.invalidation.reconnect-delay:PT5S}")
+    private Duration reconnectDelay = Duration.ofSeconds(5);
+
+    private volatile boolean running;
+    private volatile Connection connection;
+    private Thread listener;
+
+    record CacheHandler(Consumer<String> evict, Runnable evictAll) {
+    }
+
+    /**
+     * Register a cache, evicted on the notifications of the other instances
+     * @param cache the name of the cache
+     * @param evict the eviction of a key from the cache
+     * @param evictAll the eviction of all keys from the cache
+     */
+    public void register(final String cache,
+                         final Consumer<String> evict,
+                         final Runnable evictAll) {
+        handlers.put(cache, new CacheHandler(evict, evictAll));
+    }
+
+    /**
+     * Publish a changed key to all instances, this one included. Within a transaction, it is only delivered once committed
+     * @param cache the name of the cache
+     * @param key the changed key
+     */
+    public void publish(final String cache,
+                        final String key) {
+        if (enabled) {
+            jdbcTemplate.queryForList("SELECT PG_NOTIFY(?, ?)", CHANNEL, cache + SEPARATOR + key);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("CacheInvalidationService: disabled");
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "cache-invalidation");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (Objects.nonNull(listener)) {
+            listener.interrupt();
+        }
+        // wakes the listener up, blocked on the connection
+        closeQuietly(connection);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection listening = DriverManager.getConnection(url, username, password)) {
+                connection = listening;
+                try (Statement statement = listening.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                // whatever was written while not listening
+                evictAll();
+                log.info("CacheInvalidationService: listening on '{}'", CHANNEL);
+                receive(listening);
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("CacheInvalidationService: connection lost, reconnecting in {}: {}", reconnectDelay, e.getMessage());
+                    pause();
+                }
+            }
+        }
+    }
+
+    private void receive(final Connection listening) throws SQLException {
+        final PGConnection pgConnection = listening.unwrap(PGConnection.class);
+        while (running) {
+            final PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+            if (Objects.isNull(notifications) || notifications.length == 0) {
+                // a connection silently dropped by the network would block forever
+                if (!listening.isValid((int) pollTimeout.toSeconds())) {
+                    throw new SQLException("Connection no longer valid");
+                }
+                continue;
+            }
+            for (final PGNotification notification : notifications) {
+                dispatch(notification.getParameter());
+            }
+        }
+    }
+
+    /**
+     * Evict a key published by an instance from the cache it belongs to
+     * @param payload the payload of the notification, the name of the cache and the key
+     */
+    void dispatch(final String payload) {
+        final String cache = StringUtils.substringBefore(payload, SEPARATOR);
+        final CacheHandler handler = handlers.get(cache);
+        if (Objects.isNull(handler) || !StringUtils.contains(payload, SEPARATOR)) {
+            log.debug("CacheInvalidationService: ignoring notification '{}'", payload);
+            return;
+        }
+        try {
+            handler.evict().accept(StringUtils.substringAfter(payload, SEPARATOR));
+        } catch (RuntimeException e) {
+            // a malformed key must not stop the listener
+            log.warn("CacheInvalidationService: could not evict '{}': {}", payload, e.getMessage());
+        }
+    }
+
+    /**
+     * Evict all keys from all caches
+     */
+    void evictAll() {
+        handlers.values().forEach(handler -> handler.evictAll().run());
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(reconnectDelay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        if (Objects.isNull(connection)) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("CacheInvalidationService: could not close connection: {}", e.getMessage());
+        }
+    }
+}
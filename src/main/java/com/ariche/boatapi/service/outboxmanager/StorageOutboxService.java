@@ -0,0 +1,219 @@
+package com.ariche.boatapi.service.outboxmanager;
+
+import com.ariche.boatapi.entity.StorageOutboxEntity;
+import com.ariche.boatapi.repository.StorageOutboxRepository;
+import com.ariche.boatapi.service.outboxmanager.dto.EStorageAction;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.StorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Outbox of the actions to be performed on the storage. Actions are recorded in the transaction dropping
+ * the reference to the files, and performed in the background once committed: the storage is never reached
+ * while a connection is held, and an action survives a failure of the storage or a restart.
+ * Actions are claimed for a lease in a short transaction, performed without transaction, then their result is
+ * recorded in another one. Failed actions are retried with an exponential backoff, those of an instance stopped
+ * meanwhile once their lease is over.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StorageOutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final Duration CLAIM_POLL_DELAY = Duration.ofMillis(100);
+
+    private final StorageOutboxRepository storageOutboxRepository;
+    private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.outbox.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${storage.outbox.initial-backoff:PT30S}")
+    private Duration initialBackoff = Duration.ofSeconds(30);
+
+    @Value("${storage.outbox.max-backoff:PT1H}")
+    private Duration maxBackoff = Duration.ofHours(1);
+
+    @Value("${storage.outbox.lease:PT10M}")
+    private Duration lease = Duration.ofMinutes(10);
+
+    /**
+     * Record the deletion of a file, performed once the current transaction is committed
+     * @param fileName the name of the file
+     * @param folder the folder of the file
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteFileAfterCommit(final String fileName,
+                                      final String folder) {
+        record(EStorageAction.DELETE_FILE, fileName, folder);
+    }
+
+    /**
+     * Record the deletion of a folder and of all its files, performed once the current transaction is committed
+     * @param folder the folder
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteFolderAfterCommit(final String folder) {
+        record(EStorageAction.DELETE_FOLDER, null, folder);
+    }
+
+    /**
+     * Cancel the pending deletions of a file about to be stored again. A deletion being performed is waited for,
+     * so that it can not remove the new file
+     * @param fileName the name of the file
+     * @param folder the folder of the file
+     */
+    public void cancelFileDeletion(final String fileName,
+                                   final String folder) {
+        while (true) {
+            final Instant now = Instant.now();
+            final Integer cancelled = transactionTemplate.execute(status ->
+                storageOutboxRepository.deletePendingDeletions(fileName, folder, now));
+            if (Objects.requireNonNullElse(cancelled, 0) > 0) {
+                log.debug("Pending deletion of file '{}' cancelled", fileName);
+            }
+            // no connection is held while waiting: the deletion is performed outside of any transaction
+            if (!storageOutboxRepository.existsClaimedDeletion(fileName, folder, now)) {
+                return;
+            }
+            try {
+                Thread.sleep(CLAIM_POLL_DELAY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Perform the due actions, batch after batch until none is left. The rows of a batch are locked while claimed,
+     * so that several instances share the work
+     */
+    @Scheduled(fixedDelayString = "${storage.outbox.dispatch-delay:PT10S}")
+    public void dispatch() {
+        int dispatched = 0;
+        int batch;
+        do {
+            batch = dispatchBatch(Instant.now());
+            dispatched += batch;
+        } while (batch == batchSize);
+
+        if (dispatched > 0) {
+            log.debug("Dispatched {} storage action(s)", dispatched);
+        }
+    }
+
+    /**
+     * Perform a batch of due actions. Performed actions are deleted, failed ones are postponed:
+     * either way none of them is due anymore, so that the next batch is made of other actions
+     * @param now the current instant
+     * @return the number of actions of the batch
+     */
+    int dispatchBatch(final Instant now) {
+        final List<StorageOutboxEntity> actions = Objects.requireNonNullElse(
+            transactionTemplate.execute(status -> claim(now)), Collections.emptyList());
+        if (actions.isEmpty()) {
+            return 0;
+        }
+
+        final List<Long> performed = new ArrayList<>();
+        final Map<Long, StorageException> failed = new HashMap<>();
+        for (final StorageOutboxEntity action : actions) {
+            try {
+                perform(action);
+                performed.add(action.getId());
+            } catch (StorageException e) {
+                failed.put(action.getId(), e);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            storageOutboxRepository.deleteAllByIdInBatch(performed);
+            // read again, in case the lease was over and another instance performed them meanwhile
+            storageOutboxRepository.findAllById(failed.keySet())
+                .forEach(action -> postpone(action, now, failed.get(action.getId())));
+        });
+        return actions.size();
+    }
+
+    private List<StorageOutboxEntity> claim(final Instant now) {
+        final List<StorageOutboxEntity> actions = storageOutboxRepository.lockDueActions(now, batchSize);
+        final Instant claimedUntil = now.plus(lease);
+        // the locked rows are managed, the changes are flushed on commit
+        actions.forEach(action -> {
+            action.setClaimedUntil(claimedUntil);
+            action.setNextAttemptAt(claimedUntil);
+        });
+        return actions;
+    }
+
+    private void perform(final StorageOutboxEntity action) throws StorageException {
+        switch (action.getAction()) {
+            case DELETE_FILE -> storageService.deleteFile(action.getFileName(), action.getFolder());
+            case DELETE_FOLDER -> storageService.deleteFolder(action.getFolder());
+        }
+    }
+
+    private void postpone(final StorageOutboxEntity action,
+                          final Instant now,
+                          final StorageException e) {
+        final int attempts = action.getAttempts() + 1;
+        final Duration backoff = computeBackoff(attempts, initialBackoff, maxBackoff);
+        log.warn("Could not perform {} on '{}' (attempt {}), will retry in {}: {}",
+            action.getAction(), StringUtils.defaultString(action.getFileName(), action.getFolder()), attempts, backoff, e.getMessage());
+        // the rows read are managed, the changes are flushed on commit
+        action.setAttempts(attempts);
+        action.setNextAttemptAt(now.plus(backoff));
+        action.setLastError(StringUtils.truncate(e.getMessage(), MAX_ERROR_LENGTH));
+        action.setClaimedUntil(null);
+    }
+
+    private void record(final EStorageAction action,
+                        final String fileName,
+                        final String folder) {
+        final Instant now = Instant.now();
+        final StorageOutboxEntity entity = new StorageOutboxEntity();
+        entity.setAction(action);
+        entity.setFileName(fileName);
+        entity.setFolder(folder);
+        entity.setCreatedAt(now);
+        entity.setAttempts(0);
+        entity.setNextAttemptAt(now);
+        storageOutboxRepository.save(entity);
+    }
+
+    /**
+     * Compute the delay before the next attempt of an action, doubled after each failure
+     * @param attempts the number of failed attempts, at least 1
+     * @param initialBackoff the delay after the first failure
+     * @param maxBackoff the maximum delay
+     * @return the delay before the next attempt
+     */
+    static Duration computeBackoff(final int attempts,
+                                   final Duration initialBackoff,
+                                   final Duration maxBackoff) {
+        // beyond, the doubling would overflow long before reaching any sensible maximum
+        final int exponent = Math.min(attempts - 1, 30);
+        final Duration backoff = initialBackoff.multipliedBy(1L << exponent);
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,6 @@
+package com.ariche.boatapi.service.outboxmanager.dto;
+
+public enum EStorageAction {
+    DELETE_FILE,
+    DELETE_FOLDER;
+}
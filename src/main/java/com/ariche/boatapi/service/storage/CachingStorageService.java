@@ -0,0 +1,211 @@
+package com.ariche.boatapi.service.storage;
+
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import com.ariche.boatapi.service.utils.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decorator keeping the most used files in memory, so that they are served without reaching the storage.
+ * The cache is bounded by the total size of the files, and evicts them according to their frequency of use (W-TinyLFU).
+ * Files stored on the local file system are not cached: the kernel already serves them from its page cache.
+ * Concurrent misses on the same file wait for a single download, as long as the file can be cached.
+ */
+@Slf4j
+public class CachingStorageService implements StorageService {
+
+    static final String CACHE_NAME = "storage.files";
+
+    private final StorageService delegate;
+    private final long maxEntrySize;
+    private final Cache<String, CachedFile> cache;
+    private final SingleFlight<String, Download> downloads;
+    // incremented on each write, so that a file read while being replaced is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    record CachedFile(String mimeType, byte[] content) {
+        FileResourceDTO open(final int offset, final int length) {
+            return new FileResourceDTO(mimeType, length, new ByteArrayInputStream(content, offset, length));
+        }
+    }
+
+    /**
+     * File downloaded for concurrent callers: either cached, or not cacheable and then read by a single one of them
+     */
+    private record Download(CachedFile cached, AtomicReference<FileResourceDTO> file) {
+    }
+
+    /**
+     * @param delegate the storage actually holding the files
+     * @param maxSize the maximum total size of the cached files, in bytes
+     * @param maxEntrySize the maximum size of a cached file, in bytes. Larger files are always read from the storage
+     * @param meterRegistry the registry exporting the hit, miss, eviction and coalesced download metrics
+     */
+    public CachingStorageService(final StorageService delegate,
+                                 final long maxSize,
+                                 final long maxEntrySize,
+                                 final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxEntrySize = Math.min(maxEntrySize, Integer.MAX_VALUE - 8L);
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxSize)
+            .weigher((String key, CachedFile file) -> file.content().length)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.downloads = new SingleFlight<>(CACHE_NAME, meterRegistry);
+    }
+
+    @Override
+    public void storeFile(final MultipartFile multipartFile,
+                          final String name,
+                          final String folder,
+                          final boolean replace) throws StorageException {
+        try {
+            delegate.storeFile(multipartFile, name, folder, replace);
+        } finally {
+            invalidate(name, folder);
+        }
+    }
+
+    @Override
+    public void storeFile(final String name,
+                          final String folder,
+                          final byte[] content,
+                          final String contentType) throws StorageException {
+        try {
+            delegate.storeFile(name, folder, content, contentType);
+        } finally {
+            invalidate(name, folder);
+        }
+    }
+
+    @Override
+    public FileResourceDTO downloadFile(final String fileName,
+                                        final String folder) throws StorageException {
+        final String key = buildKey(fileName, folder);
+        final CachedFile cached = cache.getIfPresent(key);
+        if (Objects.nonNull(cached)) {
+            return cached.open(0, cached.content().length);
+        }
+
+        final Download download = downloads.execute(key, () -> download(fileName, folder, key));
+        if (Objects.nonNull(download.cached())) {
+            return download.cached().open(0, download.cached().content().length);
+        }
+        // a stream is read once: the other callers download the file on their own
+        final FileResourceDTO file = download.file().getAndSet(null);
+        return Objects.nonNull(file) ? file : delegate.downloadFile(fileName, folder);
+    }
+
+    private Download download(final String fileName,
+                              final String folder,
+                              final String key) {
+        final long loadGeneration = generation.get();
+        final FileResourceDTO file = delegate.downloadFile(fileName, folder);
+        if (!isCacheable(file)) {
+            return new Download(null, new AtomicReference<>(file));
+        }
+
+        final CachedFile loaded = new CachedFile(file.mimeType(), readContent(fileName, file));
+        cache.put(key, loaded);
+        // checked after the put: a concurrent write either sees the entry, or is seen here
+        if (generation.get() != loadGeneration) {
+            cache.asMap().remove(key, loaded);
+        }
+        return new Download(loaded, null);
+    }
+
+    @Override
+    public FileResourceDTO downloadFileRange(final String fileName,
+                                             final String folder,
+                                             final long start,
+                                             final long end) throws StorageException {
+        final CachedFile cached = cache.getIfPresent(buildKey(fileName, folder));
+        if (Objects.isNull(cached)) {
+            return delegate.downloadFileRange(fileName, folder, start, end);
+        }
+
+        final int offset = (int) Math.min(start, cached.content().length);
+        final int last = (int) Math.min(end, cached.content().length - 1L);
+        return cached.open(offset, Math.max(0, last - offset + 1));
+    }
+
+    @Override
+    public FileMetadataDTO getFileMetadata(final String fileName,
+                                           final String folder) throws StorageException {
+        final CachedFile cached = cache.getIfPresent(buildKey(fileName, folder));
+        if (Objects.nonNull(cached)) {
+            return new FileMetadataDTO(cached.mimeType(), cached.content().length);
+        }
+        return delegate.getFileMetadata(fileName, folder);
+    }
+
+    @Override
+    public void deleteFile(final String fileName,
+                           final String folder) throws StorageException {
+        try {
+            delegate.deleteFile(fileName, folder);
+        } finally {
+            invalidate(fileName, folder);
+        }
+    }
+
+    @Override
+    public void deleteFolder(final String folder) throws StorageException {
+        try {
+            delegate.deleteFolder(folder);
+        } finally {
+            generation.incrementAndGet();
+            downloads.forgetAll();
+            final String prefix = buildKey("", folder);
+            cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private void invalidate(final String fileName,
+                            final String folder) {
+        generation.incrementAndGet();
+        final String key = buildKey(fileName, folder);
+        // the file is downloaded again by the next callers, instead of waiting for a download started before the write
+        downloads.forget(key);
+        cache.invalidate(key);
+    }
+
+    private boolean isCacheable(final FileResourceDTO file) {
+        return Objects.isNull(file.path())
+            && file.contentLength() >= 0
+            && file.contentLength() <= maxEntrySize;
+    }
+
+    private static byte[] readContent(final String fileName,
+                                      final FileResourceDTO file) throws StorageException {
+        try (file) {
+            final byte[] content = file.stream().readNBytes((int) file.contentLength());
+            if (content.length != file.contentLength()) {
+                throw new IOException("Expected %d bytes, got %d".formatted(file.contentLength(), content.length));
+            }
+            return content;
+        } catch (IOException e) {
+            log.error("Could not read file '{}': {}", fileName, e.getMessage());
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not read file: %s".formatted(fileName), e);
+        }
+    }
+
+    static String buildKey(final String fileName,
+                           final String folder) {
+        return "%s/%s".formatted(folder, fileName);
+    }
+}
@@ -1,32 +1,73 @@
 package com.ariche.boatapi.service.storage;
 
 import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import com.ibm.cloud.objectstorage.SdkClientException;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.AbortMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.AmazonS3Exception;
+import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.DeleteObjectsRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.GetObjectRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.ListMultipartUploadsRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Request;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Result;
+import com.ibm.cloud.objectstorage.services.s3.model.MultipartUploadListing;
 import com.ibm.cloud.objectstorage.services.s3.model.ObjectMetadata;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
 import com.ibm.cloud.objectstorage.services.s3.model.S3Object;
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectSummary;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @Slf4j
 @RequiredArgsConstructor
 public class CloudStorageService implements StorageService {
 
+    static final String REQUESTS_METRIC = "storage.cos.requests";
+    private static final String NO_SUCH_KEY = "NoSuchKey";
+
     private final AmazonS3 cloudCOSClient;
     private final String bucketName;
+    private final ExecutorService uploadExecutor;
+    private final MultipartSettings multipartSettings;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Settings of the multipart uploads
+     * @param threshold the size from which files are uploaded in several parts
+     * @param partSize the size of each part, at least 5MB except for the last one
+     * @param abandonedAfter the age from which an incomplete upload is aborted
+     */
+    public record MultipartSettings(long threshold, long partSize, Duration abandonedAfter) {
+    }
 
     @Override
     public void storeFile(MultipartFile multipartFile, String name, String folder, boolean replace) throws StorageException {
         log.debug("Storing file: {}", name);
 
-        try {
-            storeFile(name, folder, multipartFile.getInputStream(), multipartFile.getContentType(), replace);
+        try (InputStream stream = multipartFile.getInputStream()) {
+            storeFile(name, folder, stream, multipartFile.getContentType(), multipartFile.getSize(), replace);
             log.debug("InputStream successfully saved on the cloud");
         } catch (IOException e) {
             log.error("Could not get Input Stream from input file: {}", e.getMessage(), e);
@@ -37,37 +78,78 @@ public class CloudStorageService implements StorageService {
         }
     }
 
+    @Override
+    public void storeFile(String name, String folder, byte[] content, String contentType) throws StorageException {
+        log.debug("Storing file: {}", name);
+        try {
+            storeFile(name, folder, new ByteArrayInputStream(content), contentType, content.length, true);
+        } catch (IOException e) {
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not store file: %s".formatted(name), e);
+        } catch (SdkClientException e) {
+            log.error("Error while calling COS-Service: {}", e.getMessage(), e);
+            throw toStorageException(name, e);
+        }
+    }
+
     @Override
     public FileResourceDTO downloadFile(String fileName, String folder) throws StorageException {
         log.debug("Downloading file '{}'", fileName);
         try {
-            if (!cloudCOSClient.doesObjectExist(buildFolderPath(folder), fileName)) {
-                throw new StorageException("File not found: %s".formatted(fileName));
-            } else {
-                final S3Object object = cloudCOSClient.getObject(buildFolderPath(folder), fileName);
-                final String mimeType = Optional.ofNullable(object.getObjectMetadata())
-                    .map(ObjectMetadata::getContentType)
-                    .orElse(null);
-                return new FileResourceDTO(mimeType, object.getObjectContent().readAllBytes());
-            }
+            // a missing object is reported by the GET itself, no need for a prior HEAD
+            countRequest("get");
+            final S3Object object = cloudCOSClient.getObject(buildFolderPath(folder), fileName);
+            final Optional<ObjectMetadata> metadata = Optional.ofNullable(object.getObjectMetadata());
+            final String mimeType = metadata
+                .map(ObjectMetadata::getContentType)
+                .orElse(null);
+            final long contentLength = metadata
+                .map(ObjectMetadata::getContentLength)
+                .orElse(-1L);
+            return new FileResourceDTO(mimeType, contentLength, object.getObjectContent());
         } catch (SdkClientException e) {
-            throw new StorageException(EStorageError.TRANSFER_ERROR, "Error while calling COS-Service", e);
-        } catch (IOException e) {
-            throw new StorageException("Error while saving InputStream", e);
+            throw toStorageException(fileName, e);
+        }
+    }
+
+    @Override
+    public FileResourceDTO downloadFileRange(String fileName, String folder, long start, long end) throws StorageException {
+        log.debug("Downloading file '{}' (bytes {}-{})", fileName, start, end);
+        try {
+            final GetObjectRequest request = new GetObjectRequest(buildFolderPath(folder), fileName)
+                .withRange(start, end);
+            countRequest("get");
+            final S3Object object = cloudCOSClient.getObject(request);
+            final String mimeType = Optional.ofNullable(object.getObjectMetadata())
+                .map(ObjectMetadata::getContentType)
+                .orElse(null);
+            return new FileResourceDTO(mimeType, end - start + 1, object.getObjectContent());
+        } catch (SdkClientException e) {
+            throw toStorageException(fileName, e);
+        }
+    }
+
+    @Override
+    public FileMetadataDTO getFileMetadata(String fileName, String folder) throws StorageException {
+        log.debug("Reading metadata of file '{}'", fileName);
+        try {
+            countRequest("head");
+            final ObjectMetadata metadata = cloudCOSClient.getObjectMetadata(buildFolderPath(folder), fileName);
+            return new FileMetadataDTO(metadata.getContentType(), metadata.getContentLength());
+        } catch (SdkClientException e) {
+            throw toStorageException(fileName, e);
         }
     }
 
     @Override
     public void deleteFile(String fileName, String folder) throws StorageException {
         log.debug("Deleting file {}", fileName);
-        if (cloudCOSClient.doesObjectExist(buildFolderPath(folder), fileName)) {
+        try {
+            // deleting a missing object succeeds as well, so neither a prior nor a later HEAD is needed
+            countRequest("delete");
             cloudCOSClient.deleteObject(buildFolderPath(folder), fileName);
-        }
-
-        if (!cloudCOSClient.doesObjectExist(buildFolderPath(folder), fileName)) {
             log.debug("File '{}' successfully deleted", fileName);
-        } else {
-            throw new StorageException("file was not deleted");
+        } catch (SdkClientException e) {
+            throw toStorageException(fileName, e);
         }
     }
 
@@ -75,20 +157,185 @@ public class CloudStorageService implements StorageService {
                           final String folder,
                           final InputStream stream,
                           final String contentType,
+                          final long contentLength,
                           final boolean replace) throws IOException {
+        if (!replace) {
+            countRequest("head");
+            if (cloudCOSClient.doesObjectExist(buildFolderPath(folder), name)) {
+                throw new StorageException(EStorageError.FILE_ALREADY_EXIST, name);
+            }
+        }
+
+        if (contentLength > multipartSettings.threshold()) {
+            storeFileMultipart(name, folder, stream, contentType, contentLength);
+            return;
+        }
 
         final ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentType(contentType);
-        metadata.setContentLength(stream.available());
-        if (!replace
-            && cloudCOSClient.doesObjectExist(buildFolderPath(folder), name)) {
-            throw new StorageException(EStorageError.FILE_ALREADY_EXIST, name);
+        metadata.setContentLength(contentLength);
+        countRequest("put");
+        cloudCOSClient.putObject(buildFolderPath(folder), name, stream, metadata);
+    }
+
+    /**
+     * Upload a file in several parts, sent in parallel on the upload executor.
+     * The upload is aborted on any failure, so that no part is left billed on the bucket.
+     * @param name the name of the file
+     * @param folder the folder of the file
+     * @param stream the content of the file, read part after part
+     * @param contentType the mime type of the file
+     * @param contentLength the size of the file in bytes
+     */
+    void storeFileMultipart(final String name,
+                            final String folder,
+                            final InputStream stream,
+                            final String contentType,
+                            final long contentLength) throws IOException {
+        final String bucket = buildFolderPath(folder);
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        countRequest("multipart-initiate");
+        final String uploadId = cloudCOSClient
+            .initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, name, metadata))
+            .getUploadId();
+        log.debug("Multipart upload {} started for file '{}' ({} bytes)", uploadId, name, contentLength);
+
+        final List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            for (long offset = 0; offset < contentLength; offset += multipartSettings.partSize(), partNumber++) {
+                final int size = (int) Math.min(multipartSettings.partSize(), contentLength - offset);
+                final byte[] buffer = stream.readNBytes(size);
+                if (buffer.length != size) {
+                    throw new IOException("Stream ended before the announced length (%d bytes)".formatted(contentLength));
+                }
+
+                final UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(name)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withPartSize(size)
+                    .withInputStream(new ByteArrayInputStream(buffer));
+                // the executor runs the part in this thread once its queue is full, which bounds the buffered parts
+                parts.add(uploadExecutor.submit(() -> {
+                    countRequest("multipart-part");
+                    return cloudCOSClient.uploadPart(request).getPartETag();
+                }));
+            }
+
+            final List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (final Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            countRequest("multipart-complete");
+            cloudCOSClient.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, name, uploadId, partETags));
+            log.debug("Multipart upload {} completed ({} parts)", uploadId, partETags.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortMultipartUpload(bucket, name, uploadId, parts);
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Upload interrupted", e);
+        } catch (ExecutionException e) {
+            abortMultipartUpload(bucket, name, uploadId, parts);
+            if (e.getCause() instanceof SdkClientException sdkClientException) {
+                throw sdkClientException;
+            }
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not upload part", e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(bucket, name, uploadId, parts);
+            throw e;
         }
+    }
 
-        cloudCOSClient.putObject(buildFolderPath(folder), name, stream, metadata);
+    /**
+     * Abort the multipart uploads started before the configured age, left behind by crashed instances
+     */
+    @Scheduled(fixedDelayString = "${cos.multipart.cleanup-delay:PT6H}")
+    public void abortAbandonedUploads() {
+        final Date initiatedBefore = Date.from(Instant.now().minus(multipartSettings.abandonedAfter()));
+        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName);
+        try {
+            MultipartUploadListing listing;
+            do {
+                countRequest("multipart-list");
+                listing = cloudCOSClient.listMultipartUploads(request);
+                listing.getMultipartUploads().stream()
+                    .filter(upload -> upload.getInitiated().before(initiatedBefore))
+                    .forEach(upload -> {
+                        log.info("Aborting abandoned multipart upload {} of '{}'", upload.getUploadId(), upload.getKey());
+                        countRequest("multipart-abort");
+                        cloudCOSClient.abortMultipartUpload(
+                            new AbortMultipartUploadRequest(bucketName, upload.getKey(), upload.getUploadId()));
+                    });
+                request = new ListMultipartUploadsRequest(bucketName)
+                    .withKeyMarker(listing.getNextKeyMarker())
+                    .withUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
+        } catch (SdkClientException e) {
+            log.warn("Could not clean up abandoned multipart uploads: {}", e.getMessage());
+        }
+    }
+
+    private void abortMultipartUpload(final String bucket,
+                                      final String name,
+                                      final String uploadId,
+                                      final List<Future<PartETag>> parts) {
+        parts.forEach(part -> part.cancel(true));
+        try {
+            countRequest("multipart-abort");
+            cloudCOSClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, name, uploadId));
+            log.debug("Multipart upload {} aborted", uploadId);
+        } catch (SdkClientException e) {
+            log.warn("Could not abort multipart upload {}, left to the cleanup: {}", uploadId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteFolder(String folder) throws StorageException {
+        log.debug("Deleting folder {}", folder);
+        try {
+            // a listing page holds at most 1000 keys, as many as a single bulk delete accepts
+            final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucketName)
+                .withPrefix("%s/".formatted(folder));
+            ListObjectsV2Result listing;
+            do {
+                countRequest("list");
+                listing = cloudCOSClient.listObjectsV2(request);
+                final String[] keys = listing.getObjectSummaries().stream()
+                    .map(S3ObjectSummary::getKey)
+                    .toArray(String[]::new);
+                if (keys.length > 0) {
+                    countRequest("bulk-delete");
+                    cloudCOSClient.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true));
+                }
+                request.withContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
+            log.debug("Folder '{}' successfully deleted", folder);
+        } catch (SdkClientException e) {
+            throw toStorageException(folder, e);
+        }
+    }
+
+    /**
+     * Count a request sent to COS, tagged with its operation
+     * @param operation the operation of the request
+     */
+    private void countRequest(final String operation) {
+        meterRegistry.counter(REQUESTS_METRIC, "operation", operation).increment();
     }
 
     public String buildFolderPath(final String folder) {
         return "%s/%s".formatted(bucketName, folder);
     }
+
+    static StorageException toStorageException(final String fileName, final SdkClientException e) {
+        if (e instanceof AmazonS3Exception s3Exception
+            && (s3Exception.getStatusCode() == HttpStatus.NOT_FOUND.value()
+                || NO_SUCH_KEY.equals(s3Exception.getErrorCode()))) {
+            return new StorageException(EStorageError.FILE_NOT_FOUND, "File not found: %s".formatted(fileName), e);
+        }
+        return new StorageException(EStorageError.TRANSFER_ERROR, "Error while calling COS-Service", e);
+    }
 }
@@ -0,0 +1,482 @@
+package com.ariche.boatapi.service.storage;
+
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache of a remote storage on the local disk, so that the files are served by the kernel
+ * (sendfile) instead of being downloaded on each read.
+ * The cache is bounded by the total size of the files, the least recently read ones being evicted first.
+ * Files are written to a temporary file then renamed, so that a partially downloaded file is never served,
+ * and the index is rebuilt from the disk on startup.
+ * Evicted and invalidated files are only deleted once no longer read, and after a delay covering the files handed
+ * to the container by path (sendfile), which opens them after the response is returned.
+ */
+@Slf4j
+public class DiskCacheStorageService implements StorageService {
+
+    static final String REQUESTS_METRIC = "storage.disk-cache.requests";
+    static final String SIZE_METRIC = "storage.disk-cache.size";
+    static final String TEMP_SUFFIX = ".tmp";
+    // the access time is persisted as the modification time, at most once per resolution to spare writes
+    static final Duration ACCESS_TIME_RESOLUTION = Duration.ofMinutes(1);
+    // evict down to this ratio of the maximum size, so that each new file does not trigger an eviction
+    private static final double EVICTION_RATIO = 0.9;
+
+    private final StorageService delegate;
+    private final Path root;
+    private final long maxSize;
+    private final Duration deletionDelay;
+    private final Map<Path, Entry> index = new ConcurrentHashMap<>();
+    private final Map<Path, CompletableFuture<Path>> loads = new ConcurrentHashMap<>();
+    // files no longer indexed, by time they were dropped, waiting for their readers before being deleted
+    private final Map<Path, Long> retired = new ConcurrentHashMap<>();
+    // number of open streams by file
+    private final Map<Path, Integer> readers = new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong();
+    // incremented on each write, so that a file downloaded while being replaced is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    static final class Entry {
+        private final long size;
+        private volatile long lastAccess;
+
+        Entry(final long size, final long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * @param delegate the remote storage actually holding the files
+     * @param root the folder of the cache
+     * @param maxSize the maximum total size of the cached files, in bytes
+     * @param deletionDelay the time a dropped file is kept once no longer read
+     * @param meterRegistry the registry exporting the hit and miss metrics
+     */
+    public DiskCacheStorageService(final StorageService delegate,
+                                   final Path root,
+                                   final long maxSize,
+                                   final Duration deletionDelay,
+                                   final MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.root = root;
+        this.maxSize = maxSize;
+        this.deletionDelay = deletionDelay;
+        this.hits = meterRegistry.counter(REQUESTS_METRIC, "result", "hit");
+        this.misses = meterRegistry.counter(REQUESTS_METRIC, "result", "miss");
+        Gauge.builder(SIZE_METRIC, totalSize, AtomicLong::get)
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Rebuild the index from the files left by a previous run, and drop the incomplete ones
+     */
+    @PostConstruct
+    public void loadIndex() {
+        try {
+            Files.createDirectories(root);
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile).forEach(this::loadEntry);
+            }
+        } catch (IOException e) {
+            log.error("Could not load disk cache '{}'", root, e);
+            throw new StorageException(EStorageError.INIT_STORAGE_SYSTEM_ERROR, "Could not load disk cache", e);
+        }
+        log.info("Disk cache loaded: {} file(s), {} byte(s)", index.size(), totalSize.get());
+        evictIfNeeded();
+    }
+
+    /**
+     * Delete the dropped files: the files still read on shutdown are left to the next run, which indexes them again
+     */
+    @PreDestroy
+    public void deleteRetired() {
+        retired.keySet().forEach(path -> {
+            if (!readers.containsKey(path) && !index.containsKey(path)) {
+                delete(path);
+            }
+        });
+        retired.clear();
+    }
+
+    @Override
+    public void storeFile(final MultipartFile multipartFile,
+                          final String name,
+                          final String folder,
+                          final boolean replace) throws StorageException {
+        try {
+            delegate.storeFile(multipartFile, name, folder, replace);
+        } finally {
+            invalidate(name, folder);
+        }
+    }
+
+    @Override
+    public void storeFile(final String name,
+                          final String folder,
+                          final byte[] content,
+                          final String contentType) throws StorageException {
+        try {
+            delegate.storeFile(name, folder, content, contentType);
+        } finally {
+            invalidate(name, folder);
+        }
+    }
+
+    @Override
+    public FileResourceDTO downloadFile(final String fileName,
+                                        final String folder) throws StorageException {
+        final Path path = buildPath(fileName, folder);
+        final Entry entry = index.get(path);
+        if (Objects.nonNull(entry)) {
+            final FileResourceDTO cached = open(path, entry);
+            if (Objects.nonNull(cached)) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+        final Path loaded = load(fileName, folder, path);
+        final Entry loadedEntry = Objects.nonNull(loaded) ? index.get(loaded) : null;
+        if (Objects.nonNull(loadedEntry)) {
+            final FileResourceDTO cached = open(loaded, loadedEntry);
+            if (Objects.nonNull(cached)) {
+                return cached;
+            }
+        }
+        // replaced or evicted in the meantime
+        return delegate.downloadFile(fileName, folder);
+    }
+
+    @Override
+    public FileResourceDTO downloadFileRange(final String fileName,
+                                             final String folder,
+                                             final long start,
+                                             final long end) throws StorageException {
+        final Path path = buildPath(fileName, folder);
+        final Entry entry = index.get(path);
+        if (Objects.isNull(entry)) {
+            return delegate.downloadFileRange(fileName, folder, start, end);
+        }
+
+        try {
+            final SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ);
+            try {
+                channel.position(start);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            touch(path, entry);
+            hits.increment();
+            final long length = end - start + 1;
+            return new FileResourceDTO(Files.probeContentType(path), length,
+                new ReaderInputStream(new BoundedInputStream(Channels.newInputStream(channel), length), path));
+        } catch (IOException e) {
+            log.debug("Could not read cached file '{}': {}", path, e.getMessage());
+            untrack(path);
+            return delegate.downloadFileRange(fileName, folder, start, end);
+        }
+    }
+
+    @Override
+    public FileMetadataDTO getFileMetadata(final String fileName,
+                                           final String folder) throws StorageException {
+        final Path path = buildPath(fileName, folder);
+        final Entry entry = index.get(path);
+        if (Objects.nonNull(entry)) {
+            try {
+                return new FileMetadataDTO(Files.probeContentType(path), entry.size);
+            } catch (IOException e) {
+                log.debug("Could not probe cached file '{}': {}", path, e.getMessage());
+            }
+        }
+        return delegate.getFileMetadata(fileName, folder);
+    }
+
+    @Override
+    public void deleteFile(final String fileName,
+                           final String folder) throws StorageException {
+        try {
+            delegate.deleteFile(fileName, folder);
+        } finally {
+            invalidate(fileName, folder);
+        }
+    }
+
+    @Override
+    public void deleteFolder(final String folder) throws StorageException {
+        // the cached files can not be listed by folder from their hashed paths: they are left to the eviction,
+        // a deleted folder being never read again
+        delegate.deleteFolder(folder);
+    }
+
+    /**
+     * Download the file into the cache. Concurrent misses on the same file wait for a single download
+     * @return the cached file, null if it was replaced during the download
+     */
+    private Path load(final String fileName,
+                      final String folder,
+                      final Path path) throws StorageException {
+        final CompletableFuture<Path> created = new CompletableFuture<>();
+        final CompletableFuture<Path> running = loads.putIfAbsent(path, created);
+        if (Objects.nonNull(running)) {
+            return await(running);
+        }
+
+        try {
+            created.complete(populate(fileName, folder, path));
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+        } finally {
+            loads.remove(path, created);
+        }
+        return await(created);
+    }
+
+    private Path populate(final String fileName,
+                          final String folder,
+                          final Path path) throws StorageException {
+        final long loadGeneration = generation.get();
+        try (FileResourceDTO file = delegate.downloadFile(fileName, folder)) {
+            Files.createDirectories(path.getParent());
+            final Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_SUFFIX);
+            try {
+                Files.copy(file.stream(), temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            track(path, Files.size(path), System.currentTimeMillis());
+        } catch (IOException e) {
+            log.error("Could not cache file '{}': {}", fileName, e.getMessage());
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not cache file: %s".formatted(fileName), e);
+        }
+
+        if (generation.get() != loadGeneration) {
+            untrack(path);
+            return null;
+        }
+        evictIfNeeded();
+        return path;
+    }
+
+    private static Path await(final CompletableFuture<Path> load) throws StorageException {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StorageException storageException) {
+                throw storageException;
+            }
+            throw new StorageException(EStorageError.TRANSFER_ERROR, "Could not cache file", e.getCause());
+        }
+    }
+
+    private FileResourceDTO open(final Path path,
+                                 final Entry entry) {
+        try {
+            final FileResourceDTO file = new FileResourceDTO(Files.probeContentType(path), entry.size,
+                new ReaderInputStream(Files.newInputStream(path), path), path);
+            touch(path, entry);
+            return file;
+        } catch (NoSuchFileException e) {
+            untrack(path);
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not open cached file '{}': {}", path, e.getMessage());
+            untrack(path);
+            return null;
+        }
+    }
+
+    private void touch(final Path path,
+                       final Entry entry) {
+        final long now = System.currentTimeMillis();
+        if (now - entry.lastAccess < ACCESS_TIME_RESOLUTION.toMillis()) {
+            return;
+        }
+        entry.lastAccess = now;
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+        } catch (IOException e) {
+            log.debug("Could not update access time of '{}': {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Drop the least recently read files until the cache is back under its maximum size
+     */
+    synchronized void evictIfNeeded() {
+        sweep();
+        if (totalSize.get() <= maxSize) {
+            return;
+        }
+
+        final List<Map.Entry<Path, Entry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+        final long target = (long) (maxSize * EVICTION_RATIO);
+        int evicted = 0;
+        for (final Map.Entry<Path, Entry> entry : entries) {
+            if (totalSize.get() <= target) {
+                break;
+            }
+            untrack(entry.getKey());
+            evicted++;
+        }
+        log.debug("Evicted {} file(s) from disk cache", evicted);
+    }
+
+    /**
+     * Delete the dropped files no longer read, once the deletion delay is over
+     */
+    @Scheduled(fixedDelayString = "${storage.disk-cache.sweep-delay:PT1M}")
+    public void sweep() {
+        final long deadline = System.currentTimeMillis() - deletionDelay.toMillis();
+        retired.forEach((path, retiredAt) -> {
+            if (retiredAt > deadline || readers.containsKey(path)) {
+                return;
+            }
+            // cached again meanwhile: the new file is kept
+            if (retired.remove(path, retiredAt) && !index.containsKey(path)) {
+                delete(path);
+            }
+        });
+    }
+
+    private void invalidate(final String fileName,
+                            final String folder) {
+        generation.incrementAndGet();
+        untrack(buildPath(fileName, folder));
+    }
+
+    private void loadEntry(final Path path) {
+        try {
+            if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            track(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            log.warn("Could not load cached file '{}': {}", path, e.getMessage());
+        }
+    }
+
+    private void track(final Path path,
+                       final long size,
+                       final long lastAccess) {
+        retired.remove(path);
+        final Entry previous = index.put(path, new Entry(size, lastAccess));
+        totalSize.addAndGet(size - (Objects.nonNull(previous) ? previous.size : 0L));
+    }
+
+    private void untrack(final Path path) {
+        final Entry removed = index.remove(path);
+        if (Objects.nonNull(removed)) {
+            totalSize.addAndGet(-removed.size);
+        }
+        // still read, or about to be sent by path: deleted later
+        retired.put(path, System.currentTimeMillis());
+    }
+
+    private void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached file '{}': {}", path, e.getMessage());
+        }
+    }
+
+    private void acquire(final Path path) {
+        readers.merge(path, 1, Integer::sum);
+    }
+
+    private void release(final Path path) {
+        readers.computeIfPresent(path, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Stream of a cached file, counted as a reader of the file until closed
+     */
+    private final class ReaderInputStream extends FilterInputStream {
+
+        private final Path path;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private ReaderInputStream(final InputStream in,
+                                  final Path path) {
+            super(in);
+            this.path = path;
+            acquire(path);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    release(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the path of a cached file, named after the hash of its location and spread on the first two characters
+     * of the hash. The extension is kept to guess the mime type of the file.
+     */
+    Path buildPath(final String fileName,
+                   final String folder) {
+        final String hash = DigestUtils.sha256Hex("%s/%s".formatted(folder, fileName));
+        final String extension = FilenameUtils.getExtension(fileName);
+        final String name = StringUtils.isAlphanumeric(extension) ? "%s.%s".formatted(hash, extension) : hash;
+        return root.resolve(hash.substring(0, 2)).resolve(name);
+    }
+
+    long getTotalSize() {
+        return totalSize.get();
+    }
+}
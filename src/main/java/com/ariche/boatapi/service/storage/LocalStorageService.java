@@ -1,17 +1,26 @@
 package com.ariche.boatapi.service.storage;
 
 import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -43,15 +52,31 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    @Override
+    public void storeFile(String name, String folder, byte[] content, String contentType) throws StorageException {
+        log.debug("Storing file: {} in {}", name, folder);
+        try {
+            final File folderDirectory = new File(getStorageFolderPath(), folder);
+            Files.createDirectories(folderDirectory.toPath());
+            Files.write(new File(folderDirectory, name).toPath(), content);
+        } catch (IOException e) {
+            throw new StorageException(
+                EStorageError.TECHNICAL_ERROR,
+                "Could not store file: %s".formatted(e.getMessage()),
+                e);
+        }
+    }
+
     @Override
     public FileResourceDTO downloadFile(String fileName, String folder) throws StorageException {
         log.debug("Downloading file: {}", fileName);
         final File parentFolder = new File(getStorageFolder(), folder);
-        final File imgFile = new File(parentFolder, fileName);
-        try (final InputStream stream = new FileInputStream(imgFile)) {
-            final String mimeType = Files.probeContentType(imgFile.toPath());
-            return new FileResourceDTO(mimeType, stream.readAllBytes());
-        } catch (FileNotFoundException e) {
+        final Path imgPath = new File(parentFolder, fileName).toPath();
+        try {
+            final long size = Files.size(imgPath);
+            final String mimeType = Files.probeContentType(imgPath);
+            return new FileResourceDTO(mimeType, size, Files.newInputStream(imgPath), imgPath);
+        } catch (NoSuchFileException e) {
             throw new StorageException(EStorageError.FILE_NOT_FOUND, fileName, e);
         } catch (IOException e) {
             throw new StorageException(
@@ -60,6 +85,46 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    @Override
+    public FileResourceDTO downloadFileRange(String fileName, String folder, long start, long end) throws StorageException {
+        log.debug("Downloading file: {} (bytes {}-{})", fileName, start, end);
+        final File parentFolder = new File(getStorageFolder(), folder);
+        final Path imgPath = new File(parentFolder, fileName).toPath();
+        try {
+            final String mimeType = Files.probeContentType(imgPath);
+            final SeekableByteChannel channel = Files.newByteChannel(imgPath, StandardOpenOption.READ);
+            try {
+                channel.position(start);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            final long length = end - start + 1;
+            return new FileResourceDTO(mimeType, length, new BoundedInputStream(Channels.newInputStream(channel), length));
+        } catch (NoSuchFileException e) {
+            throw new StorageException(EStorageError.FILE_NOT_FOUND, fileName, e);
+        } catch (IOException e) {
+            throw new StorageException(
+                "Could not download file: %s".formatted(e.getMessage()),
+                e);
+        }
+    }
+
+    @Override
+    public FileMetadataDTO getFileMetadata(String fileName, String folder) throws StorageException {
+        final File parentFolder = new File(getStorageFolder(), folder);
+        final Path imgPath = new File(parentFolder, fileName).toPath();
+        try {
+            return new FileMetadataDTO(Files.probeContentType(imgPath), Files.size(imgPath));
+        } catch (NoSuchFileException e) {
+            throw new StorageException(EStorageError.FILE_NOT_FOUND, fileName, e);
+        } catch (IOException e) {
+            throw new StorageException(
+                "Could not read file metadata: %s".formatted(e.getMessage()),
+                e);
+        }
+    }
+
     @Override
     public void deleteFile(String fileName, String folder) {
         log.debug("Deleting file: {}", fileName);
@@ -71,6 +136,17 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    @Override
+    public void deleteFolder(String folder) throws StorageException {
+        log.debug("Deleting folder: {}", folder);
+        try {
+            FileUtils.deleteDirectory(new File(getStorageFolder(), folder));
+        } catch (IOException e) {
+            log.warn("Folder {} could not be deleted: {}", folder, e.getMessage());
+            throw new StorageException(EStorageError.TECHNICAL_ERROR, "Could not delete folder: %s".formatted(folder), e);
+        }
+    }
+
     @PostConstruct
     public void createStorageFolder() {
         if (!getStorageFolder().exists()) {
@@ -1,5 +1,6 @@
 package com.ariche.boatapi.service.storage;
 
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -22,12 +23,63 @@ public interface StorageService {
         storeFile(multipartFile, name, folder, false);
     }
 
+    /**
+     * Store a file held in memory, replacing any file with the same name
+     * @param name the name of the file
+     * @param folder the folder of the file
+     * @param content the content of the file
+     * @param contentType the mime type of the file
+     * @throws StorageException if the file can not be stored
+     */
+    void storeFile(final String name,
+                   final String folder,
+                   final byte[] content,
+                   final String contentType) throws StorageException;
+
+    /**
+     * Open the stored file as a stream
+     * @param fileName the name of the file
+     * @param folder the folder of the file
+     * @return the streamed file, to be closed by the caller
+     * @throws StorageException if the file does not exist or can not be opened
+     */
     FileResourceDTO downloadFile(final String fileName,
                                  final String folder) throws StorageException;
 
+    /**
+     * Open a byte range of the stored file as a stream, without reading the bytes before the range
+     * @param fileName the name of the file
+     * @param folder the folder of the file
+     * @param start the index of the first byte of the range
+     * @param end the index of the last byte of the range (inclusive)
+     * @return the streamed range, to be closed by the caller
+     * @throws StorageException if the file does not exist or can not be opened
+     */
+    FileResourceDTO downloadFileRange(final String fileName,
+                                      final String folder,
+                                      final long start,
+                                      final long end) throws StorageException;
+
+    /**
+     * Get the description of the stored file, without opening its content
+     * @param fileName the name of the file
+     * @param folder the folder of the file
+     * @return the metadata of the file
+     * @throws StorageException if the file does not exist
+     */
+    FileMetadataDTO getFileMetadata(final String fileName,
+                                    final String folder) throws StorageException;
+
     void deleteFile(final String fileName,
                     final String folder) throws StorageException;
 
+    /**
+     * Delete a folder and all the files it contains. Deleting a missing folder succeeds as well
+     * @param folder the folder
+     * @throws StorageException if the files of the folder can not be deleted
+     */
+    void deleteFolder(final String folder) throws StorageException;
+
     default void deleteFileQuietly(final String fileName,
                                    final String folder) {
         try {
@@ -0,0 +1,9 @@
+package com.ariche.boatapi.service.storage.dto;
+
+/**
+ * Description of a stored file, without its content
+ * @param mimeType the mime type of the file, null if unknown
+ * @param contentLength the size of the file in bytes, negative if unknown
+ */
+public record FileMetadataDTO(String mimeType, long contentLength) {
+}
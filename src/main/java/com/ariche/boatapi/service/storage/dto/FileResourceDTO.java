@@ -1,29 +1,27 @@
 package com.ariche.boatapi.service.storage.dto;
 
-import java.util.Arrays;
-import java.util.Objects;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 
-public record FileResourceDTO(String mimeType, byte[] bytes) {
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        FileResourceDTO that = (FileResourceDTO) o;
-        return Objects.equals(mimeType, that.mimeType) && Arrays.equals(bytes, that.bytes);
-    }
+/**
+ * Stored file exposed as a stream, so that the content is never fully loaded in memory.
+ * The caller is in charge of closing it once the stream has been consumed.
+ * @param mimeType the mime type of the file, null if unknown
+ * @param contentLength the size of the file in bytes, negative if unknown
+ * @param stream the content of the file
+ * @param path the file on the local file system, null if the file is not stored locally.
+ *             When set, the content can be sent by the kernel without going through the stream.
+ */
+public record FileResourceDTO(String mimeType, long contentLength, InputStream stream, Path path) implements Closeable {
 
-    @Override
-    public int hashCode() {
-        int result = Objects.hash(mimeType);
-        result = 31 * result + Arrays.hashCode(bytes);
-        return result;
+    public FileResourceDTO(String mimeType, long contentLength, InputStream stream) {
+        this(mimeType, contentLength, stream, null);
     }
 
     @Override
-    public String toString() {
-        return "FileResourceDTO{" +
-            "mimeType='" + mimeType + '\'' +
-            ", bytes=" + Arrays.toString(bytes) +
-            '}';
+    public void close() throws IOException {
+        stream.close();
     }
 }
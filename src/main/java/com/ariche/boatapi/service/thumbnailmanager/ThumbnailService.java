@@ -0,0 +1,272 @@
+package com.ariche.boatapi.service.thumbnailmanager;
+
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.repository.customset.IBoatImgSet;
+import com.ariche.boatapi.service.boatmanager.BoatService;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
+import com.ariche.boatapi.service.storage.StorageService;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Generate the thumbnails of the images of boat in the background, once their upload has been committed.
+ * Thumbnails are stored in the folder of the boat, named after the ETag of their image, and only served
+ * once all of them have been generated for the current image.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    private final StorageService storageService;
+    private final BoatRepository boatRepository;
+    private final StorageOutboxService storageOutboxService;
+    private final ExecutorService thumbnailExecutor;
+    private final long maxPixels;
+
+    /**
+     * @param storageService the storage of the images and of their thumbnails
+     * @param boatRepository the repository flagging the thumbnails of a boat as generated
+     * @param storageOutboxService the outbox deleting the dropped thumbnails
+     * @param thumbnailExecutor the pool generating the thumbnails
+     * @param maxPixels the maximum number of pixels of an image, larger ones are served without thumbnails
+     */
+    public ThumbnailService(final StorageService storageService,
+                            final BoatRepository boatRepository,
+                            final StorageOutboxService storageOutboxService,
+                            @Qualifier("thumbnailExecutor") final ExecutorService thumbnailExecutor,
+                            @Value("${storage.thumbnails.max-pixels:50000000}") final long maxPixels) {
+        this.storageService = storageService;
+        this.boatRepository = boatRepository;
+        this.storageOutboxService = storageOutboxService;
+        this.thumbnailExecutor = thumbnailExecutor;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Generate the thumbnails of an image once the current transaction is committed, right away without transaction.
+     * The image is read back from the storage by the pool, so that the request does not wait for it.
+     * The thumbnails are not generated when the pool is saturated: the original image is served instead.
+     * @param boatId the boat id
+     * @param eTag the ETag of the image
+     * @param imgName the name of the stored image
+     * @param imgFolder the folder of the stored image
+     * @param mimeType the mime type of the image
+     */
+    public void generateAfterCommit(final Long boatId,
+                                    final String eTag,
+                                    final String imgName,
+                                    final String imgFolder,
+                                    final String mimeType) {
+        final Runnable task = () -> generate(boatId, eTag, imgName, imgFolder, mimeType);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(boatId, task);
+                }
+            });
+        } else {
+            submit(boatId, task);
+        }
+    }
+
+    /**
+     * Delete the thumbnails previously generated for a boat, once the current transaction is committed
+     * @param boatId the boat id
+     * @param imgSet the image of the boat the thumbnails were generated for
+     */
+    public void deleteThumbnails(final Long boatId,
+                                 final IBoatImgSet imgSet) {
+        if (StringUtils.isBlank(imgSet.getImgThumbnailsEtag())) {
+            return;
+        }
+        final String folder = BoatService.buildBoatStorageFolder(boatId);
+        EImageSize.thumbnails()
+            .forEach(size -> storageOutboxService.deleteFileAfterCommit(
+                buildThumbnailName(imgSet.getImgThumbnailsEtag(), size, imgSet.getImgName()), folder));
+    }
+
+    void generate(final Long boatId,
+                  final String eTag,
+                  final String imgName,
+                  final String imgFolder,
+                  final String mimeType) {
+        final String folder = BoatService.buildBoatStorageFolder(boatId);
+        try {
+            final BufferedImage source = readImage(imgName, imgFolder);
+            if (Objects.isNull(source)) {
+                log.warn("Image of boat ({}) can not be decoded or is too large, no thumbnail generated", boatId);
+                return;
+            }
+
+            final String format = MediaType.parseMediaType(mimeType).getSubtype();
+            for (final EImageSize size : EImageSize.thumbnails()) {
+                final byte[] thumbnail = resize(source, size.getWidth(), format);
+                final String name = buildThumbnailName(eTag, size, imgName);
+                // the same image may have been replaced then uploaded again, dropping its thumbnails meanwhile
+                storageOutboxService.cancelFileDeletion(name, folder);
+                storageService.storeFile(name, folder, thumbnail, mimeType);
+            }
+
+            if (boatRepository.updateImgThumbnailsByBoatId(boatId, eTag) == 0) {
+                log.debug("Image of boat ({}) replaced or deleted meanwhile, dropping its thumbnails", boatId);
+                deleteThumbnails(boatId, eTag, imgName);
+                return;
+            }
+            log.debug("Thumbnails of boat ({}) generated", boatId);
+        } catch (IOException | RuntimeException e) {
+            // nothing else would report it from the pool
+            log.error("Could not generate thumbnails of boat ({}): {}", boatId, e.getMessage(), e);
+            deleteThumbnails(boatId, eTag, imgName);
+        }
+    }
+
+    /**
+     * Decode an image, checking its dimensions beforehand so that a small file can not claim gigabytes of pixels.
+     * Large images are subsampled while decoded, only the pixels needed by the thumbnails are kept in memory
+     * @param imgName the name of the stored image
+     * @param imgFolder the folder of the stored image
+     * @return the image, null if it can not be decoded or is larger than the maximum
+     * @throws IOException if the image can not be read
+     */
+    private BufferedImage readImage(final String imgName,
+                                    final String imgFolder) throws IOException {
+        try (FileResourceDTO file = storageService.downloadFile(imgName, imgFolder);
+             ImageInputStream input = ImageIO.createImageInputStream(file.stream())) {
+            final Iterator<ImageReader> readers = Objects.isNull(input) ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    log.debug("Image '{}' of {}x{} pixels above the maximum of {}", imgName, width, height, maxPixels);
+                    return null;
+                }
+                final ImageReadParam param = reader.getDefaultReadParam();
+                final int subsampling = subsampling(width);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Compute the subsampling of an image decoded for its thumbnails: the decoded image stays at least twice
+     * as wide as the largest thumbnail, for the halving steps of the resize to smooth it
+     * @param width the width of the image
+     * @return the number of pixels read per pixel kept, on each axis
+     */
+    static int subsampling(final int width) {
+        final int maxWidth = EImageSize.thumbnails().stream()
+            .mapToInt(EImageSize::getWidth)
+            .max()
+            .orElse(width);
+        return Math.max(1, width / (2 * maxWidth));
+    }
+
+    private void submit(final Long boatId,
+                        final Runnable task) {
+        try {
+            thumbnailExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Thumbnail pool saturated, no thumbnail generated for boat ({})", boatId);
+        }
+    }
+
+    private void deleteThumbnails(final Long boatId,
+                                  final String eTag,
+                                  final String imgName) {
+        final String folder = BoatService.buildBoatStorageFolder(boatId);
+        EImageSize.thumbnails()
+            .forEach(size -> storageService.deleteFileQuietly(buildThumbnailName(eTag, size, imgName), folder));
+    }
+
+    /**
+     * Scale an image down to a width, keeping its ratio. Images narrower than the width are kept as they are.
+     * The image is halved step by step, as a single bilinear pass loses most details on large reductions.
+     * @param source the image
+     * @param width the width of the thumbnail
+     * @param format the ImageIO format of the thumbnail
+     * @return the encoded thumbnail
+     * @throws IOException if the image can not be encoded in the format
+     */
+    static byte[] resize(final BufferedImage source,
+                         final int width,
+                         final String format) throws IOException {
+        final int targetWidth = Math.min(width, source.getWidth());
+        final int targetHeight = Math.max(1, Math.round((float) source.getHeight() * targetWidth / source.getWidth()));
+        // JPEG has no alpha channel
+        final int type = "png".equals(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+            final BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            final Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth > targetWidth || currentHeight > targetHeight);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(current, format, outputStream)) {
+            throw new IOException("No image writer for format: %s".formatted(format));
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Build the name of a thumbnail. The extension of the image is kept, the local storage guesses the mime type from it
+     * @param eTag the ETag of the image
+     * @param size the size of the thumbnail
+     * @param imgName the name of the image
+     * @return the name of the thumbnail
+     */
+    public static String buildThumbnailName(final String eTag,
+                                            final EImageSize size,
+                                            final String imgName) {
+        final String extension = FilenameUtils.getExtension(imgName).toLowerCase(Locale.ROOT);
+        return StringUtils.isAlphanumeric(extension) ?
+            "%s_%d.%s".formatted(eTag, size.getWidth(), extension) : "%s_%d".formatted(eTag, size.getWidth());
+    }
+}
@@ -0,0 +1,95 @@
+package com.ariche.boatapi.service.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Run a single call per key at a time: the callers arriving while a call is running wait for it and share its
+ * result, or its exception, instead of calling again. The calls executed and coalesced are counted by name.
+ * @param <K> the type of the keys
+ * @param <V> the type of the results, shared between the callers
+ */
+public class SingleFlight<K, V> {
+
+    static final String CALLS_METRIC = "single.flight.calls";
+
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter coalesced;
+
+    /**
+     * @param name the name tagging the metrics
+     * @param meterRegistry the registry exporting the executed and coalesced calls
+     */
+    public SingleFlight(final String name,
+                        final MeterRegistry meterRegistry) {
+        this.executed = meterRegistry.counter(CALLS_METRIC, "name", name, "result", "executed");
+        this.coalesced = meterRegistry.counter(CALLS_METRIC, "name", name, "result", "coalesced");
+    }
+
+    /**
+     * Call the supplier, unless a call for the same key is running: its result is then awaited
+     * @param key the key of the call
+     * @param supplier the call, run on the thread of the caller
+     * @return the result of the call
+     */
+    public V execute(final K key,
+                     final Supplier<V> supplier) {
+        final CompletableFuture<V> created = new CompletableFuture<>();
+        final CompletableFuture<V> running = flights.putIfAbsent(key, created);
+        if (Objects.nonNull(running)) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        executed.increment();
+        try {
+            final V result = supplier.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, created);
+        }
+    }
+
+    /**
+     * Let the next callers of a key run a new call, instead of waiting for the running one. To be called once
+     * the data of the key is written, so that no caller gets a result read before
+     * @param key the key of the call
+     */
+    public void forget(final K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * Let the next callers of all keys run new calls
+     */
+    public void forgetAll() {
+        flights.clear();
+    }
+
+    private static <V> V await(final CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // thrown by the call, on the thread of its first caller
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
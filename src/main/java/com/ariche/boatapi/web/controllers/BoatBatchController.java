@@ -0,0 +1,68 @@
+package com.ariche.boatapi.web.controllers;
+
+import com.ariche.boatapi.security.CAuthorityNames;
+import com.ariche.boatapi.service.boatmanager.BoatService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatBatchDTO;
+import com.ariche.boatapi.web.errors.BoatAPIError;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Operations on several boats at once, custom methods of the boats collection (/api/v1/boats:method)
+ */
+@Slf4j
+@RestController
+@RequestMapping(path = "/api/v1")
+@RolesAllowed({ CAuthorityNames.ROLE_ADMIN })
+@RequiredArgsConstructor
+public class BoatBatchController {
+
+    private final BoatService boatService;
+
+    @ResponseStatus(HttpStatus.CREATED)
+    @Operation(
+        summary = "Create boats",
+        description = "Create several boats at once: all boats are validated, then either all of them are created or none"
+    )
+    @PostMapping(
+        path = "/boats:batch",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "201",
+        description = "Ok",
+        content = @Content(schema = @Schema(implementation = BoatBatchDTO.class))
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "Invalid boats, one problem per invalid field of each boat",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_ADMIN)
+    public ResponseEntity<BoatBatchDTO> createBoats(@RequestBody @Valid BoatBatchDTO batch) {
+        log.debug("[POST] Create {} boats", batch.boats().size());
+        return ResponseEntity
+            .status(HttpStatus.CREATED)
+            .body(new BoatBatchDTO(boatService.createBoats(batch.boats())));
+    }
+}
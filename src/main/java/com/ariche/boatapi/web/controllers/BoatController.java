@@ -1,32 +1,55 @@
 package com.ariche.boatapi.web.controllers;
 
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
 import com.ariche.boatapi.security.CAuthorityNames;
 import com.ariche.boatapi.service.boatmanager.BoatService;
+import com.ariche.boatapi.service.boatmanager.BoatSuggestionService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursorPageDTO;
 import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatImageDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatLookupDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatSuggestionDTO;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.boatmanager.dto.ETotalCount;
+import com.ariche.boatapi.service.boatmanager.dto.ImageVersionDTO;
+import com.ariche.boatapi.service.exportmanager.BoatExportService;
+import com.ariche.boatapi.service.exportmanager.dto.EExportFormat;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import com.ariche.boatapi.web.errors.BoatAPIError;
+import com.ariche.boatapi.web.utils.FileResponseUtils;
 import com.ariche.boatapi.web.utils.ResponseUtils;
+import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springdoc.core.annotations.ParameterObject;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -37,11 +60,14 @@ import java.util.Optional;
 public class BoatController {
 
     private final BoatService boatService;
+    private final BoatExportService boatExportService;
+    private final BoatSuggestionService boatSuggestionService;
 
     @ResponseStatus(HttpStatus.OK)
     @Operation(
         summary = "Find all boats",
-        description = "Find all boats, paginated, sorted and ordered"
+        description = "Find all boats, paginated, sorted and ordered. The total is counted unless 'total' is NONE, " +
+            "only telling whether a next page exists, or ESTIMATE, estimated from the statistics of the database"
     )
     @GetMapping(
         produces = MediaType.APPLICATION_JSON_VALUE
@@ -56,12 +82,197 @@ public class BoatController {
         content = @Content(schema = @Schema(implementation = BoatAPIError.class))
     )
     @RolesAllowed(CAuthorityNames.ROLE_USER)
-    public ResponseEntity<Page<BoatDTO>> findAllBoats(@ParameterObject Pageable pageable) {
-        log.debug("[GET] Find all boats (size={};page={})", pageable.getPageSize(), pageable.getPageNumber());
-        final Page<BoatDTO> boats = boatService.findALlBoats(pageable);
+    public ResponseEntity<Slice<BoatDTO>> findAllBoats(@ParameterObject Pageable pageable,
+                                                       @Parameter(description = "Total returned along the page")
+                                                       @RequestParam(name = "total", required = false, defaultValue = "EXACT") ETotalCount total) {
+        log.debug("[GET] Find all boats (size={};page={};total={})", pageable.getPageSize(), pageable.getPageNumber(), total);
+        final Slice<BoatDTO> boats = switch (total) {
+            case NONE -> boatService.findBoatsSlice(pageable);
+            case ESTIMATE -> boatService.findBoatsWithEstimatedTotal(pageable);
+            case EXACT -> boatService.findALlBoats(pageable);
+        };
         return ResponseEntity.ok(boats);
     }
 
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Find all boats, by cursor",
+        description = "Find all boats sorted by name then id, page after page. Selected by the 'after' parameter: " +
+            "empty for the first page, then the 'next' cursor of the previous page. No total is returned"
+    )
+    @GetMapping(
+        params = {"after", "!ids"},
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok"
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "Invalid cursor or size",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<BoatCursorPageDTO> findAllBoatsAfter(@Parameter(description = "Cursor of the page, empty for the first one")
+                                                               @RequestParam(name = "after", required = false) String after,
+                                                               @Parameter(description = "Maximum number of boats")
+                                                               @RequestParam(name = "size", defaultValue = "20") int size) {
+        log.debug("[GET] Find all boats (size={};after={})", size, after);
+        return ResponseEntity.ok(boatService.findAllBoatsAfter(after, size));
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Find boats by ids",
+        description = "Find up to 500 boats at once, selected by the 'ids' parameter. One entry is returned per id, " +
+            "in the order of the ids, without boat when it can not be found"
+    )
+    @GetMapping(
+        params = {"ids", "!after"},
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok"
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "Invalid ids",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<List<BoatLookupDTO>> findBoatsByIds(@Parameter(description = "Comma separated ids of the boats")
+                                                              @RequestParam(name = "ids", required = false) List<Long> ids) {
+        log.debug("[GET] Find boats by ids (ids={})", ids);
+        return ResponseEntity.ok(boatService.findBoatsByIds(ids));
+    }
+
+    /**
+     * Reject the listings selected both by cursor and by ids, which would otherwise be served by the offset listing
+     * @throws BoatAPIException always
+     */
+    @Hidden
+    @GetMapping(
+        params = {"after", "ids"},
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<Void> findBoatsAfterAndByIds() {
+        throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Parameters 'after' and 'ids' can not be combined");
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Search boats",
+        description = "Search boats by full text in their name and description, best ranked first, page after page. " +
+            "A match in the name ranks above a match in the description. The query accepts words, \"quoted phrases\", " +
+            "'or' and -excluded words. The 'after' parameter is the 'next' cursor of the previous page, for the same query"
+    )
+    @GetMapping(
+        path = "/search",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok"
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "Invalid query, cursor or size",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<BoatCursorPageDTO> searchBoats(@Parameter(description = "Searched words")
+                                                         @RequestParam(name = "q", required = false) String query,
+                                                         @Parameter(description = "Cursor of the page, empty for the first one")
+                                                         @RequestParam(name = "after", required = false) String after,
+                                                         @Parameter(description = "Maximum number of boats")
+                                                         @RequestParam(name = "size", defaultValue = "20") int size) {
+        log.debug("[GET] Search boats (q={};size={};after={})", query, size, after);
+        return ResponseEntity.ok(boatService.searchBoats(query, after, size));
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Suggest boats",
+        description = "Suggest boats while their name is being typed: names starting with the text first, then names " +
+            "looking like it, typos included. Nothing is suggested below 2 characters. A boat created or renamed " +
+            "may take a few seconds to be suggested"
+    )
+    @GetMapping(
+        path = "/suggestions",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok"
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "Invalid query or size",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<List<BoatSuggestionDTO>> suggestBoats(@Parameter(description = "Typed text")
+                                                                @RequestParam(name = "q", required = false) String query,
+                                                                @Parameter(description = "Maximum number of suggestions")
+                                                                @RequestParam(name = "size", defaultValue = "10") int size) {
+        log.debug("[GET] Suggest boats (q={};size={})", query, size);
+        return ResponseEntity.ok(boatSuggestionService.suggestBoats(query, size));
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Export all boats",
+        description = "Export all boats sorted by id, one boat per line, streamed while being read"
+    )
+    @GetMapping(
+        path = "/export",
+        produces = { "application/x-ndjson", "text/csv" }
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok"
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_USER)
+    public ResponseEntity<StreamingResponseBody> exportBoats(@Parameter(description = "Format of the export")
+                                                             @RequestParam(name = "format", required = false, defaultValue = "NDJSON") EExportFormat format) {
+        log.debug("[GET] Export boats (format={})", format);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(format.getMimeType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("boats.%s".formatted(format.getExtension()))
+                .build()
+                .toString())
+            .body(outputStream -> boatExportService.exportBoats(format, outputStream));
+    }
+
     @ResponseStatus(HttpStatus.CREATED)
     @Operation(
         summary = "Create a boat",
@@ -107,7 +318,12 @@ public class BoatController {
     @ApiResponse(
         responseCode = "200",
         description = "Ok",
-        content = @Content(schema = @Schema(implementation = BoatDTO.class))
+        content = @Content(schema = @Schema(implementation = BoatDTO.class)),
+        headers = @Header(name = HttpHeaders.ETAG, description = "Version of the boat", schema = @Schema(implementation = String.class))
+    )
+    @ApiResponse(
+        responseCode = "304",
+        description = "Not modified, for requests with an If-None-Match header matching the current version"
     )
     @ApiResponse(
         responseCode = "401",
@@ -123,7 +339,7 @@ public class BoatController {
     public ResponseEntity<BoatDTO> findBoatById(@PathVariable(name = "boatId") Long boatId) {
         log.debug("[GET] Find boat by id: {}", boatId);
         final Optional<BoatDTO> boatDTO = boatService.findBoatById(boatId);
-        return ResponseUtils.wrapOrNotFound(boatDTO);
+        return ResponseUtils.wrapOrNotFound(boatDTO, BoatDTO::version);
     }
 
     @ResponseStatus(HttpStatus.CREATED)
@@ -185,7 +401,18 @@ public class BoatController {
     @ApiResponse(
         responseCode = "200",
         description = "Ok",
-        content = @Content(schema = @Schema(implementation = byte[].class))
+        content = @Content(schema = @Schema(implementation = byte[].class)),
+        headers = {
+            @Header(name = HttpHeaders.ACCEPT_RANGES, description = "Unit of the ranges supported", schema = @Schema(implementation = String.class)),
+            @Header(name = HttpHeaders.ETAG, description = "Hash of the image", schema = @Schema(implementation = String.class)),
+            @Header(name = HttpHeaders.LAST_MODIFIED, description = "Upload date of the image", schema = @Schema(implementation = String.class))
+        }
+    )
+    @ApiResponse(
+        responseCode = "206",
+        description = "Partial content, for requests with a Range header",
+        content = @Content(schema = @Schema(implementation = byte[].class)),
+        headers = @Header(name = HttpHeaders.CONTENT_RANGE, description = "Range of the image being sent", schema = @Schema(implementation = String.class))
     )
     @ApiResponse(
         responseCode = "401",
@@ -197,28 +424,64 @@ public class BoatController {
         description = "Not found",
         content = @Content(schema = @Schema(implementation = BoatAPIError.class))
     )
+    @ApiResponse(
+        responseCode = "304",
+        description = "Not modified, for requests with an If-None-Match or If-Modified-Since header matching the current image"
+    )
+    @ApiResponse(
+        responseCode = "416",
+        description = "Requested range not satisfiable"
+    )
     @RolesAllowed(CAuthorityNames.ROLE_USER)
-    public ResponseEntity<byte[]> downloadBoatImage(@PathVariable(name = "boatId") Long boatId) {
-        log.debug("[GET] Download boat image for: {}", boatId);
-        final Optional<FileResourceDTO> optImage = boatService.downloadImageForBoat(boatId);
+    public ResponseEntity<StreamingResponseBody> downloadBoatImage(@PathVariable(name = "boatId") Long boatId,
+                                                                   @Parameter(description = "Size of the image, the original is sent while its thumbnails are being generated")
+                                                                   @RequestParam(name = "size", required = false, defaultValue = "ORIGINAL") EImageSize size,
+                                                                   @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+                                                                   @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                                                   HttpServletRequest request,
+                                                                   WebRequest webRequest) {
+        log.debug("[GET] Download boat image for: {} (size={};range={})", boatId, size, range);
+        // a single read of the row: the validators always match the content sent
+        final Optional<BoatImageDTO> optBoatImage = boatService.findImageForBoat(boatId, size);
+        if (optBoatImage.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        final BoatImageDTO boatImage = optBoatImage.get();
+        final Optional<ImageVersionDTO> optVersion = Optional.ofNullable(boatImage.version());
+        final String eTag = optVersion.map(ImageVersionDTO::eTag).orElse(null);
+        final Instant lastModified = optVersion.map(ImageVersionDTO::lastModified).orElse(null);
+        if (optVersion.isPresent() && FileResponseUtils.checkNotModified(webRequest, eTag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        final List<HttpRange> ranges = FileResponseUtils.parseRanges(range, ifRange, eTag, lastModified);
+        if (!ranges.isEmpty()) {
+            final Optional<FileMetadataDTO> optMetadata = boatService.findImageMetadata(boatImage);
+            if (optMetadata.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            if (optMetadata.get().contentLength() >= 0) {
+                return FileResponseUtils.wrapFileRanges(ranges, optMetadata.get(),
+                    (start, end) -> boatService.downloadImageRange(boatImage, start, end));
+            }
+        }
+
+        final Optional<FileResourceDTO> optImage = boatService.downloadImage(boatImage);
 
         if (optImage.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
 
-        final String mimeType = StringUtils.isNotBlank(optImage.get().mimeType()) ?
-            optImage.get().mimeType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
-
-        return ResponseEntity
-            .status(HttpStatus.OK)
-            .header(HttpHeaders.CONTENT_TYPE, mimeType)
-            .body(optImage.get().bytes());
+        return FileResponseUtils.wrapFile(optImage.get(), request);
     }
 
     @ResponseStatus(HttpStatus.OK)
     @Operation(
         summary = "Update a boat",
-        description = "Update the boat identified by its id"
+        description = "Update the boat identified by its id. With an If-Match header, the boat is only updated " +
+            "if its version still matches the ETag"
     )
     @PutMapping(
         path = "/{boatId}",
@@ -245,12 +508,19 @@ public class BoatController {
         description = "Not found",
         content = @Content(schema = @Schema(implementation = BoatAPIError.class))
     )
+    @ApiResponse(
+        responseCode = "412",
+        description = "Updated meanwhile, the If-Match header does not match the current version",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
     @RolesAllowed("ROLE_ADMIN")
     public ResponseEntity<BoatDTO> updateBoatById(@PathVariable(name = "boatId") Long boatId,
+                                                  @Parameter(description = "ETag of the boat the update is based on")
+                                                  @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
                                                   @RequestBody @Valid BoatDTO boat) {
         log.debug("[PUT] Update boat by id: {}", boatId);
-        final BoatDTO res = boatService.updateBoat(boatId, boat);
-        return ResponseEntity.ok(res);
+        final BoatDTO res = boatService.updateBoat(boatId, boat, parseVersion(ifMatch));
+        return ResponseUtils.wrapOrNotFound(Optional.of(res), BoatDTO::version);
     }
 
     @ResponseStatus(HttpStatus.OK)
@@ -278,4 +548,20 @@ public class BoatController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Parse the version of a boat from an If-Match header, as sent in the ETag header
+     * @param ifMatch the If-Match header, null if absent
+     * @return the version, null to match any version
+     * @throws BoatAPIException if the header is not a version of boat
+     */
+    private static Long parseVersion(final String ifMatch) {
+        if (StringUtils.isBlank(ifMatch) || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        try {
+            return Long.valueOf(StringUtils.strip(ifMatch.trim(), "\""));
+        } catch (NumberFormatException e) {
+            throw new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Invalid If-Match header: %s".formatted(ifMatch));
+        }
+    }
 }
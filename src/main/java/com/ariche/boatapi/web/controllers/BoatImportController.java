@@ -0,0 +1,109 @@
+package com.ariche.boatapi.web.controllers;
+
+import com.ariche.boatapi.security.CAuthorityNames;
+import com.ariche.boatapi.service.importmanager.BoatImportService;
+import com.ariche.boatapi.service.importmanager.dto.BoatImportDTO;
+import com.ariche.boatapi.web.errors.BoatAPIError;
+import com.ariche.boatapi.web.utils.ResponseUtils;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.headers.Header;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.annotation.security.RolesAllowed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.InputStream;
+
+/**
+ * Imports of boats from CSV files, run in the background
+ */
+@Slf4j
+@RestController
+@RequestMapping(path = "/api/v1")
+@RolesAllowed({ CAuthorityNames.ROLE_ADMIN })
+@RequiredArgsConstructor
+public class BoatImportController {
+
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final BoatImportService boatImportService;
+
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @Operation(
+        summary = "Import boats",
+        description = "Upload a CSV file of boats as request body, imported in the background: a header then one boat per line, " +
+            "name;description, UTF-8 encoded. The CSV export is accepted too, its ids being ignored. " +
+            "All rows are validated, then either all of them are imported or none"
+    )
+    @PostMapping(
+        path = "/boats:import",
+        consumes = TEXT_CSV_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "202",
+        description = "Accepted",
+        content = @Content(schema = @Schema(implementation = BoatImportDTO.class)),
+        headers = @Header(name = HttpHeaders.LOCATION, description = "Link to the status of the import", schema = @Schema(implementation = String.class))
+    )
+    @ApiResponse(
+        responseCode = "400",
+        description = "File too big",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_ADMIN)
+    public ResponseEntity<BoatImportDTO> importBoats(InputStream content) {
+        log.debug("[POST] Import boats");
+        final BoatImportDTO res = boatImportService.submitImport(content);
+        return ResponseEntity
+            .accepted()
+            .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/v1/boats/imports/{importId}")
+                .buildAndExpand(res.id())
+                .toUri())
+            .body(res);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(
+        summary = "Find an import by id",
+        description = "Find the import identified by its id, to follow its progress"
+    )
+    @GetMapping(
+        path = "/boats/imports/{importId}",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ApiResponse(
+        responseCode = "200",
+        description = "Ok",
+        content = @Content(schema = @Schema(implementation = BoatImportDTO.class))
+    )
+    @ApiResponse(
+        responseCode = "401",
+        description = "Unauthorized",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @ApiResponse(
+        responseCode = "404",
+        description = "Not found",
+        content = @Content(schema = @Schema(implementation = BoatAPIError.class))
+    )
+    @RolesAllowed(CAuthorityNames.ROLE_ADMIN)
+    public ResponseEntity<BoatImportDTO> findImportById(@PathVariable(name = "importId") Long importId) {
+        log.debug("[GET] Find import by id: {}", importId);
+        return ResponseUtils.wrapOrNotFound(boatImportService.findImportById(importId));
+    }
+}
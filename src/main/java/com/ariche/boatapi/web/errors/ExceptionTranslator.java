@@ -18,6 +18,7 @@ import org.springframework.transaction.TransactionSystemException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.util.Collections;
@@ -87,6 +88,13 @@ public final class ExceptionTranslator {
         return buildResponse(errorCode, EBoatAPIError.INVALID_REQUEST, errors);
     }
 
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<BoatAPIError> handleMethodArgumentTypeMismatchException(final MethodArgumentTypeMismatchException ex) {
+        final String errorCode = errorCodeGenerator.generateErrorCode();
+        log.error("[MethodArgumentTypeMismatchException] {}", errorCode);
+        return buildResponse(errorCode, EBoatAPIError.INVALID_REQUEST, new ProblemDTO("Invalid '%s'".formatted(ex.getName())));
+    }
+
     @ExceptionHandler(DataIntegrityViolationException.class)
     public ResponseEntity<BoatAPIError> handleDataIntegrityViolationException(final DataIntegrityViolationException ex) {
         if (ex.getCause() instanceof org.hibernate.exception.ConstraintViolationException cex) {
@@ -0,0 +1,274 @@
+package com.ariche.boatapi.web.utils;
+
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+@Slf4j
+public final class FileResponseUtils {
+
+    static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+    static final String ACCEPT_RANGES_BYTES = "bytes";
+
+    /**
+     * Function opening a byte range of a file
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        Optional<FileResourceDTO> read(long start, long end);
+    }
+
+    record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        String toContentRange(final long totalLength) {
+            return "bytes %d-%d/%d".formatted(start, end, totalLength);
+        }
+    }
+
+    /**
+     * Build a 200-Response sending the whole file.
+     * A file stored on the local file system is handed to the container sendfile support when available,
+     * or transferred with {@link FileChannel#transferTo} otherwise. Any other file is streamed through a fixed-size buffer.
+     * @param file the file to be sent, closed once sent
+     * @param request the current request
+     * @return the response sending the file
+     */
+    public static ResponseEntity<StreamingResponseBody> wrapFile(final FileResourceDTO file,
+                                                                 final HttpServletRequest request) {
+        final ResponseEntity.BodyBuilder builder = ResponseEntity
+            .status(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, getMimeType(file.mimeType()))
+            .header(HttpHeaders.ACCEPT_RANGES, ACCEPT_RANGES_BYTES);
+        if (file.contentLength() >= 0) {
+            builder.contentLength(file.contentLength());
+        }
+
+        if (Objects.nonNull(file.path()) && file.contentLength() >= 0) {
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+                // the container copies the file straight from the page cache to the socket once headers are sent
+                closeQuietly(file);
+                request.setAttribute(SENDFILE_FILENAME_ATTR, file.path().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, 0L);
+                request.setAttribute(SENDFILE_END_ATTR, file.contentLength());
+                return builder.build();
+            }
+            return builder.body(outputStream -> transferFile(file, outputStream));
+        }
+
+        return builder.body(outputStream -> {
+            try (file) {
+                file.stream().transferTo(outputStream);
+            }
+        });
+    }
+
+    /**
+     * Parse the ranges requested by the client.
+     * The Range header is ignored when it is malformed, or when it is conditioned by an If-Range header
+     * that does not match the current validators of the file: the whole file must be sent in that case.
+     * @param rangeHeader the value of the Range header, may be null
+     * @param ifRangeHeader the value of the If-Range header, may be null
+     * @param eTag the ETag of the file, unquoted, null if unknown
+     * @param lastModified the last modification date of the file, null if unknown
+     * @return the requested ranges, empty if the whole file must be sent
+     */
+    public static List<HttpRange> parseRanges(final String rangeHeader,
+                                              final String ifRangeHeader,
+                                              final String eTag,
+                                              final Instant lastModified) {
+        if (StringUtils.isBlank(rangeHeader) || !matchesIfRange(ifRangeHeader, eTag, lastModified)) {
+            return Collections.emptyList();
+        }
+
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring invalid Range header '{}': {}", rangeHeader, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Check the conditional headers of the request against the validators of the file.
+     * The ETag and Last-Modified headers are added to the response, and its status is set to 304
+     * when the client already holds the current version of the file.
+     * @param webRequest the current request
+     * @param eTag the ETag of the file, unquoted
+     * @param lastModified the last modification date of the file, null if unknown
+     * @return true if the file has not been modified, so that no body must be sent
+     */
+    public static boolean checkNotModified(final WebRequest webRequest,
+                                           final String eTag,
+                                           final Instant lastModified) {
+        return webRequest.checkNotModified(eTag, Objects.nonNull(lastModified) ? lastModified.toEpochMilli() : -1L);
+    }
+
+    static boolean matchesIfRange(final String ifRangeHeader,
+                                  final String eTag,
+                                  final Instant lastModified) {
+        if (StringUtils.isBlank(ifRangeHeader)) {
+            return true;
+        }
+
+        final String ifRange = ifRangeHeader.trim();
+        if (ifRange.startsWith("\"")) {
+            // If-Range requires a strong comparison
+            return StringUtils.isNotBlank(eTag) && ifRange.equals("\"%s\"".formatted(eTag));
+        }
+        if (ifRange.startsWith("W/") || Objects.isNull(lastModified)) {
+            return false;
+        }
+
+        try {
+            final Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == lastModified.getEpochSecond();
+        } catch (DateTimeParseException e) {
+            log.debug("Ignoring invalid If-Range header '{}'", ifRange);
+            return false;
+        }
+    }
+
+    /**
+     * Build a 206-Response sending the requested ranges of the file, as a multipart/byteranges body
+     * when several ranges are requested. Each range is read on its own, so the bytes out of the ranges are never read.
+     * @param ranges the requested ranges
+     * @param metadata the metadata of the whole file
+     * @param reader the function opening a range of the file
+     * @return the response sending the ranges, 416-Response if the ranges can not be satisfied,
+     * 404-Response if the file can not be read anymore
+     */
+    public static ResponseEntity<StreamingResponseBody> wrapFileRanges(final List<HttpRange> ranges,
+                                                                       final FileMetadataDTO metadata,
+                                                                       final RangeReader reader) {
+        final long length = metadata.contentLength();
+        final List<ByteRange> byteRanges;
+        try {
+            byteRanges = ranges.stream()
+                .map(range -> new ByteRange(range.getRangeStart(length), range.getRangeEnd(length)))
+                .toList();
+        } catch (IllegalArgumentException e) {
+            return unsatisfiableRange(length);
+        }
+
+        // overlapping ranges could be used to make us send the file many times
+        if (byteRanges.stream().mapToLong(ByteRange::length).sum() > length) {
+            return unsatisfiableRange(length);
+        }
+
+        final String mimeType = getMimeType(metadata.mimeType());
+        if (byteRanges.size() == 1) {
+            final ByteRange range = byteRanges.get(0);
+            final Optional<FileResourceDTO> optPart = reader.read(range.start(), range.end());
+            if (optPart.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+
+            final FileResourceDTO part = optPart.get();
+            return ResponseEntity
+                .status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                .header(HttpHeaders.ACCEPT_RANGES, ACCEPT_RANGES_BYTES)
+                .header(HttpHeaders.CONTENT_RANGE, range.toContentRange(length))
+                .contentLength(range.length())
+                .body(outputStream -> {
+                    try (part) {
+                        part.stream().transferTo(outputStream);
+                    }
+                });
+        }
+
+        final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        return ResponseEntity
+            .status(HttpStatus.PARTIAL_CONTENT)
+            .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=%s".formatted(boundary))
+            .header(HttpHeaders.ACCEPT_RANGES, ACCEPT_RANGES_BYTES)
+            .body(outputStream -> {
+                for (final ByteRange range : byteRanges) {
+                    final FileResourceDTO part = reader.read(range.start(), range.end())
+                        .orElseThrow(() -> new IOException("File is not available anymore"));
+                    try (part) {
+                        writeAscii(outputStream, "\r\n--%s\r\n".formatted(boundary));
+                        writeAscii(outputStream, "%s: %s\r\n".formatted(HttpHeaders.CONTENT_TYPE, mimeType));
+                        writeAscii(outputStream, "%s: %s\r\n\r\n".formatted(HttpHeaders.CONTENT_RANGE, range.toContentRange(length)));
+                        part.stream().transferTo(outputStream);
+                    }
+                }
+                writeAscii(outputStream, "\r\n--%s--\r\n".formatted(boundary));
+            });
+    }
+
+    static ResponseEntity<StreamingResponseBody> unsatisfiableRange(final long length) {
+        return ResponseEntity
+            .status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+            .header(HttpHeaders.CONTENT_RANGE, "bytes */%d".formatted(length))
+            .build();
+    }
+
+    static void writeAscii(final OutputStream outputStream, final String value) throws IOException {
+        outputStream.write(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static void transferFile(final FileResourceDTO file,
+                             final OutputStream outputStream) throws IOException {
+        try (file; FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            final WritableByteChannel target = Channels.newChannel(outputStream);
+            final long size = file.contentLength();
+            long position = 0;
+            while (position < size) {
+                final long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;  // the file was truncated in the meantime
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    static String getMimeType(final String mimeType) {
+        return StringUtils.isNotBlank(mimeType) ?
+            mimeType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    static void closeQuietly(final FileResourceDTO file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("Could not close file stream: {}", e.getMessage());
+        }
+    }
+
+    private FileResponseUtils() {
+    }
+}
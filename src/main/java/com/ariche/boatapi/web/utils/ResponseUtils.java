@@ -2,7 +2,9 @@ package com.ariche.boatapi.web.utils;
 
 import org.springframework.http.ResponseEntity;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 
 public final class ResponseUtils {
 
@@ -18,6 +20,25 @@ public final class ResponseUtils {
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Build a response entity with status-code OK and the given ETag if the given optional is present,
+     * NOT_FOUND if the optional is empty.
+     * Spring answers a 304-Response instead when the ETag matches the If-None-Match header of a GET request.
+     * @param optBody the optional body
+     * @param eTagProvider the function giving the ETag of the body, returning null if the body has no ETag
+     * @return a 200-Response if the optional is present, 404-Response otherwise
+     * @param <T> generic type of the body to be returned
+     */
+    public static <T> ResponseEntity<T> wrapOrNotFound(final Optional<T> optBody,
+                                                       final Function<T, ?> eTagProvider) {
+        return optBody.map(body -> {
+                final Object eTag = eTagProvider.apply(body);
+                return Objects.isNull(eTag) ?
+                    ResponseEntity.ok(body) : ResponseEntity.ok().eTag(eTag.toString()).body(body);
+            })
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     private ResponseUtils() {
     }
 }
@@ -0,0 +1,28 @@
+package com.ariche.boatapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoatImportConfigurationTest {
+
+    private final BoatImportConfiguration configuration = new BoatImportConfiguration();
+
+    @Test
+    void test_ImportExecutor() {
+        final ExecutorService executor = configuration.importExecutor(1, 4);
+        try {
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            assertEquals(1, threadPoolExecutor.getCorePoolSize());
+            assertEquals(1, threadPoolExecutor.getMaximumPoolSize());
+            assertEquals(4, threadPoolExecutor.getQueue().remainingCapacity());
+            assertTrue(threadPoolExecutor.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.AbortPolicy);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ariche.boatapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataSourceConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withUserConfiguration(PropertiesConfiguration.class, DataSourceConfiguration.class)
+        .withPropertyValues(
+            "spring.datasource.url=jdbc:postgresql://primary:5432/boats",
+            "spring.datasource.username=user",
+            "spring.datasource.password=password");
+
+    @Configuration
+    @EnableConfigurationProperties(DataSourceProperties.class)
+    static class PropertiesConfiguration {
+    }
+
+    @Test
+    void test_PrimaryDataSource_HikariProperties() {
+        contextRunner
+            .withPropertyValues(
+                "datasource.replicas.urls=jdbc:postgresql://replica:5432/boats",
+                "spring.datasource.hikari.maximum-pool-size=42",
+                "spring.datasource.hikari.connection-timeout=1234",
+                "spring.datasource.hikari.minimum-idle=2")
+            .run(context -> {
+                final HikariDataSource primary = context.getBean(HikariDataSource.class);
+                assertEquals("jdbc:postgresql://primary:5432/boats", primary.getJdbcUrl());
+                assertEquals("user", primary.getUsername());
+                assertEquals(ReplicaRoutingDataSource.PRIMARY, primary.getPoolName());
+                assertEquals(42, primary.getMaximumPoolSize());
+                assertEquals(1234L, primary.getConnectionTimeout());
+                assertEquals(2, primary.getMinimumIdle());
+                assertSame(primary, context.getBean(ReplicaRoutingDataSource.class).getResolvedDefaultDataSource());
+                assertNotSame(primary, context.getBean(DataSource.class));
+            });
+    }
+
+    @Test
+    void test_NoReplica() {
+        contextRunner
+            .run(context -> {
+                assertTrue(context.getBeansOfType(HikariDataSource.class).isEmpty());
+                assertTrue(context.getBeansOfType(ReplicaRoutingDataSource.class).isEmpty());
+            });
+    }
+}
@@ -0,0 +1,170 @@
+package com.ariche.boatapi.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+
+    private String user = "user";
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        final Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        dataSource = new ReplicaRoutingDataSource(primary, replicas, Duration.ofSeconds(5), Duration.ofMinutes(1), () -> user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void test_Route_NoTransaction() throws SQLException {
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 0.0);
+        dataSource.checkReplicas();
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadOnly() throws SQLException {
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 1.5);
+        dataSource.checkReplicas();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(List.of("replica-1", "replica-2", "replica-1"),
+            List.of(dataSource.determineCurrentLookupKey(), dataSource.determineCurrentLookupKey(), dataSource.determineCurrentLookupKey()));
+    }
+
+    @Test
+    void test_Route_ReadOnly_NoReplicaAvailable() throws SQLException {
+        mockLag(replica1, 12.0);
+        when(replica2.getConnection()).thenThrow(new SQLException("Connection refused"));
+        dataSource.checkReplicas();
+        assertTrue(dataSource.getAvailableReplicas().isEmpty());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadOnly_NotCheckedYet() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadYourWrites() throws SQLException {
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 0.0);
+        dataSource.checkReplicas();
+
+        TransactionSynchronizationManager.initSynchronization();
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+        final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        // not committed yet
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+
+        user = "other";
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadYourWrites_ReadFor() throws SQLException {
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 0.0);
+        dataSource.checkReplicas();
+
+        TransactionSynchronizationManager.initSynchronization();
+        dataSource.determineCurrentLookupKey();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // a query shared with the user, run by another one
+        user = "other";
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, ReplicaRoutingDataSource.readFor(Arrays.asList("other", null),
+            dataSource::determineCurrentLookupKey));
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, ReplicaRoutingDataSource.readFor(List.of("other", "user"),
+            dataSource::determineCurrentLookupKey));
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadFromPrimary() throws SQLException {
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 0.0);
+        dataSource.checkReplicas();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, ReplicaRoutingDataSource.readFromPrimary(
+            () -> ReplicaRoutingDataSource.readFromPrimary(dataSource::determineCurrentLookupKey)));
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, ReplicaRoutingDataSource.readFromPrimary(
+            () -> ReplicaRoutingDataSource.readFor(List.of("other"), dataSource::determineCurrentLookupKey)));
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    void test_Route_ReadYourWrites_Anonymous() throws SQLException {
+        user = null;
+        mockLag(replica1, 0.0);
+        mockLag(replica2, 0.0);
+        dataSource.checkReplicas();
+
+        TransactionSynchronizationManager.initSynchronization();
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+    }
+
+    @Test
+    void test_MeasureLag() throws SQLException {
+        mockLag(replica1, 2.3456);
+        assertEquals(Duration.ofMillis(2_346), ReplicaRoutingDataSource.measureLag(replica1));
+    }
+
+    private static void mockLag(final DataSource replica,
+                                final double seconds) throws SQLException {
+        final Connection connection = mock(Connection.class);
+        final Statement statement = mock(Statement.class);
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(ReplicaRoutingDataSource.LAG_QUERY)).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(seconds);
+    }
+}
@@ -1,18 +1,31 @@
 package com.ariche.boatapi.config;
 
+import com.ariche.boatapi.service.storage.CachingStorageService;
 import com.ariche.boatapi.service.storage.CloudStorageService;
+import com.ariche.boatapi.service.storage.DiskCacheStorageService;
 import com.ariche.boatapi.service.storage.LocalStorageService;
 import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.StorageService;
 import com.ibm.cloud.objectstorage.ClientConfiguration;
 import com.ibm.cloud.objectstorage.auth.AWSStaticCredentialsProvider;
 import com.ibm.cloud.objectstorage.client.builder.AwsClientBuilder;
 import com.ibm.cloud.objectstorage.oauth.BasicIBMOAuthCredentials;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3ClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.MockedConstruction;
 import org.mockito.MockedStatic;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -119,11 +132,71 @@ class StorageConfigurationTest {
             .when(configuration)
             .buildClient(anyString(), anyString(), anyString(), anyString(), anyString(), anyInt());
 
-        assertDoesNotThrow(() -> configuration.cloudCOSClient("url", "location", 20_000, "bucket","iam", "key", "id"));
+        final ExecutorService executor = mock(ExecutorService.class);
+        final DataSize threshold = DataSize.ofMegabytes(16);
+        final DataSize partSize = DataSize.ofMegabytes(8);
+        final Duration abandonedAfter = Duration.ofDays(1);
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        assertDoesNotThrow(() -> configuration.cloudCOSClient("url", "location", 20_000, "bucket","iam", "key", "id",
+            executor, threshold, partSize, abandonedAfter, meterRegistry));
         verify(configuration)
             .buildClient("url", "location", "iam", "key", "id", 20_000);
 
-        assertTrue(configuration.cloudCOSClient("url", "location", 20_000, "bucket","iam", "key", "id") instanceof CloudStorageService);
+        assertTrue(configuration.cloudCOSClient("url", "location", 20_000, "bucket","iam", "key", "id",
+            executor, threshold, partSize, abandonedAfter, meterRegistry) instanceof CloudStorageService);
+
+    }
+
+    @Test
+    void test_DiskCacheStorageService(@TempDir Path diskCache) {
+        final CloudStorageService cloudStorageService = mock(CloudStorageService.class);
+
+        assertNotNull(configuration.diskCacheStorageService(cloudStorageService, diskCache.toString(), DataSize.ofGigabytes(1),
+            Duration.ofMinutes(1), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void test_StorageService() {
+        final StorageService backend = mock(StorageService.class);
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        assertTrue(configuration.storageService(backend, noDiskCache(), DataSize.ofMegabytes(64), DataSize.ofMegabytes(4), meterRegistry)
+            instanceof CachingStorageService);
+        assertSame(backend, configuration.storageService(backend, noDiskCache(), DataSize.ofBytes(0), DataSize.ofMegabytes(4), meterRegistry));
+    }
+
+    @Test
+    void test_StorageService_LocalFiles() {
+        final StorageService backend = mock(CloudStorageService.class);
+        final DiskCacheStorageService diskCache = mock(DiskCacheStorageService.class);
+        final ObjectProvider<DiskCacheStorageService> diskCacheProvider = noDiskCache();
+        when(diskCacheProvider.getIfAvailable()).thenReturn(diskCache);
+        final StorageService local = mock(LocalStorageService.class);
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // their files are served from the disk, none would be cached in memory
+        assertSame(diskCache, configuration.storageService(backend, diskCacheProvider, DataSize.ofMegabytes(64), DataSize.ofMegabytes(4), meterRegistry));
+        assertSame(local, configuration.storageService(local, noDiskCache(), DataSize.ofMegabytes(64), DataSize.ofMegabytes(4), meterRegistry));
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+
+    @Test
+    void test_CosUploadExecutor() {
+        final ExecutorService executor = configuration.cosUploadExecutor(3);
+        try {
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            assertEquals(3, threadPoolExecutor.getMaximumPoolSize());
+            assertEquals(3, threadPoolExecutor.getQueue().remainingCapacity());
+            assertTrue(threadPoolExecutor.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<DiskCacheStorageService> noDiskCache() {
+        return mock(ObjectProvider.class);
     }
 }
@@ -0,0 +1,28 @@
+package com.ariche.boatapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailConfigurationTest {
+
+    private final ThumbnailConfiguration configuration = new ThumbnailConfiguration();
+
+    @Test
+    void test_ThumbnailExecutor() {
+        final ExecutorService executor = configuration.thumbnailExecutor(2, 16);
+        try {
+            assertTrue(executor instanceof ThreadPoolExecutor);
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            assertEquals(2, threadPoolExecutor.getCorePoolSize());
+            assertEquals(2, threadPoolExecutor.getMaximumPoolSize());
+            assertEquals(16, threadPoolExecutor.getQueue().remainingCapacity());
+            assertTrue(threadPoolExecutor.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.AbortPolicy);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
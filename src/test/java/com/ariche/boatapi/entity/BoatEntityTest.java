@@ -1,8 +1,22 @@
 package com.ariche.boatapi.entity;
 
+import jakarta.persistence.SequenceGenerator;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BoatEntityTest {
 
@@ -13,11 +27,52 @@ class BoatEntityTest {
         entity.setName("name");
         entity.setDescription("description");
         entity.setImgName("img");
+        entity.setVersion(3L);
+        entity.setImgEtag("etag");
+        entity.setImgUpdatedAt(Instant.EPOCH);
+        entity.setImgBlobHash("hash");
 
         assertEquals(24L, entity.getId());
         assertEquals("name", entity.getName());
         assertEquals("description", entity.getDescription());
         assertEquals("img", entity.getImgName());
+        assertEquals(3L, entity.getVersion());
+        assertEquals("etag", entity.getImgEtag());
+        assertEquals(Instant.EPOCH, entity.getImgUpdatedAt());
+        assertEquals("hash", entity.getImgBlobHash());
     }
 
+    @Test
+    void test_Id_FreshSequence() throws NoSuchFieldException {
+        final SequenceGenerator generator = BoatEntity.class.getDeclaredField("id").getAnnotation(SequenceGenerator.class);
+        final YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yaml"));
+        final String optimizerName = yaml.getObject().getProperty("spring.jpa.properties.hibernate.id.optimizer.pooled.preferred");
+        final Optimizer optimizer = OptimizerFactory.buildOptimizer(optimizerName, Long.class,
+            generator.allocationSize(), generator.initialValue());
+
+        // boat_sequence of an empty database: starts at 10, incremented by the allocation size
+        final AtomicLong sequence = new AtomicLong(10L - generator.allocationSize());
+        final AccessCallback callback = new AccessCallback() {
+            @Override
+            public IntegralDataTypeHolder getNextValue() {
+                return IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class)
+                    .initialize(sequence.addAndGet(generator.allocationSize()));
+            }
+
+            @Override
+            public String getTenantIdentifier() {
+                return null;
+            }
+        };
+
+        final Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 3 * generator.allocationSize(); i++) {
+            final long id = ((Number) optimizer.generate(callback)).longValue();
+            // above the ids of the sample boats
+            assertTrue(id >= 10L, "id %d".formatted(id));
+            assertTrue(ids.add(id));
+        }
+        assertEquals(10L + 3L * generator.allocationSize() - 1, ids.stream().mapToLong(Long::longValue).max().orElseThrow());
+    }
 }
@@ -0,0 +1,29 @@
+package com.ariche.boatapi.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImageBlobEntityTest {
+
+    @Test
+    void test_basics() {
+        final ImageBlobEntity entity = new ImageBlobEntity();
+        entity.setHash("hash");
+        entity.setMimeType("image/png");
+        entity.setSize(42L);
+        entity.setRefCount(2);
+        entity.setCreatedAt(Instant.EPOCH);
+        entity.setUnreferencedAt(Instant.MAX);
+
+        assertEquals("hash", entity.getHash());
+        assertEquals("image/png", entity.getMimeType());
+        assertEquals(42L, entity.getSize());
+        assertEquals(2, entity.getRefCount());
+        assertEquals(Instant.EPOCH, entity.getCreatedAt());
+        assertEquals(Instant.MAX, entity.getUnreferencedAt());
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.ariche.boatapi.service.blobmanager;
+
+import com.ariche.boatapi.entity.ImageBlobEntity;
+import com.ariche.boatapi.repository.ImageBlobRepository;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.StorageService;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ImageBlobServiceTest {
+
+    private static final String HASH = "039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
+
+    @Mock
+    private ImageBlobRepository imageBlobRepository;
+    @Mock
+    private StorageService storageService;
+    @Mock
+    private StorageOutboxService storageOutboxService;
+    @Mock
+    private Consumer<String> referencer;
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+    @InjectMocks
+    private ImageBlobService service;
+
+    private final MockMultipartFile file = new MockMultipartFile("file", "original.png", MediaType.IMAGE_PNG_VALUE, new byte[]{1, 2, 3});
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(service, "gcGracePeriod", Duration.ofHours(1));
+        ReflectionTestUtils.setField(service, "gcBatchSize", 10);
+    }
+
+    @Test
+    void test_Acquire_NewBlob() {
+        when(imageBlobRepository.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+
+        assertEquals(HASH + ".png", service.acquire(file, HASH, referencer));
+
+        final InOrder inOrder = inOrder(storageOutboxService, storageService, transactionManager, imageBlobRepository, referencer);
+        inOrder.verify(storageOutboxService).cancelFileDeletion(HASH + ".png", "blobs/03");
+        inOrder.verify(storageService).storeFile(file, HASH + ".png", "blobs/03", true);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(imageBlobRepository).insertIfAbsent(HASH, MediaType.IMAGE_PNG_VALUE, 3L);
+        inOrder.verify(referencer).accept(HASH + ".png");
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void test_Acquire_ExistingBlob() {
+        final ImageBlobEntity blob = new ImageBlobEntity();
+        blob.setMimeType(MediaType.IMAGE_JPEG_VALUE);
+        when(imageBlobRepository.existsById(anyString())).thenReturn(true);
+        when(imageBlobRepository.incrementRefCount(anyString())).thenReturn(1);
+        when(imageBlobRepository.findById(anyString())).thenReturn(Optional.of(blob));
+
+        assertEquals(HASH + ".jpeg", service.acquire(file, HASH, referencer));
+
+        verify(imageBlobRepository).incrementRefCount(HASH);
+        verify(imageBlobRepository, never()).insertIfAbsent(anyString(), anyString(), anyLong());
+        verify(referencer).accept(HASH + ".jpeg");
+        verify(storageService, never()).storeFile(any(MultipartFile.class), anyString(), anyString(), anyBoolean());
+        verifyNoInteractions(storageOutboxService);
+    }
+
+    @Test
+    void test_Acquire_CollectedMeanwhile() {
+        when(imageBlobRepository.existsById(anyString())).thenReturn(true, false);
+        when(imageBlobRepository.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+
+        assertEquals(HASH + ".png", service.acquire(file, HASH, referencer));
+
+        verify(imageBlobRepository, times(2)).incrementRefCount(HASH);
+        verify(imageBlobRepository, times(1)).insertIfAbsent(HASH, MediaType.IMAGE_PNG_VALUE, 3L);
+        verify(storageOutboxService).cancelFileDeletion(HASH + ".png", "blobs/03");
+        verify(storageService).storeFile(file, HASH + ".png", "blobs/03", true);
+        verify(referencer, times(1)).accept(HASH + ".png");
+    }
+
+    @Test
+    void test_Acquire_Failure() {
+        when(imageBlobRepository.existsById(anyString())).thenReturn(true);
+
+        assertThrows(StorageException.class, () -> service.acquire(file, HASH, referencer));
+        verify(imageBlobRepository, times(3)).incrementRefCount(HASH);
+        verify(storageService, never()).storeFile(any(MultipartFile.class), anyString(), anyString(), anyBoolean());
+        verifyNoInteractions(referencer);
+    }
+
+    @Test
+    void test_Acquire_ReferencerFailure() {
+        when(imageBlobRepository.existsById(anyString())).thenReturn(true);
+        when(imageBlobRepository.incrementRefCount(anyString())).thenReturn(1);
+        doThrow(EntityNotFoundException.class)
+            .when(referencer)
+            .accept(anyString());
+
+        assertThrows(EntityNotFoundException.class, () -> service.acquire(file, HASH, referencer));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void test_Release() {
+        when(imageBlobRepository.decrementRefCount(anyString())).thenReturn(1);
+        service.release(HASH);
+        verify(imageBlobRepository).decrementRefCount(HASH);
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_CollectGarbage() {
+        final ImageBlobEntity blob1 = new ImageBlobEntity();
+        blob1.setHash(HASH);
+        blob1.setMimeType(MediaType.IMAGE_PNG_VALUE);
+        final ImageBlobEntity blob2 = new ImageBlobEntity();
+        blob2.setHash("ab12");
+        blob2.setMimeType(MediaType.IMAGE_JPEG_VALUE);
+        when(imageBlobRepository.lockUnreferencedBlobs(any(Instant.class), anyInt())).thenReturn(List.of(blob1, blob2));
+
+        final Instant before = Instant.now().minus(Duration.ofHours(1));
+        service.collectGarbage();
+
+        final ArgumentCaptor<Instant> captor = ArgumentCaptor.forClass(Instant.class);
+        verify(imageBlobRepository).lockUnreferencedBlobs(captor.capture(), eq(10));
+        assertFalse(captor.getValue().isBefore(before));
+        verify(storageOutboxService).deleteFileAfterCommit(HASH + ".png", "blobs/03");
+        verify(storageOutboxService).deleteFileAfterCommit("ab12.jpeg", "blobs/ab");
+        verify(imageBlobRepository).delete(blob1);
+        verify(imageBlobRepository).delete(blob2);
+        // the files are deleted once committed, by the outbox
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_CollectGarbage_Nothing() {
+        when(imageBlobRepository.lockUnreferencedBlobs(any(Instant.class), anyInt())).thenReturn(Collections.emptyList());
+        service.collectGarbage();
+        verifyNoInteractions(storageService, storageOutboxService);
+    }
+
+    @Test
+    void test_BuildBlobFolder() {
+        assertEquals("blobs/03", ImageBlobService.buildBlobFolder(HASH));
+    }
+
+    @Test
+    void test_BuildBlobFileName() {
+        assertEquals("abcd.png", ImageBlobService.buildBlobFileName("abcd", MediaType.IMAGE_PNG_VALUE));
+        assertEquals("abcd.jpeg", ImageBlobService.buildBlobFileName("abcd", MediaType.IMAGE_JPEG_VALUE));
+    }
+}
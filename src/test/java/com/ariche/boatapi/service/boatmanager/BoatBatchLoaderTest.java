@@ -0,0 +1,92 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.entity.BoatEntity;
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.repository.customset.IBoatSet;
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class BoatBatchLoaderTest {
+
+    private final BoatRepository boatRepository = mock(BoatRepository.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void test_Load_Disabled() {
+        final BoatEntity entity = new BoatEntity();
+        entity.setId(12L);
+        when(boatRepository.findById(12L)).thenReturn(Optional.of(entity));
+
+        final BoatBatchLoader loader = new BoatBatchLoader(boatRepository, Duration.ZERO, 100);
+
+        assertEquals(12L, loader.load(12L).map(BoatDTO::id).orElseThrow());
+        verify(boatRepository, never()).findBoatsByIds(anyCollection());
+    }
+
+    @Test
+    void test_Load_Alone() {
+        final List<IBoatSet> boats = List.of(buildBoatSet(12L));
+        when(boatRepository.findBoatsByIds(anyCollection())).thenReturn(boats);
+
+        final BoatBatchLoader loader = new BoatBatchLoader(boatRepository, Duration.ofMillis(1), 100);
+
+        assertEquals("Boat 12", loader.load(12L).map(BoatDTO::name).orElseThrow());
+        assertTrue(loader.load(13L).isEmpty());
+        verify(boatRepository).findBoatsByIds(List.of(12L));
+        verify(boatRepository).findBoatsByIds(List.of(13L));
+    }
+
+    @Test
+    void test_Load_Batched() throws Exception {
+        final List<IBoatSet> boats = List.of(buildBoatSet(1L), buildBoatSet(3L));
+        when(boatRepository.findBoatsByIds(anyCollection())).thenReturn(boats);
+
+        // full after 3 distinct ids, long before the end of the window
+        final BoatBatchLoader loader = new BoatBatchLoader(boatRepository, Duration.ofMinutes(1), 3);
+
+        final Future<Optional<BoatDTO>> first = executor.submit(() -> loader.load(1L));
+        final Future<Optional<BoatDTO>> second = executor.submit(() -> loader.load(2L));
+        final Future<Optional<BoatDTO>> third = executor.submit(() -> loader.load(3L));
+
+        assertEquals("Boat 1", first.get().map(BoatDTO::name).orElseThrow());
+        assertTrue(second.get().isEmpty());
+        assertEquals("Boat 3", third.get().map(BoatDTO::name).orElseThrow());
+        verify(boatRepository, times(1)).findBoatsByIds(argThat((Collection<Long> ids) -> ids.size() == 3));
+        verifyNoMoreInteractions(boatRepository);
+    }
+
+    @Test
+    void test_Load_Failure() {
+        when(boatRepository.findBoatsByIds(anyCollection())).thenThrow(new IllegalStateException("Connection refused"));
+
+        final BoatBatchLoader loader = new BoatBatchLoader(boatRepository, Duration.ofMillis(1), 100);
+
+        final IllegalStateException e = assertThrows(IllegalStateException.class, () -> loader.load(12L));
+        assertEquals("Connection refused", e.getMessage());
+    }
+
+    private static IBoatSet buildBoatSet(final Long id) {
+        final IBoatSet boatSet = mock(IBoatSet.class);
+        when(boatSet.getId()).thenReturn(id);
+        when(boatSet.getName()).thenReturn("Boat " + id);
+        return boatSet;
+    }
+}
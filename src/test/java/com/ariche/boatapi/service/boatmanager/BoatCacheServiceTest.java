@@ -0,0 +1,154 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.config.ReplicaRoutingDataSource;
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.invalidationmanager.CacheInvalidationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BoatCacheServiceTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replicaConnection = mock(Connection.class);
+    private final ThreadLocal<String> user = new ThreadLocal<>();
+    // connections used by the loads
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    private MeterRegistry meterRegistry;
+    private ReplicaRoutingDataSource dataSource;
+    private BoatCacheService boatCacheService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        final Statement statement = mock(Statement.class);
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(0.0);
+
+        dataSource = new ReplicaRoutingDataSource(primary, Map.of("replica", replica), Duration.ofSeconds(5),
+            Duration.ofMinutes(1), user::get);
+        dataSource.afterPropertiesSet();
+        dataSource.checkReplicas();
+
+        meterRegistry = new SimpleMeterRegistry();
+        boatCacheService = new BoatCacheService(Duration.ofMinutes(5), 100, meterRegistry, mock(CacheInvalidationService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void test_Get_Cached() {
+        final Function<Long, Optional<BoatDTO>> loader = id -> Optional.of(read(new BoatDTO(id, "name", null)));
+
+        assertEquals("name", boatCacheService.get(3L, loader).orElseThrow().name());
+        assertEquals("name", boatCacheService.get(3L, id -> fail("cached")).orElseThrow().name());
+        assertEquals(List.of(primaryConnection), connections);
+
+        boatCacheService.evictAfterCommit(3L);
+        assertEquals("name", boatCacheService.get(3L, loader).orElseThrow().name());
+        assertEquals(2, connections.size());
+    }
+
+    @Test
+    void test_Get_StickyCallerJoiningLoad() throws Exception {
+        commitWrite("writer");
+        final CountDownLatch release = new CountDownLatch(1);
+        final Function<Long, Optional<BoatDTO>> loader = id -> {
+            await(release);
+            return Optional.of(read(new BoatDTO(id, "name", null)));
+        };
+
+        // started by a user who did not write, joined by the writer reading their own write
+        final Future<Optional<BoatDTO>> reader = executor.submit(() -> getAs("reader", loader));
+        awaitCount("executed", 1.0);
+        final Future<Optional<BoatDTO>> writer = executor.submit(() -> getAs("writer", id -> fail("coalesced")));
+        awaitCount("coalesced", 1.0);
+        release.countDown();
+
+        assertEquals("name", reader.get().orElseThrow().name());
+        assertEquals("name", writer.get().orElseThrow().name());
+        // a replica could still serve the boat as it was before the write
+        assertEquals(List.of(primaryConnection), connections);
+    }
+
+    private Optional<BoatDTO> getAs(final String name,
+                                    final Function<Long, Optional<BoatDTO>> loader) {
+        user.set(name);
+        return boatCacheService.get(3L, loader);
+    }
+
+    // reads the boat in a read-only transaction, as the repository
+    private BoatDTO read(final BoatDTO boat) {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            connections.add(dataSource.getConnection());
+            return boat;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    private void commitWrite(final String name) throws SQLException {
+        user.set(name);
+        TransactionSynchronizationManager.initSynchronization();
+        assertSame(primaryConnection, dataSource.getConnection());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+        user.remove();
+    }
+
+    private void awaitCount(final String result,
+                            final double expected) throws InterruptedException {
+        while (meterRegistry.get("single.flight.calls").tag("name", BoatCacheService.CACHE_NAME).tag("result", result)
+            .counter().count() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,34 +2,70 @@ package com.ariche.boatapi.service.boatmanager;
 
 import com.ariche.boatapi.entity.BoatEntity;
 import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
 import com.ariche.boatapi.repository.BoatRepository;
 import com.ariche.boatapi.repository.customset.IBoatImgSet;
+import com.ariche.boatapi.repository.customset.IBoatSearchSet;
+import com.ariche.boatapi.repository.customset.IBoatSet;
+import com.ariche.boatapi.service.blobmanager.ImageBlobService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursor;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursorPageDTO;
 import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatImageDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatLookupDTO;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.boatmanager.dto.ImageVersionDTO;
+import com.ariche.boatapi.service.boatmanager.mapper.BoatMapper;
+import com.ariche.boatapi.service.invalidationmanager.CacheInvalidationService;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
 import com.ariche.boatapi.service.storage.StorageException;
 import com.ariche.boatapi.service.storage.StorageService;
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import com.ariche.boatapi.service.thumbnailmanager.ThumbnailService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.annotation.Resource;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
@@ -39,6 +75,20 @@ class BoatServiceTest {
     private BoatRepository boatRepository;
     @Mock
     private StorageService storageService;
+    @Mock
+    private ImageBlobService imageBlobService;
+    @Mock
+    private ThumbnailService thumbnailService;
+    @Mock
+    private StorageOutboxService storageOutboxService;
+    @Mock
+    private BoatBatchLoader boatBatchLoader;
+    @Spy
+    private BoatCacheService boatCacheService = new BoatCacheService(Duration.ofMinutes(1), 100L, new SimpleMeterRegistry(), mock(CacheInvalidationService.class));
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    private static final String IMG_ETAG = "039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81";
 
     @InjectMocks
     @Resource
@@ -47,6 +97,9 @@ class BoatServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        // without concurrent lookup, each boat is queried on its own
+        when(boatBatchLoader.load(anyLong()))
+            .thenAnswer(invocation -> boatRepository.findById(invocation.getArgument(0)).map(BoatMapper::toDTO));
     }
 
     @Test
@@ -56,9 +109,101 @@ class BoatServiceTest {
 
         assertTrue(service.findBoatById(12L).isPresent());
 
+        verify(boatBatchLoader).load(12L);
         verify(boatRepository).findById(12L);
     }
 
+    @Test
+    void test_FindBoatById_Cached() {
+        final BoatEntity entity = buildBoat(12L, "name");
+        when(boatRepository.findById(anyLong()))
+            .thenReturn(Optional.of(entity));
+
+        assertEquals("name", service.findBoatById(12L).map(BoatDTO::name).orElseThrow());
+        entity.setName("renamed");
+        assertEquals("name", service.findBoatById(12L).map(BoatDTO::name).orElseThrow());
+
+        // no transaction, evicted right away
+        boatCacheService.evictAfterCommit(12L);
+        assertEquals("renamed", service.findBoatById(12L).map(BoatDTO::name).orElseThrow());
+
+        verify(boatRepository, times(2)).findById(12L);
+    }
+
+    @Test
+    void test_FindBoatById_NotFoundNotCached() {
+        when(boatRepository.findById(anyLong()))
+            .thenReturn(Optional.empty());
+
+        assertTrue(service.findBoatById(12L).isEmpty());
+        assertTrue(service.findBoatById(12L).isEmpty());
+
+        verify(boatRepository, times(2)).findById(12L);
+    }
+
+    @Test
+    void test_FindBoatById_EvictedWhileLoading() {
+        when(boatRepository.findById(anyLong()))
+            .thenAnswer(invocation -> {
+                // written and committed by another request meanwhile
+                boatCacheService.evictAfterCommit(12L);
+                return Optional.of(buildBoat(12L, "name"));
+            });
+
+        assertTrue(service.findBoatById(12L).isPresent());
+        assertTrue(service.findBoatById(12L).isPresent());
+
+        verify(boatRepository, times(2)).findById(12L);
+    }
+
+    @Test
+    void test_EvictAfterCommit() {
+        when(boatRepository.findById(anyLong()))
+            .thenReturn(Optional.of(buildBoat(12L, "name")));
+        service.findBoatById(12L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            boatCacheService.evictAfterCommit(12L);
+            // not committed yet
+            service.findBoatById(12L);
+            verify(boatRepository, times(1)).findById(12L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        service.findBoatById(12L);
+        verify(boatRepository, times(2)).findById(12L);
+    }
+
+    @Test
+    void test_FindBoatsByIds() {
+        final List<IBoatSet> boats = List.of(buildBoatSet(3L), buildBoatSet(1L));
+        when(boatRepository.findBoatsByIds(anyCollection()))
+            .thenReturn(boats);
+
+        final List<BoatLookupDTO> lookups = service.findBoatsByIds(List.of(1L, 2L, 3L, 1L));
+
+        assertEquals(List.of(1L, 2L, 3L, 1L), lookups.stream().map(BoatLookupDTO::id).toList());
+        assertEquals("Boat 1", lookups.get(0).boat().name());
+        assertNull(lookups.get(1).boat());
+        assertEquals("Boat 3", lookups.get(2).boat().name());
+        assertEquals("Boat 1", lookups.get(3).boat().name());
+        verify(boatRepository).findBoatsByIds(List.of(1L, 2L, 3L));
+    }
+
+    @Test
+    void test_FindBoatsByIds_InvalidIds() {
+        final List<Long> tooMany = LongStream.rangeClosed(1, 501).boxed().toList();
+        final List<Long> withNull = Arrays.asList(1L, null);
+        assertThrows(BoatAPIException.class, () -> service.findBoatsByIds(null));
+        assertThrows(BoatAPIException.class, () -> service.findBoatsByIds(List.of()));
+        assertThrows(BoatAPIException.class, () -> service.findBoatsByIds(tooMany));
+        assertThrows(BoatAPIException.class, () -> service.findBoatsByIds(withNull));
+        verifyNoInteractions(boatRepository);
+    }
+
     @Test
     void test_FindALlBoats() {
         final Pageable pageable = Pageable.ofSize(19);
@@ -70,16 +215,196 @@ class BoatServiceTest {
         verify(boatRepository).findAll(pageable);
     }
 
+    @Test
+    void test_FindBoatsSlice() {
+        final Pageable pageable = Pageable.ofSize(1);
+        when(boatRepository.findSliceBy(any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(List.of(buildBoat(1L, "alpha")), pageable, true));
+
+        final Slice<BoatDTO> slice = service.findBoatsSlice(pageable);
+
+        assertEquals("alpha", slice.getContent().get(0).name());
+        assertTrue(slice.hasNext());
+        verify(boatRepository).findSliceBy(pageable);
+        verify(boatRepository, never()).count();
+    }
+
+    @Test
+    void test_FindBoatsWithEstimatedTotal() {
+        final Pageable pageable = Pageable.ofSize(2);
+        when(boatRepository.findSliceBy(any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(List.of(buildBoat(1L, "alpha"), buildBoat(2L, "bravo")), pageable, true));
+        when(boatRepository.estimateBoatCount()).thenReturn(1_000L);
+
+        assertEquals(1_000L, service.findBoatsWithEstimatedTotal(pageable).getTotalElements());
+        assertEquals(1_000L, service.findBoatsWithEstimatedTotal(pageable).getTotalElements());
+
+        // cached
+        verify(boatRepository).estimateBoatCount();
+        verify(boatRepository, never()).count();
+    }
+
+    @Test
+    void test_FindBoatsWithEstimatedTotal_ConsistentWithPage() {
+        final Pageable pageable = Pageable.ofSize(2).withPage(3);
+        when(boatRepository.findSliceBy(any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(List.of(buildBoat(1L, "alpha"), buildBoat(2L, "bravo")), pageable, true));
+        // stale statistics
+        when(boatRepository.estimateBoatCount()).thenReturn(3L);
+
+        final Page<BoatDTO> page = service.findBoatsWithEstimatedTotal(pageable);
+
+        assertEquals(9L, page.getTotalElements());
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void test_EstimateBoatCount() {
+        ReflectionTestUtils.setField(service, "totalEstimateTtl", Duration.ZERO);
+        when(boatRepository.estimateBoatCount()).thenReturn(-1L, 40L);
+        when(boatRepository.count()).thenReturn(38L);
+
+        // never analyzed
+        assertEquals(38L, service.estimateBoatCount());
+        // expired
+        assertEquals(40L, service.estimateBoatCount());
+
+        verify(boatRepository, times(2)).estimateBoatCount();
+        verify(boatRepository).count();
+    }
+
+    @Test
+    void test_FindAllBoatsAfter_FirstPage() {
+        when(boatRepository.findFirstBoats(anyInt()))
+            .thenReturn(List.of(buildBoat(3L, "alpha"), buildBoat(1L, "bravo"), buildBoat(2L, "charlie")));
+
+        final BoatCursorPageDTO page = service.findAllBoatsAfter(null, 2);
+
+        verify(boatRepository).findFirstBoats(3);
+        assertEquals(List.of("alpha", "bravo"), page.content().stream().map(BoatDTO::name).toList());
+        assertEquals(new BoatCursor("bravo", 1L), BoatCursor.decode(page.next()));
+    }
+
+    @Test
+    void test_FindAllBoatsAfter_LastPage() {
+        when(boatRepository.findBoatsAfter(anyString(), anyLong(), anyInt()))
+            .thenReturn(List.of(buildBoat(2L, "charlie")));
+
+        final BoatCursorPageDTO page = service.findAllBoatsAfter(new BoatCursor("bravo", 1L).encode(), 2);
+
+        verify(boatRepository).findBoatsAfter("bravo", 1L, 3);
+        verify(boatRepository, never()).findFirstBoats(anyInt());
+        assertEquals(1, page.content().size());
+        assertNull(page.next());
+    }
+
+    @Test
+    void test_FindAllBoatsAfter_SizeCapped() {
+        service.findAllBoatsAfter("", 1_000_000);
+        verify(boatRepository).findFirstBoats(2_001);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "not base64 !", "bm8tc2VwYXJhdG9y", "YWJjOm5hbWU", "Om5hbWU" })
+    void test_FindAllBoatsAfter_InvalidCursor(final String cursor) {
+        assertThrows(BoatAPIException.class, () -> service.findAllBoatsAfter(cursor, 2));
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_FindAllBoatsAfter_InvalidSize() {
+        assertThrows(BoatAPIException.class, () -> service.findAllBoatsAfter(null, 0));
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_BoatCursor() {
+        final BoatCursor cursor = new BoatCursor("Le Bélem: 3 mâts", 42L);
+        final String encoded = cursor.encode();
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+        assertEquals(cursor, BoatCursor.decode(encoded));
+    }
+
+    @Test
+    void test_SearchBoats_FirstPage() {
+        final List<IBoatSearchSet> results = List.of(buildSearchResult(3L, 0.6f), buildSearchResult(1L, 0.2f), buildSearchResult(2L, 0.1f));
+        when(boatRepository.searchFirstBoats(anyString(), anyInt())).thenReturn(results);
+
+        final BoatCursorPageDTO page = service.searchBoats("bélem", null, 2);
+
+        verify(boatRepository).searchFirstBoats("bélem", 3);
+        assertEquals(List.of(3L, 1L), page.content().stream().map(BoatDTO::id).toList());
+        final BoatCursor next = BoatCursor.decode(page.next());
+        assertEquals(1L, next.id());
+        assertEquals(0.2f, next.rank());
+    }
+
+    @Test
+    void test_SearchBoats_NextPage() {
+        final List<IBoatSearchSet> results = List.of(buildSearchResult(2L, 0.1f));
+        when(boatRepository.searchBoatsAfter(anyString(), anyFloat(), anyLong(), anyInt())).thenReturn(results);
+
+        final BoatCursorPageDTO page = service.searchBoats("bélem", new BoatCursor("0.2", 1L).encode(), 2);
+
+        verify(boatRepository).searchBoatsAfter("bélem", 0.2f, 1L, 3);
+        verify(boatRepository, never()).searchFirstBoats(anyString(), anyInt());
+        assertEquals(1, page.content().size());
+        assertNull(page.next());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "bravo", "NaN", "Infinity", "" })
+    void test_SearchBoats_InvalidCursor(final String sortKey) {
+        final String cursor = new BoatCursor(sortKey, 1L).encode();
+        assertThrows(BoatAPIException.class, () -> service.searchBoats("bélem", cursor, 2));
+        verifyNoInteractions(boatRepository);
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = { "  " })
+    void test_SearchBoats_BlankQuery(final String query) {
+        assertThrows(BoatAPIException.class, () -> service.searchBoats(query, null, 2));
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_SearchBoats_QueryTooLong() {
+        final String query = "a".repeat(201);
+        assertThrows(BoatAPIException.class, () -> service.searchBoats(query, null, 2));
+        verifyNoInteractions(boatRepository);
+    }
+
     @Test
     void test_DeleteBoatById() {
         final IBoatImgSet imgSet = mock(IBoatImgSet.class);
         when(imgSet.getImgName()).thenReturn("test");
         when(imgSet.getId()).thenReturn(12L);
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+        when(boatRepository.deleteBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
 
         service.deleteBoatById(12L);
-        verify(boatRepository).deleteById(12L);
-        verify(storageService).deleteFileQuietly("test", BoatService.buildBoatStorageFolder(12L));
+        verify(boatRepository).deleteBoatImgById(12L);
+        verify(boatCacheService).evictAfterCommit(12L);
+        verify(storageOutboxService).deleteFolderAfterCommit(BoatService.buildBoatStorageFolder(12L));
+        verify(storageOutboxService, never()).deleteFileAfterCommit(anyString(), anyString());
+        verify(imageBlobService, never()).release(anyString());
+        verify(boatRepository, never()).findBoatImgById(anyLong());
+        verify(boatRepository, never()).deleteById(anyLong());
+        verifyNoInteractions(storageService, thumbnailService);
+    }
+
+    @Test
+    void test_DeleteBoatById_Blob() {
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        when(imgSet.getImgName()).thenReturn(IMG_ETAG + ".png");
+        when(imgSet.getImgBlobHash()).thenReturn(IMG_ETAG);
+        when(imgSet.getId()).thenReturn(12L);
+        when(boatRepository.deleteBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+
+        service.deleteBoatById(12L);
+        verify(boatRepository).deleteBoatImgById(12L);
+        verify(imageBlobService).release(IMG_ETAG);
+        verify(storageOutboxService).deleteFolderAfterCommit("boat-000000012");
     }
 
     @Test
@@ -87,20 +412,21 @@ class BoatServiceTest {
         final IBoatImgSet imgSet = mock(IBoatImgSet.class);
         when(imgSet.getImgName()).thenReturn(null);
         when(imgSet.getId()).thenReturn(12L);
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+        when(boatRepository.deleteBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
 
         service.deleteBoatById(12L);
-        verify(boatRepository).deleteById(12L);
-        verify(storageService, never()).deleteFileQuietly(anyString(), anyString());
+        verify(boatRepository).deleteBoatImgById(12L);
+        verify(storageOutboxService).deleteFolderAfterCommit("boat-000000012");
     }
 
     @Test
     void test_DeleteBoatById_NoBoat() {
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.empty());
+        when(boatRepository.deleteBoatImgById(anyLong())).thenReturn(Optional.empty());
 
         service.deleteBoatById(12L);
-        verify(boatRepository, never()).deleteById(anyLong());
-        verify(storageService, never()).deleteFileQuietly(anyString(), anyString());
+        verify(boatRepository).deleteBoatImgById(12L);
+        verify(boatCacheService, never()).evictAfterCommit(anyLong());
+        verifyNoInteractions(storageOutboxService, imageBlobService);
     }
 
     @Test
@@ -124,52 +450,124 @@ class BoatServiceTest {
     }
 
     @Test
-    void test_UpdateBoat() {
-        final BoatEntity entity = new BoatEntity();
-        entity.setId(19L);
+    void test_CreateBoats() {
+        when(boatRepository.saveAll(anyList()))
+            .thenAnswer(invocation -> {
+                final List<BoatEntity> entities = invocation.getArgument(0);
+                for (int i = 0; i < entities.size(); i++) {
+                    entities.get(i).setId(50L + i);
+                }
+                return entities;
+            });
+
+        final List<BoatDTO> res = service.createBoats(List.of(new BoatDTO(null, "name", "desc."), new BoatDTO(null, "name-2", null)));
+
+        assertEquals(List.of(50L, 51L), res.stream().map(BoatDTO::id).toList());
+        assertEquals(List.of("name", "name-2"), res.stream().map(BoatDTO::name).toList());
+        verify(boatRepository).saveAll(anyList());
+        verify(boatRepository, never()).save(any(BoatEntity.class));
+    }
 
-        when(boatRepository.findById(anyLong()))
-            .thenReturn(Optional.of(entity));
-        when(boatRepository.save(any(BoatEntity.class)))
-            .thenReturn(entity);
+    @Test
+    void test_CreateBoats_WithId() {
+        final List<BoatDTO> boats = List.of(new BoatDTO(null, "name", "desc."), new BoatDTO(12L, "name-2", null));
+        final BoatAPIException exception = assertThrows(BoatAPIException.class, () -> service.createBoats(boats));
+        assertEquals("Id must be blank (boats[1])", exception.getMessage());
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_UpdateBoat() {
+        final IBoatSet boatSet = mock(IBoatSet.class);
+        when(boatSet.getId()).thenReturn(19L);
+        when(boatSet.getName()).thenReturn("name");
+        when(boatSet.getDescription()).thenReturn("desc");
+        when(boatSet.getVersion()).thenReturn(3L);
+        when(boatRepository.updateBoatById(anyLong(), anyString(), any()))
+            .thenReturn(Optional.of(boatSet));
 
-        final BoatDTO dto = service.updateBoat(19L, new BoatDTO(19L, "name", "desc"));
+        final BoatDTO dto = service.updateBoat(19L, new BoatDTO(19L, "name", "desc"), null);
 
         assertEquals(19L, dto.id());
         assertEquals("name", dto.name());
         assertEquals("desc", dto.description());
+        assertEquals(3L, dto.version());
 
-        verify(boatRepository).findById(19L);
-        verify(boatRepository).save(entity);
+        verify(boatRepository).updateBoatById(19L, "name", "desc");
+        verify(boatRepository, never()).findById(anyLong());
+        verify(boatRepository, never()).save(any(BoatEntity.class));
+        verify(boatCacheService).evictAfterCommit(19L);
     }
 
     @Test
     void test_UpdateBoat_NotFound() {
-        final BoatEntity entity = new BoatEntity();
-        entity.setId(19L);
-
-        when(boatRepository.findById(anyLong()))
+        when(boatRepository.updateBoatById(anyLong(), anyString(), any()))
             .thenReturn(Optional.empty());
 
-        final BoatDTO dto = new BoatDTO(19L, "name", "desc");
+        final BoatDTO dto = new BoatDTO(19L, "name", null);
         assertThrows(EntityNotFoundException.class,
-            () -> service.updateBoat(19L, dto));
+            () -> service.updateBoat(19L, dto, null));
 
-        verify(boatRepository).findById(19L);
-        verify(boatRepository, never()).updateImgNameByBoatId(anyLong(), anyString());
+        verify(boatRepository).updateBoatById(19L, "name", null);
+        verify(boatCacheService, never()).evictAfterCommit(anyLong());
     }
 
     @Test
-    void test_UpdateBoat_BoatAPIException() {
-        final BoatEntity entity = new BoatEntity();
-        entity.setId(19L);
+    void test_UpdateBoat_ExpectedVersion() {
+        final IBoatSet boatSet = mock(IBoatSet.class);
+        when(boatSet.getId()).thenReturn(19L);
+        when(boatSet.getVersion()).thenReturn(4L);
+        when(boatRepository.updateBoatByIdAndVersion(anyLong(), anyString(), any(), anyLong()))
+            .thenReturn(Optional.of(boatSet));
+
+        final BoatDTO dto = service.updateBoat(19L, new BoatDTO(19L, "name", "desc"), 3L);
+
+        assertEquals(4L, dto.version());
+        verify(boatRepository).updateBoatByIdAndVersion(19L, "name", "desc", 3L);
+        verify(boatRepository, never()).updateBoatById(anyLong(), anyString(), any());
+        verify(boatCacheService).evictAfterCommit(19L);
+    }
+
+    @Test
+    void test_UpdateBoat_ConcurrentUpdates() {
+        final IBoatSet boatSet = mock(IBoatSet.class);
+        when(boatSet.getId()).thenReturn(19L);
+        when(boatSet.getVersion()).thenReturn(4L);
+        // both read version 3: the second one waits for the row lock of the first one, then finds version 4
+        when(boatRepository.updateBoatByIdAndVersion(anyLong(), anyString(), any(), anyLong()))
+            .thenReturn(Optional.of(boatSet))
+            .thenReturn(Optional.empty());
+        when(boatRepository.existsById(19L)).thenReturn(true);
+
+        assertEquals(4L, service.updateBoat(19L, new BoatDTO(19L, "first", null), 3L).version());
+        final BoatDTO second = new BoatDTO(19L, "second", null);
+        final BoatAPIException e = assertThrows(BoatAPIException.class, () -> service.updateBoat(19L, second, 3L));
 
+        assertEquals(EBoatAPIError.PRECONDITION_FAILED_ERROR, e.getError());
+        verify(boatRepository).updateBoatByIdAndVersion(19L, "first", null, 3L);
+        verify(boatRepository).updateBoatByIdAndVersion(19L, "second", null, 3L);
+        verify(boatCacheService, times(1)).evictAfterCommit(19L);
+    }
+
+    @Test
+    void test_UpdateBoat_ExpectedVersion_NotFound() {
+        when(boatRepository.updateBoatByIdAndVersion(anyLong(), anyString(), any(), anyLong()))
+            .thenReturn(Optional.empty());
+        when(boatRepository.existsById(19L)).thenReturn(false);
+
+        final BoatDTO dto = new BoatDTO(19L, "name", null);
+        assertThrows(EntityNotFoundException.class,
+            () -> service.updateBoat(19L, dto, 3L));
+        verify(boatCacheService, never()).evictAfterCommit(anyLong());
+    }
+
+    @Test
+    void test_UpdateBoat_BoatAPIException() {
         final BoatDTO dto = new BoatDTO(12L, "name", "desc");
         assertThrows(BoatAPIException.class,
-            () -> service.updateBoat(19L, dto));
+            () -> service.updateBoat(19L, dto, null));
 
-        verify(boatRepository, never()).findById(19L);
-        verify(boatRepository, never()).updateImgNameByBoatId(anyLong(), anyString());
+        verifyNoInteractions(boatRepository);
     }
 
     @Test
@@ -184,7 +582,7 @@ class BoatServiceTest {
 
         verify(boatRepository).findBoatImgById(12L);
         verify(storageService, never()).storeFile(any(MultipartFile.class), anyString(), anyString());
-        verify(boatRepository, never()).updateImgNameByBoatId(anyLong(), anyString());
+        verify(boatRepository, never()).updateImgByBoatId(anyLong(), anyString(), anyString(), any());
     }
 
     @Test
@@ -210,7 +608,7 @@ class BoatServiceTest {
         verify(boatRepository).findBoatImgById(12L);
         verify(storageService, never()).deleteFile(anyString(), anyString());
         verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
-        verify(boatRepository, never()).updateImgNameByBoatId(anyLong(), anyString());
+        verify(boatRepository, never()).updateImgByBoatId(anyLong(), anyString(), anyString(), any());
     }
 
     @Test
@@ -220,22 +618,22 @@ class BoatServiceTest {
         when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
         when(file.isEmpty()).thenReturn(false);
 
-        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
-        when(imgSet.getImgName()).thenReturn("an-image.png");
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
-        doNothing()
-            .when(storageService)
-            .storeFile(any(MultipartFile.class), anyString(), anyString());
-        doNothing()
-            .when(storageService)
-            .deleteFileQuietly(anyString(), anyString());
+        final IBoatImgSet imgSet = mockImgSet("an-image.png", null);
 
         assertDoesNotThrow(() -> service.uploadImageForBoat(12L, file));
 
+        final InOrder inOrder = inOrder(storageOutboxService, storageService, transactionTemplate, thumbnailService);
+        inOrder.verify(storageOutboxService).cancelFileDeletion("original.png", "boat-000000012");
+        inOrder.verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
+        inOrder.verify(transactionTemplate).executeWithoutResult(any());
+        inOrder.verify(thumbnailService).generateAfterCommit(12L, IMG_ETAG, "original.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE);
         verify(boatRepository).findBoatImgById(12L);
-        verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
-        verify(storageService).deleteFileQuietly("an-image.png", "boat-000000012");
-        verify(boatRepository).updateImgNameByBoatId(12L, "original.png");
+        verify(boatRepository).findBoatImgByIdForUpdate(12L);
+        verify(boatRepository).updateImgByBoatId(12L, "original.png", IMG_ETAG, null);
+        verify(boatCacheService).evictAfterCommit(12L);
+        verify(storageOutboxService).deleteFileAfterCommit("an-image.png", "boat-000000012");
+        verify(storageService, never()).deleteFileQuietly(anyString(), anyString());
+        verify(thumbnailService).deleteThumbnails(12L, imgSet);
     }
 
     @Test
@@ -245,9 +643,7 @@ class BoatServiceTest {
         when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
         when(file.isEmpty()).thenReturn(false);
 
-        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
-        when(imgSet.getImgName()).thenReturn(null);
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+        mockImgSet(null, null);
         doNothing()
             .when(storageService)
             .storeFile(any(MultipartFile.class), anyString(), anyString());
@@ -256,8 +652,8 @@ class BoatServiceTest {
 
         verify(boatRepository).findBoatImgById(12L);
         verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
-        verify(storageService, never()).deleteFile(anyString(), anyString());
-        verify(boatRepository).updateImgNameByBoatId(12L, "original.png");
+        verify(storageOutboxService, never()).deleteFileAfterCommit(anyString(), anyString());
+        verify(boatRepository).updateImgByBoatId(12L, "original.png", IMG_ETAG, null);
     }
 
     @Test
@@ -267,9 +663,7 @@ class BoatServiceTest {
         when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
         when(file.isEmpty()).thenReturn(false);
 
-        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
-        when(imgSet.getImgName()).thenReturn("original.png");
-        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+        mockImgSet("original.png", null);
         doNothing()
             .when(storageService)
             .storeFile(any(MultipartFile.class), anyString(), anyString());
@@ -278,12 +672,12 @@ class BoatServiceTest {
 
         verify(boatRepository).findBoatImgById(12L);
         verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
-        verify(storageService, never()).deleteFile(anyString(), anyString());
-        verify(boatRepository).updateImgNameByBoatId(12L, "original.png");
+        verify(storageOutboxService, never()).deleteFileAfterCommit(anyString(), anyString());
+        verify(boatRepository).updateImgByBoatId(12L, "original.png", IMG_ETAG, null);
     }
 
     @Test
-    void test_UploadImageForBoat_DeleteException() {
+    void test_UploadImageForBoat_BoatDeletedMeanwhile() {
         final MockMultipartFile file = spy(new MockMultipartFile("test", new byte[]{1,2,3}));
         when(file.getOriginalFilename()).thenReturn("original.png");
         when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
@@ -292,53 +686,295 @@ class BoatServiceTest {
         final IBoatImgSet imgSet = mock(IBoatImgSet.class);
         when(imgSet.getImgName()).thenReturn("an-image.png");
         when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
-        doNothing()
-            .when(storageService)
-            .storeFile(any(MultipartFile.class), anyString(), anyString());
+        when(boatRepository.findBoatImgByIdForUpdate(anyLong())).thenReturn(Optional.empty());
+
+        assertThrows(EntityNotFoundException.class,
+            () -> service.uploadImageForBoat(12L, file));
+
+        verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
+        verify(storageService).deleteFileQuietly("original.png", "boat-000000012");
+        verify(boatRepository, never()).updateImgByBoatId(anyLong(), anyString(), anyString(), any());
+        verifyNoInteractions(thumbnailService);
+    }
+
+    @Test
+    void test_UploadImageForBoat_ContentAddressed() {
+        final MockMultipartFile file = spy(new MockMultipartFile("test", new byte[]{1,2,3}));
+        when(file.getOriginalFilename()).thenReturn("original.png");
+        when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(file.isEmpty()).thenReturn(false);
+
+        mockImgSet("an-image.png", null);
+        when(imageBlobService.isEnabled()).thenReturn(true);
+        mockAcquire(IMG_ETAG + ".png");
+
+        assertDoesNotThrow(() -> service.uploadImageForBoat(12L, file));
+
+        verify(imageBlobService).acquire(eq(file), eq(IMG_ETAG), any());
+        verify(storageService, never()).storeFile(any(MultipartFile.class), anyString(), anyString(), anyBoolean());
+        verify(boatRepository).updateImgByBoatId(12L, IMG_ETAG + ".png", IMG_ETAG, IMG_ETAG);
+        verify(storageOutboxService).deleteFileAfterCommit("an-image.png", "boat-000000012");
+        verify(imageBlobService, never()).release(anyString());
+        verify(thumbnailService).generateAfterCommit(12L, IMG_ETAG, IMG_ETAG + ".png", "blobs/03", MediaType.IMAGE_PNG_VALUE);
+    }
+
+    @Test
+    void test_UploadImageForBoat_ContentAddressed_PreviousBlob() {
+        final MockMultipartFile file = spy(new MockMultipartFile("test", new byte[]{1,2,3}));
+        when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(file.isEmpty()).thenReturn(false);
+
+        mockImgSet("previous.png", "previous-hash");
+        when(imageBlobService.isEnabled()).thenReturn(true);
+        mockAcquire(IMG_ETAG + ".png");
+
+        assertDoesNotThrow(() -> service.uploadImageForBoat(12L, file));
+
+        verify(boatRepository).updateImgByBoatId(12L, IMG_ETAG + ".png", IMG_ETAG, IMG_ETAG);
+        verify(imageBlobService).release("previous-hash");
+        verify(storageOutboxService, never()).deleteFileAfterCommit(anyString(), anyString());
+    }
+
+    @Test
+    void test_UploadImageForBoat_ContentAddressed_SameImage() {
+        final MockMultipartFile file = spy(new MockMultipartFile("test", new byte[]{1,2,3}));
+        when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(file.isEmpty()).thenReturn(false);
+
+        mockImgSet(IMG_ETAG + ".png", IMG_ETAG);
+        when(imageBlobService.isEnabled()).thenReturn(true);
+
+        assertDoesNotThrow(() -> service.uploadImageForBoat(12L, file));
+
+        verify(imageBlobService, never()).acquire(any(MultipartFile.class), anyString(), any());
+        verify(imageBlobService, never()).release(anyString());
+        verify(boatRepository, never()).updateImgByBoatId(anyLong(), anyString(), anyString(), any());
+        verifyNoInteractions(thumbnailService);
+    }
+
+    @Test
+    void test_UploadImageForBoat_PreviousBlob() {
+        final MockMultipartFile file = spy(new MockMultipartFile("test", new byte[]{1,2,3}));
+        when(file.getOriginalFilename()).thenReturn("original.png");
+        when(file.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(file.isEmpty()).thenReturn(false);
+
+        mockImgSet("original.png", "previous-hash");
 
         assertDoesNotThrow(() -> service.uploadImageForBoat(12L, file));
 
-        verify(boatRepository).findBoatImgById(12L);
         verify(storageService).storeFile(file, "original.png", "boat-000000012", true);
-        verify(storageService).deleteFileQuietly("an-image.png", "boat-000000012");
-        verify(boatRepository).updateImgNameByBoatId(12L, "original.png");
+        verify(boatRepository).updateImgByBoatId(12L, "original.png", IMG_ETAG, null);
+        verify(imageBlobService).release("previous-hash");
+        verify(storageOutboxService, never()).deleteFileAfterCommit(anyString(), anyString());
     }
 
     @Test
-    void test_DownloadImageForBoat() {
-        when(boatRepository.fetchImgNameById(anyLong())).thenReturn(Optional.of("image-name.jpeg"));
+    void test_DownloadImage() {
+        mockImgSet("image-name.jpeg", null);
         when(storageService.downloadFile(anyString(), anyString()))
-            .thenReturn(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, new byte[0]));
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 0L, InputStream.nullInputStream()));
 
-        final Optional<FileResourceDTO> optRes = service.downloadImageForBoat(12L);
+        final Optional<FileResourceDTO> optRes = service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::downloadImage);
         assertTrue(optRes.isPresent());
         assertEquals(MediaType.IMAGE_JPEG_VALUE, optRes.get().mimeType());
 
-        verify(boatRepository).fetchImgNameById(12L);
+        verify(boatRepository).findBoatImgById(12L);
+        verify(storageService).downloadFile("image-name.jpeg", "boat-000000012");
+    }
+
+    @Test
+    void test_DownloadImage_Thumbnail() {
+        final IBoatImgSet imgSet = mockImgSet(IMG_ETAG + ".png", IMG_ETAG);
+        when(imgSet.getImgEtag()).thenReturn(IMG_ETAG);
+        when(imgSet.getImgThumbnailsEtag()).thenReturn(IMG_ETAG);
+        when(storageService.downloadFile(anyString(), anyString()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 0L, InputStream.nullInputStream()));
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.SMALL).flatMap(service::downloadImage).isPresent());
+
+        verify(storageService).downloadFile(IMG_ETAG + "_320.png", "boat-000000012");
+    }
+
+    @Test
+    void test_DownloadImage_ThumbnailNotGenerated() {
+        final IBoatImgSet imgSet = mockImgSet("image-name.jpeg", null);
+        when(imgSet.getImgEtag()).thenReturn(IMG_ETAG);
+        when(imgSet.getImgThumbnailsEtag()).thenReturn("previous-etag");
+        when(storageService.downloadFile(anyString(), anyString()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 0L, InputStream.nullInputStream()));
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.MEDIUM).flatMap(service::downloadImage).isPresent());
+
         verify(storageService).downloadFile("image-name.jpeg", "boat-000000012");
     }
 
     @Test
-    void test_DownloadImageForBoat_Exception() {
-        when(boatRepository.fetchImgNameById(anyLong())).thenReturn(Optional.of("image-name.jpeg"));
+    void test_DownloadImage_Exception() {
+        mockImgSet("image-name.jpeg", null);
         doThrow(StorageException.class)
             .when(storageService)
             .downloadFile(anyString(), anyString());
 
-        final Optional<FileResourceDTO> optRes = service.downloadImageForBoat(13L);
+        final Optional<FileResourceDTO> optRes = service.findImageForBoat(13L, EImageSize.ORIGINAL).flatMap(service::downloadImage);
         assertTrue(optRes.isEmpty());
 
-        verify(boatRepository).fetchImgNameById(13L);
+        verify(boatRepository).findBoatImgById(13L);
         verify(storageService).downloadFile("image-name.jpeg", "boat-000000013");
     }
 
     @Test
-    void test_DownloadImageForBoat_Empty() {
-        when(boatRepository.fetchImgNameById(anyLong())).thenReturn(Optional.empty());
-        assertTrue(service.downloadImageForBoat(12L).isEmpty());
+    void test_DownloadImage_Blob() {
+        mockImgSet(IMG_ETAG + ".png", IMG_ETAG);
+        when(storageService.downloadFile(anyString(), anyString()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 0L, InputStream.nullInputStream()));
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::downloadImage).isPresent());
+
+        verify(storageService).downloadFile(IMG_ETAG + ".png", "blobs/03");
+    }
+
+    @Test
+    void test_DownloadImage_NoImg() {
+        mockImgSet(null, null);
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::downloadImage).isEmpty());
         verify(storageService, never()).downloadFile(anyString(), anyString());
     }
 
+    @Test
+    void test_DownloadImage_Empty() {
+        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.empty());
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::downloadImage).isEmpty());
+        verify(storageService, never()).downloadFile(anyString(), anyString());
+    }
+
+    @Test
+    void test_FindImageForBoat() {
+        final Instant updatedAt = Instant.parse("2023-07-25T11:22:08Z");
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        when(imgSet.getImgName()).thenReturn("image-name.jpeg");
+        when(imgSet.getImgEtag()).thenReturn(IMG_ETAG);
+        when(imgSet.getImgUpdatedAt()).thenReturn(updatedAt);
+        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+
+        final Optional<ImageVersionDTO> optRes = service.findImageForBoat(12L, EImageSize.ORIGINAL).map(BoatImageDTO::version);
+        assertTrue(optRes.isPresent());
+        assertEquals(IMG_ETAG, optRes.get().eTag());
+        assertEquals(updatedAt, optRes.get().lastModified());
+
+        verify(boatRepository).findBoatImgById(12L);
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_FindImageForBoat_Thumbnail() {
+        final IBoatImgSet imgSet = mockImgSet("image-name.jpeg", null);
+        when(imgSet.getImgEtag()).thenReturn(IMG_ETAG);
+
+        assertEquals(Optional.of(IMG_ETAG), service.findImageForBoat(12L, EImageSize.SMALL).map(BoatImageDTO::version).map(ImageVersionDTO::eTag));
+
+        when(imgSet.getImgThumbnailsEtag()).thenReturn(IMG_ETAG);
+        assertEquals(Optional.of(IMG_ETAG + "-320"), service.findImageForBoat(12L, EImageSize.SMALL).map(BoatImageDTO::version).map(ImageVersionDTO::eTag));
+        assertEquals(Optional.of(IMG_ETAG), service.findImageForBoat(12L, EImageSize.ORIGINAL).map(BoatImageDTO::version).map(ImageVersionDTO::eTag));
+    }
+
+    @Test
+    void test_FindImageForBoat_NoETag() {
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        when(imgSet.getImgName()).thenReturn("image-name.jpeg");
+        when(imgSet.getImgEtag()).thenReturn(null);
+        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).map(BoatImageDTO::version).isEmpty());
+    }
+
+    @Test
+    void test_FindImageForBoat_NotFound() {
+        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.empty());
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).map(BoatImageDTO::version).isEmpty());
+    }
+
+    @Test
+    void test_BuildImageStorageFolder() {
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        assertEquals("boat-000000012", BoatService.buildImageStorageFolder(12L, imgSet));
+
+        when(imgSet.getImgBlobHash()).thenReturn(IMG_ETAG);
+        assertEquals("blobs/03", BoatService.buildImageStorageFolder(12L, imgSet));
+    }
+
+    @Test
+    void test_ComputeETag() {
+        assertEquals(IMG_ETAG, BoatService.computeETag(new MockMultipartFile("test", new byte[]{1,2,3})));
+    }
+
+    @Test
+    void test_ComputeETag_IOException() throws IOException {
+        final MultipartFile file = mock(MultipartFile.class);
+        when(file.getInputStream()).thenThrow(IOException.class);
+
+        final StorageException exception = assertThrows(StorageException.class, () -> BoatService.computeETag(file));
+        assertEquals(EStorageError.TRANSFER_ERROR, exception.getError());
+    }
+
+    @Test
+    void test_DownloadImageRange() {
+        mockImgSet("image-name.jpeg", null);
+        when(storageService.downloadFileRange(anyString(), anyString(), anyLong(), anyLong()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 10L, InputStream.nullInputStream()));
+
+        final Optional<FileResourceDTO> optRes = service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(image -> service.downloadImageRange(image, 10L, 19L));
+        assertTrue(optRes.isPresent());
+        assertEquals(10L, optRes.get().contentLength());
+
+        verify(storageService).downloadFileRange("image-name.jpeg", "boat-000000012", 10L, 19L);
+    }
+
+    @Test
+    void test_FindImageForBoat_ReadOnce() {
+        final IBoatImgSet imgSet = mockImgSet("image-name.jpeg", null);
+        when(imgSet.getImgEtag()).thenReturn(IMG_ETAG);
+        when(storageService.getFileMetadata(anyString(), anyString()))
+            .thenReturn(new FileMetadataDTO(MediaType.IMAGE_JPEG_VALUE, 42L));
+        when(storageService.downloadFileRange(anyString(), anyString(), anyLong(), anyLong()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 10L, InputStream.nullInputStream()));
+
+        final BoatImageDTO image = service.findImageForBoat(12L, EImageSize.ORIGINAL).orElseThrow();
+        // replaced meanwhile: the image found is still the one read
+        mockImgSet("other-image.jpeg", null);
+        assertTrue(service.findImageMetadata(image).isPresent());
+        assertTrue(service.downloadImageRange(image, 0L, 9L).isPresent());
+
+        assertEquals(IMG_ETAG, image.version().eTag());
+        verify(boatRepository, times(1)).findBoatImgById(12L);
+        verify(storageService).getFileMetadata("image-name.jpeg", "boat-000000012");
+        verify(storageService).downloadFileRange("image-name.jpeg", "boat-000000012", 0L, 9L);
+    }
+
+    @Test
+    void test_FindImageMetadata() {
+        mockImgSet("image-name.jpeg", null);
+        when(storageService.getFileMetadata(anyString(), anyString()))
+            .thenReturn(new FileMetadataDTO(MediaType.IMAGE_JPEG_VALUE, 42L));
+
+        final Optional<FileMetadataDTO> optRes = service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::findImageMetadata);
+        assertTrue(optRes.isPresent());
+        assertEquals(42L, optRes.get().contentLength());
+
+        verify(storageService).getFileMetadata("image-name.jpeg", "boat-000000012");
+    }
+
+    @Test
+    void test_FindImageMetadata_Exception() {
+        mockImgSet("image-name.jpeg", null);
+        doThrow(StorageException.class)
+            .when(storageService)
+            .getFileMetadata(anyString(), anyString());
+
+        assertTrue(service.findImageForBoat(12L, EImageSize.ORIGINAL).flatMap(service::findImageMetadata).isEmpty());
+    }
+
     @Test
     void test_BuildBoatStorageFolder() {
         assertEquals("boat-000000118", BoatService.buildBoatStorageFolder(118L));
@@ -372,4 +1008,47 @@ class BoatServiceTest {
         assertThrows(StorageException.class,
             () -> BoatService.ensureIncomingFile(multipartFile, mediaTypes));
     }
+
+    private IBoatImgSet mockImgSet(final String imgName,
+                                   final String imgBlobHash) {
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        when(imgSet.getImgName()).thenReturn(imgName);
+        when(imgSet.getImgBlobHash()).thenReturn(imgBlobHash);
+        when(boatRepository.findBoatImgById(anyLong())).thenReturn(Optional.of(imgSet));
+        when(boatRepository.findBoatImgByIdForUpdate(anyLong())).thenReturn(Optional.of(imgSet));
+        return imgSet;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockAcquire(final String blobName) {
+        when(imageBlobService.acquire(any(MultipartFile.class), anyString(), any()))
+            .thenAnswer(invocation -> {
+                invocation.getArgument(2, Consumer.class).accept(blobName);
+                return blobName;
+            });
+    }
+
+    private static BoatEntity buildBoat(final Long id,
+                                        final String name) {
+        final BoatEntity entity = new BoatEntity();
+        entity.setId(id);
+        entity.setName(name);
+        return entity;
+    }
+
+    private static IBoatSet buildBoatSet(final Long id) {
+        final IBoatSet boatSet = mock(IBoatSet.class);
+        when(boatSet.getId()).thenReturn(id);
+        when(boatSet.getName()).thenReturn("Boat " + id);
+        return boatSet;
+    }
+
+    private static IBoatSearchSet buildSearchResult(final Long id,
+                                                    final float rank) {
+        final IBoatSearchSet result = mock(IBoatSearchSet.class);
+        when(result.getId()).thenReturn(id);
+        when(result.getName()).thenReturn("Boat " + id);
+        when(result.getSearchRank()).thenReturn(rank);
+        return result;
+    }
 }
@@ -0,0 +1,96 @@
+package com.ariche.boatapi.service.boatmanager;
+
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.repository.customset.IBoatNameSet;
+import com.ariche.boatapi.service.boatmanager.dto.BoatSuggestionDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BoatSuggestionServiceTest {
+
+    @Mock
+    private BoatRepository boatRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private BoatSuggestionService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new BoatSuggestionService(boatRepository, Duration.ofMinutes(1), 100L, meterRegistry);
+    }
+
+    @Test
+    void test_SuggestBoats() {
+        final List<IBoatNameSet> boats = List.of(buildBoat(3L, "Belem"), buildBoat(1L, "Belle Poule"), buildBoat(2L, "Bel Espoir"));
+        when(boatRepository.suggestBoats(anyString(), anyString(), anyInt())).thenReturn(boats);
+
+        final List<BoatSuggestionDTO> suggestions = service.suggestBoats("  BEL ", 2);
+
+        assertEquals(List.of(new BoatSuggestionDTO(3L, "Belem"), new BoatSuggestionDTO(1L, "Belle Poule")), suggestions);
+        verify(boatRepository).suggestBoats("bel", "bel%", BoatSuggestionService.MAX_SIZE);
+    }
+
+    @Test
+    void test_SuggestBoats_Cached() {
+        final List<IBoatNameSet> boats = List.of(buildBoat(3L, "Belem"), buildBoat(1L, "Belle Poule"));
+        when(boatRepository.suggestBoats(anyString(), anyString(), anyInt())).thenReturn(boats);
+
+        assertEquals(1, service.suggestBoats("bel", 1).size());
+        assertEquals(2, service.suggestBoats("Bel", 10).size());
+
+        verify(boatRepository, times(1)).suggestBoats(anyString(), anyString(), anyInt());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", BoatSuggestionService.CACHE_NAME).tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void test_SuggestBoats_Wildcards() {
+        service.suggestBoats("100%_b\\", 10);
+        verify(boatRepository).suggestBoats("100%_b\\", "100\\%\\_b\\\\%", BoatSuggestionService.MAX_SIZE);
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = { "b", " b  " })
+    void test_SuggestBoats_TooShort(final String query) {
+        assertTrue(service.suggestBoats(query, 10).isEmpty());
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_SuggestBoats_TooLong() {
+        final String query = "b".repeat(101);
+        assertThrows(BoatAPIException.class, () -> service.suggestBoats(query, 10));
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_SuggestBoats_InvalidSize() {
+        assertThrows(BoatAPIException.class, () -> service.suggestBoats("bel", 0));
+        verifyNoInteractions(boatRepository);
+    }
+
+    private static IBoatNameSet buildBoat(final Long id,
+                                          final String name) {
+        final IBoatNameSet boat = mock(IBoatNameSet.class);
+        when(boat.getId()).thenReturn(id);
+        when(boat.getName()).thenReturn(name);
+        return boat;
+    }
+}
@@ -14,11 +14,13 @@ class BoatMapperTest {
         entity.setId(19L);
         entity.setName("name");
         entity.setDescription("description");
+        entity.setVersion(2L);
 
         final BoatDTO dto = BoatMapper.toDTO(entity);
         assertEquals(19L, dto.id());
         assertEquals("name", dto.name());
         assertEquals("description", dto.description());
+        assertEquals(2L, dto.version());
     }
 
     @Test
@@ -0,0 +1,123 @@
+package com.ariche.boatapi.service.exportmanager;
+
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.exportmanager.dto.EExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BoatExportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement statement;
+    @Mock
+    private ResultSet resultSet;
+
+    private BoatExportService service;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        service = new BoatExportService(jdbcTemplate, objectMapper, transactionManager);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+
+        when(resultSet.getLong("ID")).thenReturn(1L, 2L);
+        when(resultSet.getString("NAME")).thenReturn("Titanic", "Black; Pearl");
+        when(resultSet.getString("DESCRIPTION")).thenReturn("The \"unsinkable\"", null);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, PreparedStatementCreator.class).createPreparedStatement(connection);
+            final RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(resultSet);
+            handler.processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void test_ExportBoats_Ndjson() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assertEquals(2L, service.exportBoats(EExportFormat.NDJSON, outputStream));
+
+        final List<String> lines = outputStream.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(2, lines.size());
+        final BoatDTO first = objectMapper.readValue(lines.get(0), BoatDTO.class);
+        assertEquals(new BoatDTO(1L, "Titanic", "The \"unsinkable\""), first);
+        assertEquals("Black; Pearl", objectMapper.readValue(lines.get(1), BoatDTO.class).name());
+    }
+
+    @Test
+    void test_ExportBoats_Csv() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        assertEquals(2L, service.exportBoats(EExportFormat.CSV, outputStream));
+
+        assertEquals("id;name;description\n"
+                + "1;Titanic;\"The \"\"unsinkable\"\"\"\n"
+                + "2;\"Black; Pearl\";\n",
+            outputStream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void test_ExportBoats_Cursor() throws IOException, SQLException {
+        service.exportBoats(EExportFormat.NDJSON, new ByteArrayOutputStream());
+
+        verify(connection).prepareStatement(BoatExportService.SELECT_BOATS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        verify(statement).setFetchSize(1000);
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void test_ExportBoats_ClientGone() throws IOException {
+        // larger than the buffer, written right away
+        when(resultSet.getString("DESCRIPTION")).thenReturn("d".repeat(10_000));
+        final OutputStream outputStream = mock(OutputStream.class);
+        doThrow(new IOException("Broken pipe")).when(outputStream).write(any(byte[].class), anyInt(), anyInt());
+
+        final IOException exception = assertThrows(IOException.class, () -> service.exportBoats(EExportFormat.NDJSON, outputStream));
+        assertEquals("Broken pipe", exception.getMessage());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void test_EscapeCsv() {
+        assertEquals("", BoatExportService.escapeCsv(null));
+        assertEquals("\"\"", BoatExportService.escapeCsv(""));
+        assertEquals("Titanic", BoatExportService.escapeCsv("Titanic"));
+        assertEquals("\"a;b\"", BoatExportService.escapeCsv("a;b"));
+        assertEquals("\"a\"\"b\"", BoatExportService.escapeCsv("a\"b"));
+        assertEquals("\"a\nb\"", BoatExportService.escapeCsv("a\nb"));
+    }
+}
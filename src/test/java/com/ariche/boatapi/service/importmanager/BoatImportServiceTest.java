@@ -0,0 +1,210 @@
+package com.ariche.boatapi.service.importmanager;
+
+import com.ariche.boatapi.entity.BoatImportEntity;
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.repository.BoatImportRepository;
+import com.ariche.boatapi.service.importmanager.dto.BoatImportDTO;
+import com.ariche.boatapi.service.importmanager.dto.EImportStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BoatImportServiceTest {
+
+    private static final byte[] CSV = "name;description\nTitanic;Unsinkable\n".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private BoatImportRepository boatImportRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private ExecutorService importExecutor;
+
+    private BoatImportService service;
+    private BoatImportEntity job;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new BoatImportService(boatImportRepository, jdbcTemplate, transactionManager, importExecutor);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+
+        job = new BoatImportEntity();
+        job.setId(7L);
+        job.setStatus(EImportStatus.PENDING);
+        job.setFileSize((long) CSV.length);
+        job.setCreatedAt(Instant.now());
+        job.setUpdatedAt(job.getCreatedAt());
+        when(boatImportRepository.findById(7L)).thenReturn(Optional.of(job));
+        when(boatImportRepository.save(any(BoatImportEntity.class))).thenAnswer(invocation -> {
+            final BoatImportEntity entity = invocation.getArgument(0);
+            entity.setId(7L);
+            return entity;
+        });
+    }
+
+    @Test
+    void test_SubmitImport() {
+        final BoatImportDTO res = service.submitImport(new ByteArrayInputStream(CSV));
+
+        assertEquals(7L, res.id());
+        assertEquals(EImportStatus.PENDING, res.status());
+        assertEquals(CSV.length, res.fileSize());
+        verify(importExecutor).execute(any(Runnable.class));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void test_SubmitImport_TooBig() {
+        ReflectionTestUtils.setField(service, "maxFileSize", DataSize.ofBytes(CSV.length - 1L));
+
+        assertThrows(BoatAPIException.class, () -> service.submitImport(new ByteArrayInputStream(CSV)));
+        verifyNoInteractions(boatImportRepository, importExecutor);
+    }
+
+    @Test
+    void test_SubmitImport_Rejected() {
+        doThrow(RejectedExecutionException.class)
+            .when(importExecutor)
+            .execute(any(Runnable.class));
+
+        assertThrows(BoatAPIException.class, () -> service.submitImport(new ByteArrayInputStream(CSV)));
+        assertEquals(EImportStatus.FAILED, job.getStatus());
+        assertEquals("Too many imports in progress", job.getError());
+    }
+
+    @Test
+    void test_RunImport() throws IOException {
+        final Path file = createFile();
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(3L);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+        when(jdbcTemplate.update(anyString())).thenReturn(3);
+
+        service.runImport(7L, file);
+
+        assertEquals(EImportStatus.COMPLETED, job.getStatus());
+        assertEquals(3L, job.getCopiedRows());
+        assertEquals(0L, job.getRejectedRows());
+        assertEquals(3L, job.getImportedRows());
+        assertNull(job.getError());
+        assertFalse(Files.exists(file));
+
+        final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(captor.capture());
+        assertTrue(captor.getValue().contains("INSERT INTO BOATS"));
+        // one value of the sequence per block of 50 rows
+        assertTrue(captor.getValue().contains("NEXTVAL('boat_sequence') AS FIRST_ID"));
+        assertTrue(captor.getValue().contains("N.ROW_INDEX % 50"));
+        // import transaction, and one transaction per step
+        final ArgumentCaptor<TransactionDefinition> definitions = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager, times(5)).getTransaction(definitions.capture());
+        assertEquals(1, definitions.getAllValues().stream()
+            .filter(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRED)
+            .count());
+        verify(transactionManager, never()).rollback(any());
+    }
+
+    @Test
+    void test_RunImport_InvalidRows() throws IOException {
+        final Path file = createFile();
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn(6L);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(2L);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any())).thenReturn(List.of(1L, 4L));
+
+        service.runImport(7L, file);
+
+        assertEquals(EImportStatus.FAILED, job.getStatus());
+        assertEquals(6L, job.getCopiedRows());
+        assertEquals(2L, job.getRejectedRows());
+        assertNull(job.getImportedRows());
+        assertTrue(job.getError().endsWith("lines: 2, 5"));
+        assertFalse(Files.exists(file));
+        verify(jdbcTemplate, never()).update(anyString());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void test_RunImport_CopyFailure() throws IOException {
+        final Path file = createFile();
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+            .thenThrow(new DataIntegrityViolationException("missing data for column \"description\""));
+
+        service.runImport(7L, file);
+
+        assertEquals(EImportStatus.FAILED, job.getStatus());
+        assertEquals("missing data for column \"description\"", job.getError());
+        assertFalse(Files.exists(file));
+        verify(jdbcTemplate, never()).update(anyString());
+    }
+
+    @Test
+    void test_RunImport_UnexpectedHeader() throws IOException {
+        final Path file = createFile("name;size\nTitanic;269\n");
+
+        service.runImport(7L, file);
+
+        assertEquals(EImportStatus.FAILED, job.getStatus());
+        assertTrue(job.getError().startsWith("Unexpected header: name;size"));
+        assertFalse(Files.exists(file));
+        verify(jdbcTemplate, never()).execute(any(ConnectionCallback.class));
+        verify(jdbcTemplate, never()).update(anyString());
+    }
+
+    @Test
+    void test_ReadColumns() throws IOException {
+        assertEquals("NAME, DESCRIPTION", BoatImportService.readColumns(createFile("name;description\n")));
+        assertEquals("NAME, DESCRIPTION", BoatImportService.readColumns(createFile("\uFEFF\"Name\";\"Description\"\r\n")));
+        assertEquals("NAME, DESCRIPTION", BoatImportService.readColumns(createFile("")));
+        // export file
+        assertEquals("EXPORTED_ID, NAME, DESCRIPTION", BoatImportService.readColumns(createFile("id;name;description\n12;Titanic;\n")));
+
+        final Path file = createFile("id;name\n");
+        assertThrows(BoatAPIException.class, () -> BoatImportService.readColumns(file));
+    }
+
+    @Test
+    void test_FindImportById() {
+        assertEquals(EImportStatus.PENDING, service.findImportById(7L).orElseThrow().status());
+        assertTrue(service.findImportById(8L).isEmpty());
+    }
+
+    private static Path createFile() throws IOException {
+        final Path file = Files.createTempFile("boat-import-test-", ".csv");
+        Files.write(file, CSV);
+        return file;
+    }
+
+    private static Path createFile(final String content) throws IOException {
+        final Path file = Files.createTempFile("boat-import-test-", ".csv");
+        Files.writeString(file, content);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
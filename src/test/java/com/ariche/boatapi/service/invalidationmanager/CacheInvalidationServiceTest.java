@@ -0,0 +1,77 @@
+package com.ariche.boatapi.service.invalidationmanager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheInvalidationServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private CacheInvalidationService service;
+
+    private final List<String> evicted = new ArrayList<>();
+    private int evictedAll;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service.register("boats", evicted::add, () -> evictedAll++);
+    }
+
+    @Test
+    void test_Publish() {
+        service.publish("boats", "12");
+        verify(jdbcTemplate).queryForList("SELECT PG_NOTIFY(?, ?)", CacheInvalidationService.CHANNEL, "boats:12");
+    }
+
+    @Test
+    void test_Publish_Disabled() {
+        ReflectionTestUtils.setField(service, "enabled", false);
+        service.publish("boats", "12");
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void test_Dispatch() {
+        service.dispatch("boats:12");
+        service.dispatch("boats:a:b");
+        assertEquals(List.of("12", "a:b"), evicted);
+        assertEquals(0, evictedAll);
+    }
+
+    @Test
+    void test_Dispatch_Ignored() {
+        service.dispatch("users:12");
+        service.dispatch("boats");
+        service.dispatch("");
+        assertTrue(evicted.isEmpty());
+    }
+
+    @Test
+    void test_Dispatch_EvictionFailure() {
+        service.register("users", key -> {
+            throw new NumberFormatException(key);
+        }, () -> { });
+        assertDoesNotThrow(() -> service.dispatch("users:abc"));
+    }
+
+    @Test
+    void test_EvictAll() {
+        service.evictAll();
+        assertEquals(1, evictedAll);
+        assertTrue(evicted.isEmpty());
+    }
+}
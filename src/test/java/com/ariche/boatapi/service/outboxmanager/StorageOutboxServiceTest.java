@@ -0,0 +1,191 @@
+package com.ariche.boatapi.service.outboxmanager;
+
+import com.ariche.boatapi.entity.StorageOutboxEntity;
+import com.ariche.boatapi.repository.StorageOutboxRepository;
+import com.ariche.boatapi.service.outboxmanager.dto.EStorageAction;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.StorageService;
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StorageOutboxServiceTest {
+
+    @Mock
+    private StorageOutboxRepository storageOutboxRepository;
+    @Mock
+    private StorageService storageService;
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+    @InjectMocks
+    private StorageOutboxService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "initialBackoff", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(service, "maxBackoff", Duration.ofHours(1));
+        ReflectionTestUtils.setField(service, "lease", Duration.ofMinutes(10));
+    }
+
+    @Test
+    void test_DeleteFileAfterCommit() {
+        final Instant before = Instant.now();
+        service.deleteFileAfterCommit("image.png", "boat-000000012");
+
+        final ArgumentCaptor<StorageOutboxEntity> captor = ArgumentCaptor.forClass(StorageOutboxEntity.class);
+        verify(storageOutboxRepository).save(captor.capture());
+        assertEquals(EStorageAction.DELETE_FILE, captor.getValue().getAction());
+        assertEquals("image.png", captor.getValue().getFileName());
+        assertEquals("boat-000000012", captor.getValue().getFolder());
+        assertEquals(0, captor.getValue().getAttempts());
+        assertFalse(captor.getValue().getCreatedAt().isBefore(before));
+        assertEquals(captor.getValue().getCreatedAt(), captor.getValue().getNextAttemptAt());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_DeleteFolderAfterCommit() {
+        service.deleteFolderAfterCommit("boat-000000012");
+
+        final ArgumentCaptor<StorageOutboxEntity> captor = ArgumentCaptor.forClass(StorageOutboxEntity.class);
+        verify(storageOutboxRepository).save(captor.capture());
+        assertEquals(EStorageAction.DELETE_FOLDER, captor.getValue().getAction());
+        assertNull(captor.getValue().getFileName());
+        assertEquals("boat-000000012", captor.getValue().getFolder());
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_CancelFileDeletion() {
+        service.cancelFileDeletion("image.png", "boat-000000012");
+        verify(storageOutboxRepository).deletePendingDeletions(eq("image.png"), eq("boat-000000012"), any(Instant.class));
+        verify(storageOutboxRepository).existsClaimedDeletion(eq("image.png"), eq("boat-000000012"), any(Instant.class));
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_CancelFileDeletion_Claimed() {
+        // being performed by the dispatcher, then over
+        when(storageOutboxRepository.existsClaimedDeletion(anyString(), anyString(), any(Instant.class))).thenReturn(true, false);
+
+        service.cancelFileDeletion("image.png", "boat-000000012");
+
+        verify(storageOutboxRepository, times(2)).deletePendingDeletions(eq("image.png"), eq("boat-000000012"), any(Instant.class));
+        verify(storageOutboxRepository, times(2)).existsClaimedDeletion(eq("image.png"), eq("boat-000000012"), any(Instant.class));
+    }
+
+    @Test
+    void test_DispatchBatch() {
+        final StorageOutboxEntity deleteFile = buildAction(1L, EStorageAction.DELETE_FILE, "image.png");
+        final StorageOutboxEntity deleteFolder = buildAction(2L, EStorageAction.DELETE_FOLDER, null);
+        when(storageOutboxRepository.lockDueActions(any(Instant.class), anyInt())).thenReturn(List.of(deleteFile, deleteFolder));
+        // the storage is reached once the claim is committed, no transaction is left open meanwhile
+        doAnswer(invocation -> {
+            verify(transactionManager, times(1)).commit(any());
+            return null;
+        }).when(storageService).deleteFile(anyString(), anyString());
+
+        final Instant now = Instant.now();
+        assertEquals(2, service.dispatchBatch(now));
+
+        verify(storageOutboxRepository).lockDueActions(now, 2);
+        assertEquals(now.plus(Duration.ofMinutes(10)), deleteFile.getClaimedUntil());
+        assertEquals(now.plus(Duration.ofMinutes(10)), deleteFile.getNextAttemptAt());
+        verify(storageService).deleteFile("image.png", "boat-000000012");
+        verify(storageService).deleteFolder("boat-000000012");
+        verify(storageOutboxRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void test_DispatchBatch_Failure() {
+        final StorageOutboxEntity deleteFolder = buildAction(2L, EStorageAction.DELETE_FOLDER, null);
+        deleteFolder.setAttempts(2);
+        when(storageOutboxRepository.lockDueActions(any(Instant.class), anyInt())).thenReturn(List.of(deleteFolder));
+        when(storageOutboxRepository.findAllById(Set.of(2L))).thenReturn(List.of(deleteFolder));
+        doThrow(new StorageException(EStorageError.TRANSFER_ERROR, "COS unavailable"))
+            .when(storageService)
+            .deleteFolder(anyString());
+
+        final Instant now = Instant.now();
+        assertEquals(1, service.dispatchBatch(now));
+
+        verify(storageOutboxRepository).deleteAllByIdInBatch(Collections.emptyList());
+        assertEquals(3, deleteFolder.getAttempts());
+        assertEquals(now.plus(Duration.ofMinutes(2)), deleteFolder.getNextAttemptAt());
+        assertEquals("COS unavailable", deleteFolder.getLastError());
+        assertNull(deleteFolder.getClaimedUntil());
+    }
+
+    @Test
+    void test_Dispatch_Drains() {
+        when(storageOutboxRepository.lockDueActions(any(Instant.class), anyInt()))
+            .thenReturn(
+                List.of(buildAction(1L, EStorageAction.DELETE_FILE, "image1.png"), buildAction(2L, EStorageAction.DELETE_FILE, "image2.png")),
+                List.of(buildAction(3L, EStorageAction.DELETE_FILE, "image3.png")),
+                List.of(buildAction(4L, EStorageAction.DELETE_FILE, "image4.png")));
+
+        service.dispatch();
+
+        verify(storageOutboxRepository, times(2)).lockDueActions(any(Instant.class), eq(2));
+        verify(storageService, times(3)).deleteFile(anyString(), anyString());
+        // a claim and a result per batch
+        verify(transactionManager, times(4)).commit(any());
+    }
+
+    @Test
+    void test_Dispatch_Nothing() {
+        when(storageOutboxRepository.lockDueActions(any(Instant.class), anyInt())).thenReturn(Collections.emptyList());
+        service.dispatch();
+        verifyNoInteractions(storageService);
+        verify(storageOutboxRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void test_ComputeBackoff() {
+        final Duration initial = Duration.ofSeconds(30);
+        final Duration max = Duration.ofHours(1);
+        assertEquals(Duration.ofSeconds(30), StorageOutboxService.computeBackoff(1, initial, max));
+        assertEquals(Duration.ofSeconds(60), StorageOutboxService.computeBackoff(2, initial, max));
+        assertEquals(Duration.ofMinutes(32), StorageOutboxService.computeBackoff(7, initial, max));
+        assertEquals(max, StorageOutboxService.computeBackoff(8, initial, max));
+        assertEquals(max, StorageOutboxService.computeBackoff(1_000, initial, max));
+    }
+
+    private static StorageOutboxEntity buildAction(final Long id,
+                                                   final EStorageAction action,
+                                                   final String fileName) {
+        final StorageOutboxEntity entity = new StorageOutboxEntity();
+        entity.setId(id);
+        entity.setAction(action);
+        entity.setFileName(fileName);
+        entity.setFolder("boat-000000012");
+        entity.setCreatedAt(Instant.now());
+        entity.setAttempts(0);
+        entity.setNextAttemptAt(Instant.now());
+        return entity;
+    }
+}
@@ -0,0 +1,284 @@
+package com.ariche.boatapi.service.storage;
+
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CachingStorageServiceTest {
+
+    private static final byte[] CONTENT = new byte[]{1, 2, 3, 4, 5};
+
+    @Mock
+    private StorageService delegate;
+
+    private MeterRegistry meterRegistry;
+
+    private CachingStorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        storageService = new CachingStorageService(delegate, 12L, 8L, meterRegistry);
+    }
+
+    @Test
+    void test_DownloadFile_CachedAfterFirstRead() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        try (FileResourceDTO first = storageService.downloadFile("file.png", "folder");
+             FileResourceDTO second = storageService.downloadFile("file.png", "folder")) {
+            assertArrayEquals(CONTENT, first.stream().readAllBytes());
+            assertArrayEquals(CONTENT, second.stream().readAllBytes());
+            assertEquals(MediaType.IMAGE_PNG_VALUE, second.mimeType());
+            assertEquals(5L, second.contentLength());
+        }
+
+        verify(delegate, times(1)).downloadFile("file.png", "folder");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void test_DownloadFile_ConcurrentMissesCoalesced() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> {
+                release.await();
+                return remoteFile(CONTENT);
+            });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<byte[]> first = executor.submit(() -> readFile("file.png"));
+            awaitCoalescedCount("executed", 1.0);
+            final Future<byte[]> second = executor.submit(() -> readFile("file.png"));
+            awaitCoalescedCount("coalesced", 1.0);
+            release.countDown();
+
+            assertArrayEquals(CONTENT, first.get());
+            assertArrayEquals(CONTENT, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(delegate, times(1)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DownloadFile_TooLarge_NotCoalesced() throws Exception {
+        final byte[] content = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9};
+        final CountDownLatch release = new CountDownLatch(1);
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> {
+                release.await();
+                return remoteFile(content);
+            })
+            .thenAnswer(invocation -> remoteFile(content));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<byte[]> first = executor.submit(() -> readFile("file.png"));
+            awaitCoalescedCount("executed", 1.0);
+            final Future<byte[]> second = executor.submit(() -> readFile("file.png"));
+            awaitCoalescedCount("coalesced", 1.0);
+            release.countDown();
+
+            // each caller reads its own stream
+            assertArrayEquals(content, first.get());
+            assertArrayEquals(content, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DownloadFile_TooLarge() throws IOException {
+        final byte[] content = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9};
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(content));
+
+        try (FileResourceDTO file = storageService.downloadFile("file.png", "folder")) {
+            assertArrayEquals(content, file.stream().readAllBytes());
+        }
+        storageService.downloadFile("file.png", "folder");
+
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DownloadFile_LocalFileNotCached() {
+        final FileResourceDTO local = new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 5L,
+            new ByteArrayInputStream(CONTENT), Path.of("folder", "file.png"));
+        when(delegate.downloadFile(anyString(), anyString())).thenReturn(local);
+
+        assertSame(local, storageService.downloadFile("file.png", "folder"));
+        assertSame(local, storageService.downloadFile("file.png", "folder"));
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DownloadFile_Truncated() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 5L, new ByteArrayInputStream(new byte[]{1, 2})));
+
+        final StorageException exception = assertThrows(StorageException.class,
+            () -> storageService.downloadFile("file.png", "folder"));
+        assertEquals(EStorageError.TRANSFER_ERROR, exception.getError());
+    }
+
+    @Test
+    void test_StoreFile_Invalidates() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        final MockMultipartFile file = new MockMultipartFile("file", CONTENT);
+
+        storageService.downloadFile("file.png", "folder");
+        storageService.storeFile(file, "file.png", "folder", true);
+        storageService.downloadFile("file.png", "folder");
+
+        verify(delegate).storeFile(file, "file.png", "folder", true);
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_StoreFile_Content_Invalidates() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file.png", "folder");
+        storageService.storeFile("file.png", "folder", CONTENT, MediaType.IMAGE_PNG_VALUE);
+        storageService.downloadFile("file.png", "folder");
+
+        verify(delegate).storeFile("file.png", "folder", CONTENT, MediaType.IMAGE_PNG_VALUE);
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DeleteFile_Invalidates() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        doThrow(StorageException.class)
+            .when(delegate)
+            .deleteFile(anyString(), anyString());
+
+        storageService.downloadFile("file.png", "folder");
+        assertThrows(StorageException.class, () -> storageService.deleteFile("file.png", "folder"));
+        storageService.downloadFile("file.png", "folder");
+
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_DeleteFolder_Invalidates() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file.png", "folder");
+        storageService.downloadFile("file.png", "folder-2");
+        storageService.deleteFolder("folder");
+        storageService.downloadFile("file.png", "folder");
+        storageService.downloadFile("file.png", "folder-2");
+
+        verify(delegate).deleteFolder("folder");
+        verify(delegate, times(2)).downloadFile("file.png", "folder");
+        verify(delegate, times(1)).downloadFile("file.png", "folder-2");
+    }
+
+    @Test
+    void test_DownloadFileRange() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        when(delegate.downloadFileRange(anyString(), anyString(), anyLong(), anyLong()))
+            .thenReturn(new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 2L, new ByteArrayInputStream(new byte[]{2, 3})));
+
+        try (FileResourceDTO range = storageService.downloadFileRange("file.png", "folder", 1L, 2L)) {
+            assertArrayEquals(new byte[]{2, 3}, range.stream().readAllBytes());
+        }
+        verify(delegate).downloadFileRange("file.png", "folder", 1L, 2L);
+
+        storageService.downloadFile("file.png", "folder");
+        try (FileResourceDTO range = storageService.downloadFileRange("file.png", "folder", 3L, 10L)) {
+            assertEquals(2L, range.contentLength());
+            assertArrayEquals(new byte[]{4, 5}, range.stream().readAllBytes());
+        }
+        verify(delegate).downloadFile("file.png", "folder");
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void test_GetFileMetadata() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        when(delegate.getFileMetadata(anyString(), anyString()))
+            .thenReturn(new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, 5L));
+
+        assertEquals(new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, 5L), storageService.getFileMetadata("file.png", "folder"));
+        verify(delegate).getFileMetadata("file.png", "folder");
+
+        storageService.downloadFile("file.png", "folder");
+        assertEquals(new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, 5L), storageService.getFileMetadata("file.png", "folder"));
+        verify(delegate, times(1)).getFileMetadata("file.png", "folder");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void test_Eviction() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file1.png", "folder");
+        storageService.downloadFile("file2.png", "folder");
+        storageService.downloadFile("file3.png", "folder");
+
+        final Cache<String, ?> cache = (Cache<String, ?>) ReflectionTestUtils.getField(storageService, "cache");
+        assertNotNull(cache);
+        cache.cleanUp();
+        assertEquals(2L, cache.estimatedSize());
+        assertEquals(1.0, meterRegistry.get("cache.evictions").functionCounter().count());
+    }
+
+    @Test
+    void test_BuildKey() {
+        assertEquals("folder/file.png", CachingStorageService.buildKey("file.png", "folder"));
+    }
+
+    private byte[] readFile(final String fileName) throws IOException {
+        try (FileResourceDTO file = storageService.downloadFile(fileName, "folder")) {
+            return file.stream().readAllBytes();
+        }
+    }
+
+    private void awaitCoalescedCount(final String result,
+                                     final double expected) throws InterruptedException {
+        while (meterRegistry.get("single.flight.calls").tag("name", CachingStorageService.CACHE_NAME).tag("result", result).counter().count() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static FileResourceDTO remoteFile(final byte[] content) {
+        return new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, content.length, new ByteArrayInputStream(content));
+    }
+}
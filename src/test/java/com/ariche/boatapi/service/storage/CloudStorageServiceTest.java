@@ -1,11 +1,32 @@
 package com.ariche.boatapi.service.storage;
 
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import com.ibm.cloud.objectstorage.SdkClientException;
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
+import com.ibm.cloud.objectstorage.services.s3.model.AbortMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.AmazonS3Exception;
+import com.ibm.cloud.objectstorage.services.s3.model.CompleteMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.DeleteObjectsRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.GetObjectRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.InitiateMultipartUploadResult;
+import com.ibm.cloud.objectstorage.services.s3.model.ListMultipartUploadsRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Request;
+import com.ibm.cloud.objectstorage.services.s3.model.ListObjectsV2Result;
+import com.ibm.cloud.objectstorage.services.s3.model.MultipartUpload;
+import com.ibm.cloud.objectstorage.services.s3.model.MultipartUploadListing;
 import com.ibm.cloud.objectstorage.services.s3.model.ObjectMetadata;
+import com.ibm.cloud.objectstorage.services.s3.model.PartETag;
 import com.ibm.cloud.objectstorage.services.s3.model.S3Object;
 import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectInputStream;
+import com.ibm.cloud.objectstorage.services.s3.model.S3ObjectSummary;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartRequest;
+import com.ibm.cloud.objectstorage.services.s3.model.UploadPartResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -14,8 +35,17 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,12 +57,134 @@ class CloudStorageServiceTest {
 
     private final String bucketName = "bucket";
 
+    private ExecutorService uploadExecutor;
+
+    private MeterRegistry meterRegistry;
+
     private CloudStorageService storageService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        storageService = spy(new CloudStorageService(cloudCOSClient, bucketName));
+        uploadExecutor = Executors.newFixedThreadPool(2);
+        meterRegistry = new SimpleMeterRegistry();
+        storageService = spy(new CloudStorageService(cloudCOSClient, bucketName, uploadExecutor,
+            new CloudStorageService.MultipartSettings(4L, 4L, Duration.ofDays(1)), meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Test
+    void test_StoreFile_SinglePut() throws IOException {
+        final InputStream stream = new ByteArrayInputStream(new byte[]{1, 2, 3});
+
+        storageService.storeFile("name", "folder", stream, MediaType.IMAGE_PNG_VALUE, 3L, true);
+
+        final ArgumentCaptor<ObjectMetadata> captor = ArgumentCaptor.forClass(ObjectMetadata.class);
+        verify(cloudCOSClient).putObject(eq("bucket/folder"), eq("name"), eq(stream), captor.capture());
+        assertEquals(3L, captor.getValue().getContentLength());
+        assertEquals(MediaType.IMAGE_PNG_VALUE, captor.getValue().getContentType());
+        verify(cloudCOSClient, never()).initiateMultipartUpload(any());
+    }
+
+    @Test
+    void test_StoreFile_Multipart() throws IOException {
+        mockMultipartUpload();
+
+        storageService.storeFile("name", "folder", new ByteArrayInputStream(new byte[10]), MediaType.IMAGE_PNG_VALUE, 10L, true);
+
+        final ArgumentCaptor<UploadPartRequest> partCaptor = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(cloudCOSClient, times(3)).uploadPart(partCaptor.capture());
+        assertEquals(List.of(4L, 4L, 2L), partCaptor.getAllValues().stream()
+            .sorted(Comparator.comparingInt(UploadPartRequest::getPartNumber))
+            .map(UploadPartRequest::getPartSize)
+            .toList());
+
+        final ArgumentCaptor<CompleteMultipartUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(cloudCOSClient).completeMultipartUpload(captor.capture());
+        assertEquals("upload-id", captor.getValue().getUploadId());
+        assertEquals(List.of(1, 2, 3), captor.getValue().getPartETags().stream().map(PartETag::getPartNumber).toList());
+        verify(cloudCOSClient, never()).abortMultipartUpload(any());
+        verify(cloudCOSClient, never()).putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
+    }
+
+    @Test
+    void test_StoreFile_Multipart_PartFailure() {
+        mockMultipartUpload();
+        doThrow(new SdkClientException("timeout"))
+            .when(cloudCOSClient)
+            .uploadPart(any(UploadPartRequest.class));
+
+        final InputStream stream = new ByteArrayInputStream(new byte[10]);
+        assertThrows(SdkClientException.class,
+            () -> storageService.storeFile("name", "folder", stream, MediaType.IMAGE_PNG_VALUE, 10L, true));
+
+        final ArgumentCaptor<AbortMultipartUploadRequest> captor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(cloudCOSClient).abortMultipartUpload(captor.capture());
+        assertEquals("upload-id", captor.getValue().getUploadId());
+        verify(cloudCOSClient, never()).completeMultipartUpload(any());
+    }
+
+    @Test
+    void test_StoreFile_Multipart_ShortStream() {
+        mockMultipartUpload();
+
+        final InputStream stream = new ByteArrayInputStream(new byte[6]);
+        assertThrows(IOException.class,
+            () -> storageService.storeFile("name", "folder", stream, MediaType.IMAGE_PNG_VALUE, 10L, true));
+
+        verify(cloudCOSClient).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(cloudCOSClient, never()).completeMultipartUpload(any());
+    }
+
+    @Test
+    void test_AbortAbandonedUploads() {
+        final MultipartUpload abandoned = new MultipartUpload();
+        abandoned.setKey("folder/old.png");
+        abandoned.setUploadId("old-upload");
+        abandoned.setInitiated(Date.from(Instant.now().minus(Duration.ofDays(2))));
+        final MultipartUpload running = new MultipartUpload();
+        running.setKey("folder/new.png");
+        running.setUploadId("new-upload");
+        running.setInitiated(new Date());
+
+        final MultipartUploadListing listing = mock(MultipartUploadListing.class);
+        when(listing.getMultipartUploads()).thenReturn(List.of(abandoned, running));
+        when(listing.isTruncated()).thenReturn(false);
+        when(cloudCOSClient.listMultipartUploads(any(ListMultipartUploadsRequest.class))).thenReturn(listing);
+
+        storageService.abortAbandonedUploads();
+
+        final ArgumentCaptor<AbortMultipartUploadRequest> captor = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(cloudCOSClient).abortMultipartUpload(captor.capture());
+        assertEquals("bucket", captor.getValue().getBucketName());
+        assertEquals("folder/old.png", captor.getValue().getKey());
+        assertEquals("old-upload", captor.getValue().getUploadId());
+    }
+
+    @Test
+    void test_AbortAbandonedUploads_SdkClientException() {
+        when(cloudCOSClient.listMultipartUploads(any(ListMultipartUploadsRequest.class)))
+            .thenThrow(new SdkClientException("timeout"));
+
+        assertDoesNotThrow(() -> storageService.abortAbandonedUploads());
+        verify(cloudCOSClient, never()).abortMultipartUpload(any());
+    }
+
+    private void mockMultipartUpload() {
+        final InitiateMultipartUploadResult initResult = new InitiateMultipartUploadResult();
+        initResult.setUploadId("upload-id");
+        when(cloudCOSClient.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initResult);
+        when(cloudCOSClient.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            final UploadPartRequest request = invocation.getArgument(0);
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-%d".formatted(request.getPartNumber()));
+            return result;
+        });
     }
 
     @Test
@@ -43,11 +195,11 @@ class CloudStorageServiceTest {
 
         doNothing()
             .when(storageService)
-            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyBoolean());
+            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyLong(), anyBoolean());
 
         assertDoesNotThrow(() -> storageService.storeFile(multipartFile, "test", "folder"));
         verify(storageService)
-            .storeFile(eq("test"), eq("folder"), any(InputStream.class), eq(MediaType.APPLICATION_JSON_VALUE), anyBoolean());
+            .storeFile(eq("test"), eq("folder"), any(InputStream.class), eq(MediaType.APPLICATION_JSON_VALUE), anyLong(), anyBoolean());
     }
 
     @Test
@@ -58,7 +210,7 @@ class CloudStorageServiceTest {
 
         doThrow(IOException.class)
             .when(storageService)
-            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyBoolean());
+            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyLong(), anyBoolean());
 
         assertThrows(StorageException.class,
             () -> storageService.storeFile(multipartFile, "test", "folder", true));
@@ -72,99 +224,236 @@ class CloudStorageServiceTest {
 
         doThrow(SdkClientException.class)
             .when(storageService)
-            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyBoolean());
+            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyLong(), anyBoolean());
 
         assertThrows(StorageException.class,
             () -> storageService.storeFile(multipartFile, "test", "folder", true));
     }
 
     @Test
-    void test_downloadFile() throws IOException {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString())).thenReturn(true);
+    void test_StoreFile_Content() throws IOException {
+        doNothing()
+            .when(storageService)
+            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyLong(), anyBoolean());
+
+        assertDoesNotThrow(() -> storageService.storeFile("test", "folder", new byte[3], MediaType.IMAGE_PNG_VALUE));
+        verify(storageService)
+            .storeFile(eq("test"), eq("folder"), any(InputStream.class), eq(MediaType.IMAGE_PNG_VALUE), eq(3L), eq(true));
+    }
 
+    @Test
+    void test_StoreFile_Content_IOException() throws IOException {
+        doThrow(IOException.class)
+            .when(storageService)
+            .storeFile(anyString(), anyString(), any(InputStream.class), anyString(), anyLong(), anyBoolean());
+
+        final StorageException exception = assertThrows(StorageException.class,
+            () -> storageService.storeFile("test", "folder", new byte[3], MediaType.IMAGE_PNG_VALUE));
+        assertEquals(EStorageError.TRANSFER_ERROR, exception.getError());
+    }
+
+    @Test
+    void test_downloadFile() throws IOException {
         final S3Object s3Object = mock(S3Object.class);
         final ObjectMetadata metadata = mock(ObjectMetadata.class);
         when(metadata.getContentType()).thenReturn(MediaType.APPLICATION_PDF_VALUE);
         when(s3Object.getObjectMetadata()).thenReturn(metadata);
+        when(metadata.getContentLength()).thenReturn(4L);
         final S3ObjectInputStream stream = mock(S3ObjectInputStream.class);
-        when(stream.readAllBytes()).thenReturn(new byte[]{0,1,2,3});
         when(s3Object.getObjectContent()).thenReturn(stream);
         when(cloudCOSClient.getObject(anyString(), anyString()))
             .thenReturn(s3Object);
 
         final FileResourceDTO res = storageService.downloadFile("file.pdf", "folder");
-        assertNotNull(res.bytes());
+        assertSame(stream, res.stream());
+        assertEquals(4L, res.contentLength());
         assertEquals(MediaType.APPLICATION_PDF_VALUE, res.mimeType());
         verify(cloudCOSClient).getObject("bucket/folder", "file.pdf");
+        verify(cloudCOSClient, never()).doesObjectExist(anyString(), anyString());
+        verify(stream, never()).readAllBytes();
+        assertEquals(1.0, countRequests("get"));
+        assertEquals(0.0, countRequests("head"));
     }
 
     @Test
     void test_downloadFile_NotExistException() {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString())).thenReturn(false);
-        assertThrows(StorageException.class, () -> storageService.downloadFile("file", "folder"));
-        verify(cloudCOSClient, never()).getObject(anyString(), anyString());
+        final AmazonS3Exception exception = new AmazonS3Exception("The specified key does not exist.");
+        exception.setStatusCode(404);
+        exception.setErrorCode("NoSuchKey");
+        when(cloudCOSClient.getObject(anyString(), anyString())).thenThrow(exception);
+
+        final StorageException res = assertThrows(StorageException.class, () -> storageService.downloadFile("file", "folder"));
+        assertEquals(EStorageError.FILE_NOT_FOUND, res.getError());
+        verify(cloudCOSClient, never()).doesObjectExist(anyString(), anyString());
     }
 
     @Test
-    void test_downloadFile_IOException() throws IOException {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString())).thenReturn(true);
-
+    void test_downloadFile_NoMetadata() {
         final S3Object s3Object = mock(S3Object.class);
-        final ObjectMetadata metadata = mock(ObjectMetadata.class);
-        when(metadata.getContentType()).thenReturn(MediaType.APPLICATION_PDF_VALUE);
-        when(s3Object.getObjectMetadata()).thenReturn(metadata);
+        when(s3Object.getObjectMetadata()).thenReturn(null);
         final S3ObjectInputStream stream = mock(S3ObjectInputStream.class);
-        doThrow(IOException.class)
-            .when(stream)
-            .readAllBytes();
-        //when(stream.readAllBytes()).thenReturn(new byte[]{0,1,2,3});
         when(s3Object.getObjectContent()).thenReturn(stream);
         when(cloudCOSClient.getObject(anyString(), anyString()))
             .thenReturn(s3Object);
 
-        assertThrows(StorageException.class,
-            () -> storageService.downloadFile("file.pdf", "folder"));
+        final FileResourceDTO res = storageService.downloadFile("file.pdf", "folder");
+        assertNull(res.mimeType());
+        assertEquals(-1L, res.contentLength());
 
         verify(cloudCOSClient).getObject("bucket/folder", "file.pdf");
     }
 
+    @Test
+    void test_downloadFileRange() {
+        final S3Object s3Object = mock(S3Object.class);
+        final ObjectMetadata metadata = mock(ObjectMetadata.class);
+        when(metadata.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(s3Object.getObjectMetadata()).thenReturn(metadata);
+        final S3ObjectInputStream stream = mock(S3ObjectInputStream.class);
+        when(s3Object.getObjectContent()).thenReturn(stream);
+        when(cloudCOSClient.getObject(any(GetObjectRequest.class))).thenReturn(s3Object);
+
+        final FileResourceDTO res = storageService.downloadFileRange("file.png", "folder", 10L, 19L);
+        assertSame(stream, res.stream());
+        assertEquals(10L, res.contentLength());
+        assertEquals(MediaType.IMAGE_PNG_VALUE, res.mimeType());
+
+        final ArgumentCaptor<GetObjectRequest> captor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(cloudCOSClient).getObject(captor.capture());
+        assertEquals("bucket/folder", captor.getValue().getBucketName());
+        assertEquals("file.png", captor.getValue().getKey());
+        assertArrayEquals(new long[]{10L, 19L}, captor.getValue().getRange());
+    }
+
+    @Test
+    void test_downloadFileRange_NotFound() {
+        final AmazonS3Exception exception = new AmazonS3Exception("Not Found");
+        exception.setStatusCode(404);
+        when(cloudCOSClient.getObject(any(GetObjectRequest.class))).thenThrow(exception);
+
+        final StorageException res = assertThrows(StorageException.class,
+            () -> storageService.downloadFileRange("file.png", "folder", 10L, 19L));
+        assertEquals(EStorageError.FILE_NOT_FOUND, res.getError());
+    }
+
+    @Test
+    void test_getFileMetadata() {
+        final ObjectMetadata metadata = mock(ObjectMetadata.class);
+        when(metadata.getContentType()).thenReturn(MediaType.IMAGE_PNG_VALUE);
+        when(metadata.getContentLength()).thenReturn(42L);
+        when(cloudCOSClient.getObjectMetadata(anyString(), anyString())).thenReturn(metadata);
+
+        final FileMetadataDTO res = storageService.getFileMetadata("file.png", "folder");
+        assertEquals(MediaType.IMAGE_PNG_VALUE, res.mimeType());
+        assertEquals(42L, res.contentLength());
+        verify(cloudCOSClient).getObjectMetadata("bucket/folder", "file.png");
+    }
+
+    @Test
+    void test_getFileMetadata_SdkClientException() {
+        when(cloudCOSClient.getObjectMetadata(anyString(), anyString()))
+            .thenThrow(new SdkClientException("timeout"));
+
+        final StorageException res = assertThrows(StorageException.class,
+            () -> storageService.getFileMetadata("file.png", "folder"));
+        assertEquals(EStorageError.TRANSFER_ERROR, res.getError());
+    }
+
     @Test
     void test_downloadFile_SdkClientException() {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString()))
-            .thenThrow(mock(SdkClientException.class));
-        assertThrows(StorageException.class, () -> storageService.downloadFile("file", "folder"));
-        verify(cloudCOSClient, never()).getObject(anyString(), anyString());
+        when(cloudCOSClient.getObject(anyString(), anyString()))
+            .thenThrow(new SdkClientException("timeout"));
+        final StorageException res = assertThrows(StorageException.class, () -> storageService.downloadFile("file", "folder"));
+        assertEquals(EStorageError.TRANSFER_ERROR, res.getError());
     }
 
     @Test
-    void test_deleteFile_NotExist() throws StorageException {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString())).thenReturn(false);
+    void test_deleteFile() throws StorageException {
         storageService.deleteFile("file", "folder");
 
-        verify(cloudCOSClient, never()).deleteObject(anyString(), anyString());
+        verify(cloudCOSClient).deleteObject("bucket/folder", "file");
+        verify(cloudCOSClient, never()).doesObjectExist(anyString(), anyString());
+        assertEquals(1.0, countRequests("delete"));
     }
 
     @Test
-    void test_deleteFile_Exists() {
-        when(cloudCOSClient.doesObjectExist(anyString(), anyString())).thenReturn(true);
+    void test_deleteFile_SdkClientException() {
+        doThrow(new SdkClientException("timeout"))
+            .when(cloudCOSClient)
+            .deleteObject(anyString(), anyString());
         assertThrows(StorageException.class, () -> storageService.deleteFile("file", "folder"));
 
         verify(cloudCOSClient).deleteObject("bucket/folder", "file");
     }
 
+    @Test
+    void test_deleteFolder() {
+        final ListObjectsV2Result page1 = buildListing(true, "token", "folder/file1", "folder/file2");
+        final ListObjectsV2Result page2 = buildListing(false, null, "folder/file3");
+        when(cloudCOSClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page1, page2);
+
+        storageService.deleteFolder("folder");
+
+        final ArgumentCaptor<ListObjectsV2Request> captor = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(cloudCOSClient, times(2)).listObjectsV2(captor.capture());
+        assertEquals("bucket", captor.getValue().getBucketName());
+        assertEquals("folder/", captor.getValue().getPrefix());
+        assertEquals("token", captor.getValue().getContinuationToken());
+        verify(cloudCOSClient, times(2)).deleteObjects(any(DeleteObjectsRequest.class));
+        assertEquals(2.0, countRequests("list"));
+        assertEquals(2.0, countRequests("bulk-delete"));
+    }
+
+    @Test
+    void test_deleteFolder_Empty() {
+        final ListObjectsV2Result empty = buildListing(false, null);
+        when(cloudCOSClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(empty);
+
+        storageService.deleteFolder("folder");
+
+        verify(cloudCOSClient, never()).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    void test_deleteFolder_SdkClientException() {
+        final ListObjectsV2Result page = buildListing(false, null, "folder/file1");
+        when(cloudCOSClient.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page);
+        doThrow(new SdkClientException("timeout"))
+            .when(cloudCOSClient)
+            .deleteObjects(any(DeleteObjectsRequest.class));
+
+        final StorageException exception = assertThrows(StorageException.class, () -> storageService.deleteFolder("folder"));
+        assertEquals(EStorageError.TRANSFER_ERROR, exception.getError());
+    }
+
+    @Test
+    void test_ToStorageException() {
+        final AmazonS3Exception noSuchKey = new AmazonS3Exception("The specified key does not exist.");
+        noSuchKey.setErrorCode("NoSuchKey");
+        assertEquals(EStorageError.FILE_NOT_FOUND, CloudStorageService.toStorageException("file", noSuchKey).getError());
+
+        final AmazonS3Exception forbidden = new AmazonS3Exception("Access Denied");
+        forbidden.setStatusCode(403);
+        assertEquals(EStorageError.TRANSFER_ERROR, CloudStorageService.toStorageException("file", forbidden).getError());
+
+        assertEquals(EStorageError.TRANSFER_ERROR,
+            CloudStorageService.toStorageException("file", new SdkClientException("timeout")).getError());
+    }
+
     @Test
     void test_TestStoreFile() throws IOException {
         final InputStream stream = mock(InputStream.class);
-        when(stream.available()).thenReturn(250);
-        storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, true);
+        storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, 250L, true);
 
         final ArgumentCaptor<ObjectMetadata> captor = ArgumentCaptor.forClass(ObjectMetadata.class);
 
         verify(cloudCOSClient)
             .putObject(eq(bucketName.concat("/folder")), eq("name"), eq(stream), captor.capture());
+        verify(cloudCOSClient, never()).doesObjectExist(anyString(), anyString());
 
         assertEquals(MediaType.APPLICATION_JSON_VALUE, captor.getValue().getContentType());
         assertEquals(250, captor.getValue().getContentLength());
+        assertEquals(1.0, countRequests("put"));
     }
 
     @Test
@@ -175,11 +464,10 @@ class CloudStorageServiceTest {
     @Test
     void test_TestStoreFile_Replace_False_NoExist() throws IOException {
         final InputStream stream = mock(InputStream.class);
-        when(stream.available()).thenReturn(250);
         when(cloudCOSClient.doesObjectExist(anyString(), anyString()))
             .thenReturn(false);
 
-        storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, false);
+        storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, 250L, false);
 
         final ArgumentCaptor<ObjectMetadata> captor = ArgumentCaptor.forClass(ObjectMetadata.class);
 
@@ -194,13 +482,12 @@ class CloudStorageServiceTest {
     @Test
     void test_TestStoreFile_Replace_False_AlreadyExist() throws IOException {
         final InputStream stream = mock(InputStream.class);
-        when(stream.available()).thenReturn(250);
         when(cloudCOSClient.doesObjectExist(anyString(), anyString()))
             .thenReturn(true);
 
 
         assertThrows(StorageException.class,
-            () -> storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, false));
+            () -> storageService.storeFile("name", "folder", stream, MediaType.APPLICATION_JSON_VALUE, 250L, false));
 
         verify(cloudCOSClient, never())
             .putObject(anyString(), anyString(), any(InputStream.class), any(ObjectMetadata.class));
@@ -229,4 +516,25 @@ class CloudStorageServiceTest {
 
         verify(storageService).deleteFile("test", "folder");
     }
+
+    private static ListObjectsV2Result buildListing(final boolean truncated,
+                                                    final String nextContinuationToken,
+                                                    final String... keys) {
+        final ListObjectsV2Result listing = spy(new ListObjectsV2Result());
+        final List<S3ObjectSummary> summaries = Arrays.stream(keys)
+            .map(key -> {
+                final S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(key);
+                return summary;
+            })
+            .toList();
+        doReturn(summaries).when(listing).getObjectSummaries();
+        listing.setTruncated(truncated);
+        listing.setNextContinuationToken(nextContinuationToken);
+        return listing;
+    }
+
+    private double countRequests(final String operation) {
+        return meterRegistry.counter(CloudStorageService.REQUESTS_METRIC, "operation", operation).count();
+    }
 }
@@ -0,0 +1,306 @@
+package com.ariche.boatapi.service.storage;
+
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DiskCacheStorageServiceTest {
+
+    private static final byte[] CONTENT = new byte[]{1, 2, 3, 4, 5};
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private StorageService delegate;
+
+    private MeterRegistry meterRegistry;
+
+    private DiskCacheStorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        storageService = new DiskCacheStorageService(delegate, root, 12L, Duration.ZERO, meterRegistry);
+        storageService.loadIndex();
+    }
+
+    @Test
+    void test_DownloadFile_ReadThrough() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        try (FileResourceDTO first = storageService.downloadFile("file.png", "folder")) {
+            assertArrayEquals(CONTENT, first.stream().readAllBytes());
+            assertEquals(storageService.buildPath("file.png", "folder"), first.path());
+            assertEquals(5L, first.contentLength());
+        }
+        try (FileResourceDTO second = storageService.downloadFile("file.png", "folder")) {
+            assertArrayEquals(CONTENT, second.stream().readAllBytes());
+        }
+
+        verify(delegate, times(1)).downloadFile("file.png", "folder");
+        assertEquals(5L, storageService.getTotalSize());
+        assertEquals(1.0, meterRegistry.counter(DiskCacheStorageService.REQUESTS_METRIC, "result", "hit").count());
+        assertEquals(1.0, meterRegistry.counter(DiskCacheStorageService.REQUESTS_METRIC, "result", "miss").count());
+    }
+
+    @Test
+    void test_DownloadFile_DelegateFailure() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenThrow(new StorageException(EStorageError.FILE_NOT_FOUND, "file.png"));
+
+        final StorageException exception = assertThrows(StorageException.class,
+            () -> storageService.downloadFile("file.png", "folder"));
+        assertEquals(EStorageError.FILE_NOT_FOUND, exception.getError());
+        assertEquals(0L, storageService.getTotalSize());
+        try (var files = Files.walk(root)) {
+            assertTrue(files.noneMatch(Files::isRegularFile));
+        }
+    }
+
+    @Test
+    void test_DownloadFile_SingleFlight() throws Exception {
+        final CountDownLatch downloading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> {
+                downloading.countDown();
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+                return remoteFile(CONTENT);
+            });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<byte[]> first = executor.submit(() -> readAll("file.png"));
+            assertTrue(downloading.await(5, TimeUnit.SECONDS));
+            final Future<byte[]> second = executor.submit(() -> readAll("file.png"));
+            Thread.sleep(100L);
+            release.countDown();
+
+            assertArrayEquals(CONTENT, first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(CONTENT, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(delegate, times(1)).downloadFile("file.png", "folder");
+    }
+
+    @Test
+    void test_StoreFile_Invalidates() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        final MockMultipartFile file = new MockMultipartFile("file", CONTENT);
+
+        storageService.downloadFile("file.png", "folder").close();
+        storageService.storeFile(file, "file.png", "folder", true);
+        storageService.sweep();
+
+        verify(delegate).storeFile(file, "file.png", "folder", true);
+        assertFalse(Files.exists(storageService.buildPath("file.png", "folder")));
+        assertEquals(0L, storageService.getTotalSize());
+    }
+
+    @Test
+    void test_StoreFile_Content_Invalidates() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file.png", "folder").close();
+        storageService.storeFile("file.png", "folder", CONTENT, "image/png");
+        storageService.sweep();
+
+        verify(delegate).storeFile("file.png", "folder", CONTENT, "image/png");
+        assertFalse(Files.exists(storageService.buildPath("file.png", "folder")));
+        assertEquals(0L, storageService.getTotalSize());
+    }
+
+    @Test
+    void test_DeleteFile_Invalidates() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file.png", "folder").close();
+        storageService.deleteFile("file.png", "folder");
+        storageService.sweep();
+
+        verify(delegate).deleteFile("file.png", "folder");
+        assertFalse(Files.exists(storageService.buildPath("file.png", "folder")));
+    }
+
+    @Test
+    void test_DeleteFolder() {
+        doThrow(StorageException.class)
+            .when(delegate)
+            .deleteFolder(anyString());
+
+        assertThrows(StorageException.class, () -> storageService.deleteFolder("folder"));
+        verify(delegate).deleteFolder("folder");
+    }
+
+    @Test
+    void test_DownloadFileRange() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        when(delegate.downloadFileRange(anyString(), anyString(), anyLong(), anyLong()))
+            .thenReturn(new FileResourceDTO("image/png", 2L, new ByteArrayInputStream(new byte[]{2, 3})));
+
+        try (FileResourceDTO range = storageService.downloadFileRange("file.png", "folder", 1L, 2L)) {
+            assertArrayEquals(new byte[]{2, 3}, range.stream().readAllBytes());
+        }
+        verify(delegate).downloadFileRange("file.png", "folder", 1L, 2L);
+
+        storageService.downloadFile("file.png", "folder");
+        try (FileResourceDTO range = storageService.downloadFileRange("file.png", "folder", 3L, 4L)) {
+            assertEquals(2L, range.contentLength());
+            assertArrayEquals(new byte[]{4, 5}, range.stream().readAllBytes());
+        }
+        verify(delegate, times(1)).downloadFileRange(anyString(), anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void test_GetFileMetadata() {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file.png", "folder");
+        final FileMetadataDTO metadata = storageService.getFileMetadata("file.png", "folder");
+
+        assertEquals(5L, metadata.contentLength());
+        verify(delegate, never()).getFileMetadata(anyString(), anyString());
+    }
+
+    @Test
+    void test_Eviction_LeastRecentlyRead() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+
+        storageService.downloadFile("file1.png", "folder").close();
+        storageService.downloadFile("file2.png", "folder").close();
+        Files.setLastModifiedTime(storageService.buildPath("file1.png", "folder"), FileTime.fromMillis(0L));
+        // reload so that the index picks the access times up, as after a restart
+        storageService = new DiskCacheStorageService(delegate, root, 12L, Duration.ZERO, meterRegistry);
+        storageService.loadIndex();
+
+        storageService.downloadFile("file3.png", "folder").close();
+        storageService.sweep();
+
+        assertFalse(Files.exists(storageService.buildPath("file1.png", "folder")));
+        assertTrue(Files.exists(storageService.buildPath("file2.png", "folder")));
+        assertTrue(Files.exists(storageService.buildPath("file3.png", "folder")));
+        assertEquals(10L, storageService.getTotalSize());
+    }
+
+    @Test
+    void test_Eviction_WhileRead() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        final Path evicted = storageService.buildPath("file1.png", "folder");
+        storageService.downloadFile("file1.png", "folder").close();
+        storageService.downloadFile("file2.png", "folder").close();
+        // least recently read, but recently enough not to be touched once read again
+        Files.setLastModifiedTime(evicted, FileTime.fromMillis(System.currentTimeMillis() - 30_000L));
+        storageService = new DiskCacheStorageService(delegate, root, 12L, Duration.ZERO, meterRegistry);
+        storageService.loadIndex();
+
+        try (FileResourceDTO file = storageService.downloadFile("file1.png", "folder")) {
+            assertEquals(1, file.stream().read());
+            storageService.downloadFile("file3.png", "folder").close();
+            storageService.sweep();
+
+            // dropped from the index, still readable by the stream and by path
+            assertEquals(10L, storageService.getTotalSize());
+            assertArrayEquals(new byte[]{2, 3, 4, 5}, file.stream().readAllBytes());
+            assertArrayEquals(CONTENT, Files.readAllBytes(evicted));
+        }
+        storageService.sweep();
+
+        assertFalse(Files.exists(evicted));
+    }
+
+    @Test
+    void test_Eviction_DeletionDelay() throws IOException {
+        when(delegate.downloadFile(anyString(), anyString()))
+            .thenAnswer(invocation -> remoteFile(CONTENT));
+        storageService = new DiskCacheStorageService(delegate, root, 12L, Duration.ofMinutes(1), meterRegistry);
+        storageService.loadIndex();
+        final List<Path> paths = Stream.of("file1.png", "file2.png", "file3.png")
+            .map(name -> storageService.buildPath(name, "folder"))
+            .toList();
+
+        storageService.downloadFile("file1.png", "folder").close();
+        storageService.downloadFile("file2.png", "folder").close();
+        storageService.downloadFile("file3.png", "folder").close();
+        storageService.sweep();
+
+        // no longer read, but possibly about to be sent by path
+        assertEquals(10L, storageService.getTotalSize());
+        assertTrue(paths.stream().allMatch(Files::exists));
+        storageService.deleteRetired();
+        assertEquals(1L, paths.stream().filter(Files::notExists).count());
+    }
+
+    @Test
+    void test_LoadIndex() throws IOException {
+        final Path cached = storageService.buildPath("file.png", "folder");
+        Files.createDirectories(cached.getParent());
+        Files.write(cached, CONTENT);
+        final Path incomplete = cached.resolveSibling("file.png123" + DiskCacheStorageService.TEMP_SUFFIX);
+        Files.write(incomplete, CONTENT);
+
+        storageService = new DiskCacheStorageService(delegate, root, 12L, Duration.ZERO, meterRegistry);
+        storageService.loadIndex();
+
+        assertEquals(5L, storageService.getTotalSize());
+        assertFalse(Files.exists(incomplete));
+        try (FileResourceDTO file = storageService.downloadFile("file.png", "folder")) {
+            assertArrayEquals(CONTENT, file.stream().readAllBytes());
+        }
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void test_BuildPath() {
+        final Path path = storageService.buildPath("file.png", "folder");
+        assertTrue(path.getFileName().toString().endsWith(".png"));
+        assertEquals(root, path.getParent().getParent());
+        assertEquals(path.getFileName().toString().substring(0, 2), path.getParent().getFileName().toString());
+        assertFalse(storageService.buildPath("file.p/g", "folder").getFileName().toString().contains("."));
+    }
+
+    private byte[] readAll(final String fileName) throws IOException {
+        try (FileResourceDTO file = storageService.downloadFile(fileName, "folder")) {
+            return file.stream().readAllBytes();
+        }
+    }
+
+    private static FileResourceDTO remoteFile(final byte[] content) {
+        return new FileResourceDTO("image/png", content.length, new ByteArrayInputStream(content));
+    }
+}
@@ -1,5 +1,7 @@
 package com.ariche.boatapi.service.storage;
 
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterAll;
@@ -81,17 +83,74 @@ class LocalStorageServiceTest {
         FileUtils.deleteQuietly(directory);
     }
 
+    @Test
+    void test_StoreFile_Content() throws IOException {
+        final File directory = new File(storageService.getStorageFolderPath(), "folder2");
+
+        storageService.storeFile("thumbnail.png", "folder2", new byte[]{0,1,2}, MediaType.IMAGE_PNG_VALUE);
+        storageService.storeFile("thumbnail.png", "folder2", new byte[]{3,4}, MediaType.IMAGE_PNG_VALUE);
+
+        assertArrayEquals(new byte[]{3,4}, Files.readAllBytes(new File(directory, "thumbnail.png").toPath()));
+        FileUtils.deleteQuietly(directory);
+    }
+
     @Test
     void test_DownloadFile() throws IOException {
         final File temp = new File("samples", "test.jpeg");
         temp.createNewFile();
 
-        final FileResourceDTO res = storageService.downloadFile("test.jpeg", "");
-        assertEquals(MediaType.IMAGE_JPEG_VALUE, res.mimeType());
+        try (final FileResourceDTO res = storageService.downloadFile("test.jpeg", "")) {
+            assertEquals(MediaType.IMAGE_JPEG_VALUE, res.mimeType());
+            assertEquals(0L, res.contentLength());
+            assertNotNull(res.stream());
+            assertEquals(temp.toPath(), res.path());
+        }
 
         FileUtils.deleteQuietly(temp);
     }
 
+    @Test
+    void test_DownloadFileRange() throws IOException {
+        final File temp = new File("samples/folder5", "test5.jpeg");
+        Files.createDirectories(temp.getParentFile().toPath());
+        Files.write(temp.toPath(), new byte[]{0, 1, 2, 3, 4, 5});
+
+        try (final FileResourceDTO res = storageService.downloadFileRange("test5.jpeg", "folder5", 2L, 4L)) {
+            assertEquals(MediaType.IMAGE_JPEG_VALUE, res.mimeType());
+            assertEquals(3L, res.contentLength());
+            assertArrayEquals(new byte[]{2, 3, 4}, res.stream().readAllBytes());
+        }
+
+        FileUtils.deleteQuietly(temp.getParentFile());
+    }
+
+    @Test
+    void test_DownloadFileRange_FileNotFoundException() {
+        final StorageException exception = assertThrows(StorageException.class,
+            () -> storageService.downloadFileRange("test.jpeg", "", 0L, 2L));
+        assertEquals(EStorageError.FILE_NOT_FOUND, exception.getError());
+    }
+
+    @Test
+    void test_GetFileMetadata() throws IOException {
+        final File temp = new File("samples/folder6", "test6.jpeg");
+        Files.createDirectories(temp.getParentFile().toPath());
+        Files.write(temp.toPath(), new byte[]{0, 1, 2, 3});
+
+        final FileMetadataDTO res = storageService.getFileMetadata("test6.jpeg", "folder6");
+        assertEquals(MediaType.IMAGE_JPEG_VALUE, res.mimeType());
+        assertEquals(4L, res.contentLength());
+
+        FileUtils.deleteQuietly(temp.getParentFile());
+    }
+
+    @Test
+    void test_GetFileMetadata_FileNotFoundException() {
+        final StorageException exception = assertThrows(StorageException.class,
+            () -> storageService.getFileMetadata("test.jpeg", ""));
+        assertEquals(EStorageError.FILE_NOT_FOUND, exception.getError());
+    }
+
     @Test
     void test_DownloadFile_FileNotFoundException() {
         assertThrows(StorageException.class,
@@ -134,6 +193,17 @@ class LocalStorageServiceTest {
         assertDoesNotThrow(() -> storageService.deleteFile("name", "folder"));
     }
 
+    @Test
+    void test_DeleteFolder() throws IOException {
+        final File directory = new File(storageService.getStorageFolderPath(), "folder3");
+        Files.createDirectories(directory.toPath());
+        new File(directory, "file").createNewFile();
+
+        assertDoesNotThrow(() -> storageService.deleteFolder("folder3"));
+        assertFalse(directory.exists());
+        assertDoesNotThrow(() -> storageService.deleteFolder("folder3"));
+    }
+
     @Test
     void test_CreateStorageFolder() {
         final File test = new File("samples");
@@ -2,30 +2,42 @@ package com.ariche.boatapi.service.storage.dto;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 class FileResourceDTOTest {
 
-    private static final FileResourceDTO FILE_RESOURCE =  new FileResourceDTO("test", new byte[]{1,2,3});
-
     @Test
-    void test_TestEquals() {
-        assertEquals(FILE_RESOURCE, FILE_RESOURCE);
-        assertNotEquals(FILE_RESOURCE, null);
-        assertNotEquals(FILE_RESOURCE, "toto");
-        assertNotEquals(FILE_RESOURCE, new FileResourceDTO("toto", null));
-        assertNotEquals(FILE_RESOURCE, new FileResourceDTO("test", new byte[]{1,2,3,4}));
-        assertEquals(FILE_RESOURCE, new FileResourceDTO("test", new byte[]{1,2,3}));
-
+    void test_Basics() {
+        final InputStream stream = InputStream.nullInputStream();
+        final FileResourceDTO resource = new FileResourceDTO("test", 3L, stream);
+
+        assertEquals("test", resource.mimeType());
+        assertEquals(3L, resource.contentLength());
+        assertSame(stream, resource.stream());
+        assertNull(resource.path());
     }
 
     @Test
-    void test_TestHashCode() {
-        assertEquals(110283216, FILE_RESOURCE.hashCode());
+    void test_Basics_Path() {
+        final Path path = Path.of("samples", "test.jpeg");
+        final FileResourceDTO resource = new FileResourceDTO("test", 3L, InputStream.nullInputStream(), path);
+
+        assertEquals(path, resource.path());
     }
 
     @Test
-    void test_TestToString() {
-        assertEquals("FileResourceDTO{mimeType='test', bytes=[1, 2, 3]}", FILE_RESOURCE.toString());
+    void test_Close() throws IOException {
+        final InputStream stream = mock(InputStream.class);
+        final FileResourceDTO resource = new FileResourceDTO("test", 3L, stream);
+
+        resource.close();
+
+        verify(stream).close();
     }
 }
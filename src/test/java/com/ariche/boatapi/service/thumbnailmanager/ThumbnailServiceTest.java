@@ -0,0 +1,236 @@
+package com.ariche.boatapi.service.thumbnailmanager;
+
+import com.ariche.boatapi.repository.BoatRepository;
+import com.ariche.boatapi.repository.customset.IBoatImgSet;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.outboxmanager.StorageOutboxService;
+import com.ariche.boatapi.service.storage.StorageService;
+import com.ariche.boatapi.service.storage.StorageException;
+import com.ariche.boatapi.service.storage.dto.EStorageError;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ThumbnailServiceTest {
+
+    private static final String ETAG = "0123456789abcdef";
+    private static final long MAX_PIXELS = 10_000_000L;
+
+    @Mock
+    private StorageService storageService;
+    @Mock
+    private BoatRepository boatRepository;
+    @Mock
+    private StorageOutboxService storageOutboxService;
+    @Mock
+    private ExecutorService thumbnailExecutor;
+
+    private ThumbnailService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new ThumbnailService(storageService, boatRepository, storageOutboxService, thumbnailExecutor, MAX_PIXELS);
+    }
+
+    @Test
+    void test_Generate() throws IOException {
+        when(boatRepository.updateImgThumbnailsByBoatId(anyLong(), anyString())).thenReturn(1);
+
+        mockImage("image.png", encode(1200, 600, "png"));
+
+        service.generate(12L, ETAG, "image.png", "blobs/01", MediaType.IMAGE_PNG_VALUE);
+
+        final ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(storageService).storeFile(eq(ETAG + "_320.png"), eq("boat-000000012"), captor.capture(), eq(MediaType.IMAGE_PNG_VALUE));
+        assertEquals(160, ImageIO.read(new ByteArrayInputStream(captor.getValue())).getHeight());
+        verify(storageService).storeFile(eq(ETAG + "_960.png"), eq("boat-000000012"), any(byte[].class), eq(MediaType.IMAGE_PNG_VALUE));
+        verify(storageService).downloadFile("image.png", "blobs/01");
+        verify(boatRepository).updateImgThumbnailsByBoatId(12L, ETAG);
+        verify(storageOutboxService).cancelFileDeletion(ETAG + "_320.png", "boat-000000012");
+        verify(storageOutboxService).cancelFileDeletion(ETAG + "_960.png", "boat-000000012");
+        verify(storageService, never()).deleteFileQuietly(anyString(), anyString());
+    }
+
+    @Test
+    void test_Generate_ImageReplaced() throws IOException {
+        when(boatRepository.updateImgThumbnailsByBoatId(anyLong(), anyString())).thenReturn(0);
+
+        mockImage("image.jpeg", encode(400, 400, "jpeg"));
+
+        service.generate(12L, ETAG, "image.jpeg", "boat-000000012", MediaType.IMAGE_JPEG_VALUE);
+
+        verify(storageService, times(2)).storeFile(anyString(), anyString(), any(byte[].class), anyString());
+        verify(storageService).deleteFileQuietly(ETAG + "_320.jpeg", "boat-000000012");
+        verify(storageService).deleteFileQuietly(ETAG + "_960.jpeg", "boat-000000012");
+    }
+
+    @Test
+    void test_Generate_NotAnImage() {
+        mockImage("image.png", new byte[]{0, 1, 2, 3});
+
+        service.generate(12L, ETAG, "image.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE);
+
+        verify(storageService).downloadFile("image.png", "boat-000000012");
+        verifyNoMoreInteractions(storageService);
+        verifyNoInteractions(boatRepository, storageOutboxService);
+    }
+
+    @Test
+    void test_Generate_TooLarge() throws IOException {
+        // a few kilobytes once encoded
+        mockImage("image.png", encode(5_000, 2_001, "png"));
+
+        service.generate(12L, ETAG, "image.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE);
+
+        verify(storageService).downloadFile("image.png", "boat-000000012");
+        verifyNoMoreInteractions(storageService);
+        verifyNoInteractions(boatRepository, storageOutboxService);
+    }
+
+    @Test
+    void test_Generate_Subsampled() throws IOException {
+        when(boatRepository.updateImgThumbnailsByBoatId(anyLong(), anyString())).thenReturn(1);
+        mockImage("image.png", encode(4_000, 2_000, "png"));
+
+        service.generate(12L, ETAG, "image.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE);
+
+        final ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(storageService).storeFile(eq(ETAG + "_960.png"), eq("boat-000000012"), captor.capture(), eq(MediaType.IMAGE_PNG_VALUE));
+        final BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(captor.getValue()));
+        assertEquals(960, thumbnail.getWidth());
+        assertEquals(480, thumbnail.getHeight());
+        verify(boatRepository).updateImgThumbnailsByBoatId(12L, ETAG);
+    }
+
+    @Test
+    void test_Subsampling() {
+        // at least twice as wide as the largest thumbnail
+        assertEquals(1, ThumbnailService.subsampling(400));
+        assertEquals(1, ThumbnailService.subsampling(3_839));
+        assertEquals(2, ThumbnailService.subsampling(3_840));
+        assertEquals(6, ThumbnailService.subsampling(12_000));
+    }
+
+    @Test
+    void test_Generate_ImageDeleted() {
+        doThrow(new StorageException(EStorageError.FILE_NOT_FOUND, "error"))
+            .when(storageService)
+            .downloadFile(anyString(), anyString());
+
+        assertDoesNotThrow(() -> service.generate(12L, ETAG, "image.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE));
+
+        verify(storageService, never()).storeFile(anyString(), anyString(), any(byte[].class), anyString());
+        verifyNoInteractions(boatRepository);
+    }
+
+    @Test
+    void test_Generate_StorageException() throws IOException {
+        doThrow(new StorageException(EStorageError.TRANSFER_ERROR, "error"))
+            .when(storageService)
+            .storeFile(anyString(), anyString(), any(byte[].class), anyString());
+
+        mockImage("image.png", encode(400, 400, "png"));
+
+        assertDoesNotThrow(() -> service.generate(12L, ETAG, "image.png", "boat-000000012", MediaType.IMAGE_PNG_VALUE));
+
+        verify(boatRepository, never()).updateImgThumbnailsByBoatId(anyLong(), anyString());
+        verify(storageService).deleteFileQuietly(ETAG + "_320.png", "boat-000000012");
+        verify(storageService).deleteFileQuietly(ETAG + "_960.png", "boat-000000012");
+    }
+
+    @Test
+    void test_GenerateAfterCommit_NoTransaction() throws IOException {
+        mockImage(ETAG + ".png", encode(400, 400, "png"));
+        when(boatRepository.updateImgThumbnailsByBoatId(anyLong(), anyString())).thenReturn(1);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Runnable.class).run();
+            return null;
+        }).when(thumbnailExecutor).execute(any(Runnable.class));
+
+        service.generateAfterCommit(12L, ETAG, ETAG + ".png", "blobs/01", MediaType.IMAGE_PNG_VALUE);
+
+        verify(thumbnailExecutor).execute(any(Runnable.class));
+        verify(storageService).downloadFile(ETAG + ".png", "blobs/01");
+        verify(boatRepository).updateImgThumbnailsByBoatId(12L, ETAG);
+    }
+
+    @Test
+    void test_GenerateAfterCommit_Rejected() {
+        doThrow(RejectedExecutionException.class)
+            .when(thumbnailExecutor)
+            .execute(any(Runnable.class));
+
+        assertDoesNotThrow(() -> service.generateAfterCommit(12L, ETAG, ETAG + ".png", "blobs/01", MediaType.IMAGE_PNG_VALUE));
+        // the image is only read by the pool
+        verifyNoInteractions(storageService, boatRepository);
+    }
+
+    @Test
+    void test_DeleteThumbnails() {
+        final IBoatImgSet imgSet = mock(IBoatImgSet.class);
+        when(imgSet.getImgName()).thenReturn("image.PNG");
+
+        service.deleteThumbnails(12L, imgSet);
+        verifyNoInteractions(storageOutboxService);
+
+        when(imgSet.getImgThumbnailsEtag()).thenReturn(ETAG);
+        service.deleteThumbnails(12L, imgSet);
+        verify(storageOutboxService).deleteFileAfterCommit(ETAG + "_320.png", "boat-000000012");
+        verify(storageOutboxService).deleteFileAfterCommit(ETAG + "_960.png", "boat-000000012");
+        verifyNoInteractions(storageService);
+    }
+
+    @Test
+    void test_Resize() throws IOException {
+        final BufferedImage landscape = ImageIO.read(new ByteArrayInputStream(
+            ThumbnailService.resize(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), 320, "jpeg")));
+        assertEquals(320, landscape.getWidth());
+        assertEquals(160, landscape.getHeight());
+
+        final BufferedImage small = ImageIO.read(new ByteArrayInputStream(
+            ThumbnailService.resize(new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB), 320, "png")));
+        assertEquals(100, small.getWidth());
+        assertEquals(50, small.getHeight());
+
+        assertThrows(IOException.class,
+            () -> ThumbnailService.resize(new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB), 320, "unknown"));
+    }
+
+    @Test
+    void test_BuildThumbnailName() {
+        assertEquals(ETAG + "_320.png", ThumbnailService.buildThumbnailName(ETAG, EImageSize.SMALL, "image.PNG"));
+        assertEquals(ETAG + "_960.jpeg", ThumbnailService.buildThumbnailName(ETAG, EImageSize.MEDIUM, ETAG + ".jpeg"));
+        assertEquals(ETAG + "_320", ThumbnailService.buildThumbnailName(ETAG, EImageSize.SMALL, "image"));
+        assertEquals(ETAG + "_320", ThumbnailService.buildThumbnailName(ETAG, EImageSize.SMALL, "image.p/g"));
+    }
+
+    private void mockImage(final String name,
+                           final byte[] content) {
+        when(storageService.downloadFile(eq(name), anyString()))
+            .thenAnswer(invocation -> new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, content.length, new ByteArrayInputStream(content)));
+    }
+
+    private static byte[] encode(final int width,
+                                 final int height,
+                                 final String format) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, outputStream);
+        return outputStream.toByteArray();
+    }
+}
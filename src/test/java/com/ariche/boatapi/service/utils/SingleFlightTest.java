@@ -0,0 +1,126 @@
+package com.ariche.boatapi.service.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    private MeterRegistry meterRegistry;
+    private SingleFlight<String, Integer> singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight<>("test", meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void test_Execute_Coalesced() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final Future<Integer> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            await(release);
+            return calls.incrementAndGet();
+        }));
+        awaitCount("executed", 1.0);
+        final Future<Integer> second = executor.submit(() -> singleFlight.execute("key", calls::incrementAndGet));
+        final Future<Integer> third = executor.submit(() -> singleFlight.execute("key", calls::incrementAndGet));
+        awaitCount("coalesced", 2.0);
+        release.countDown();
+
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+        assertEquals(1, third.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void test_Execute_Sequential() {
+        final AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(3, singleFlight.execute("other", calls::incrementAndGet));
+        assertEquals(3.0, count("executed"));
+        assertEquals(0.0, count("coalesced"));
+    }
+
+    @Test
+    void test_Execute_Failure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Future<Integer> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            await(release);
+            throw new IllegalStateException("Connection refused");
+        }));
+        awaitCount("executed", 1.0);
+        final Future<Integer> second = executor.submit(() -> singleFlight.execute("key", () -> 2));
+        awaitCount("coalesced", 1.0);
+        release.countDown();
+
+        final ExecutionException e1 = assertThrows(ExecutionException.class, first::get);
+        final ExecutionException e2 = assertThrows(ExecutionException.class, second::get);
+        assertInstanceOf(IllegalStateException.class, e1.getCause());
+        assertInstanceOf(IllegalStateException.class, e2.getCause());
+
+        // not remembered
+        assertEquals(3, singleFlight.execute("key", () -> 3));
+    }
+
+    @Test
+    void test_Forget() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Future<Integer> first = executor.submit(() -> singleFlight.execute("key", () -> {
+            await(release);
+            return 1;
+        }));
+        awaitCount("executed", 1.0);
+
+        singleFlight.forget("key");
+        assertEquals(2, singleFlight.execute("key", () -> 2));
+        release.countDown();
+
+        assertEquals(1, first.get());
+        assertEquals(0.0, count("coalesced"));
+    }
+
+    private double count(final String result) {
+        return meterRegistry.get(SingleFlight.CALLS_METRIC).tag("name", "test").tag("result", result).counter().count();
+    }
+
+    private void awaitCount(final String result,
+                            final double expected) throws InterruptedException {
+        while (count(result) < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
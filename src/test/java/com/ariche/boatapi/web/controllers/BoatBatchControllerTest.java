@@ -0,0 +1,102 @@
+package com.ariche.boatapi.web.controllers;
+
+import com.ariche.boatapi.service.boatmanager.BoatService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatBatchDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class BoatBatchControllerTest extends AbstractRestControllerTest {
+
+    @Mock
+    private BoatService boatService;
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_CreateBoats() throws Exception {
+        final List<BoatDTO> boats = List.of(new BoatDTO(null, "name", "desc"), new BoatDTO(null, "name-2", null));
+        when(boatService.createBoats(anyList()))
+            .thenReturn(List.of(new BoatDTO(50L, "name", "desc"), new BoatDTO(51L, "name-2", null)));
+
+        final MvcResult result = super.restMock.perform(post(getEndpoint())
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(new BoatBatchDTO(boats))))
+            .andExpect(status().isCreated())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andReturn();
+
+        final BoatBatchDTO res = readMvcResultAs(result, BoatBatchDTO.class);
+        assertEquals(List.of(50L, 51L), res.boats().stream().map(BoatDTO::id).toList());
+
+        verify(boatService).createBoats(boats);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_CreateBoats_InvalidBoats() throws Exception {
+        final List<BoatDTO> boats = List.of(
+            new BoatDTO(null, "name", "desc"),
+            new BoatDTO(null, "", "desc"),
+            new BoatDTO(null, "name-3", "d".repeat(2_001)));
+
+        super.restMock.perform(post(getEndpoint())
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(new BoatBatchDTO(boats))))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.problems[?(@.error == \"Invalid 'boats[1].name'\")]").exists())
+            .andExpect(jsonPath("$.problems[?(@.error == \"Invalid 'boats[2].description'\")]").exists());
+
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_CreateBoats_InvalidSize() throws Exception {
+        super.restMock.perform(post(getEndpoint())
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(new BoatBatchDTO(Collections.emptyList()))))
+            .andExpect(status().isBadRequest());
+
+        final List<BoatDTO> tooMany = IntStream.rangeClosed(0, BoatBatchDTO.MAX_SIZE)
+            .mapToObj(i -> new BoatDTO(null, "name-" + i, null))
+            .toList();
+        super.restMock.perform(post(getEndpoint())
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(new BoatBatchDTO(tooMany))))
+            .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(boatService);
+    }
+
+    @Override
+    public Object buildResource() {
+        return new BoatBatchController(boatService);
+    }
+
+    @Override
+    public String getEndpoint() {
+        return "/api/v1/boats:batch";
+    }
+
+    @Override
+    protected Map<String, RequestBuilder> getDynamicTests() {
+        return Map.of("createBoats", post(getEndpoint())
+            .contentType(MediaType.APPLICATION_JSON_VALUE)
+            .content(asJsonString(new BoatBatchDTO(List.of(new BoatDTO(null, "name", "desc"))))));
+    }
+}
@@ -1,7 +1,19 @@
 package com.ariche.boatapi.web.controllers;
 
+import com.ariche.boatapi.errors.BoatAPIException;
+import com.ariche.boatapi.errors.EBoatAPIError;
 import com.ariche.boatapi.service.boatmanager.BoatService;
+import com.ariche.boatapi.service.boatmanager.BoatSuggestionService;
+import com.ariche.boatapi.service.boatmanager.dto.BoatCursorPageDTO;
 import com.ariche.boatapi.service.boatmanager.dto.BoatDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatImageDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatLookupDTO;
+import com.ariche.boatapi.service.boatmanager.dto.BoatSuggestionDTO;
+import com.ariche.boatapi.service.boatmanager.dto.EImageSize;
+import com.ariche.boatapi.service.boatmanager.dto.ImageVersionDTO;
+import com.ariche.boatapi.service.exportmanager.BoatExportService;
+import com.ariche.boatapi.service.exportmanager.dto.EExportFormat;
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
 import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
 import org.junit.jupiter.api.Test;
 import org.junit.platform.commons.util.StringUtils;
@@ -11,6 +23,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
@@ -19,14 +32,19 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -37,6 +55,12 @@ class BoatControllerTest extends AbstractRestControllerTest {
 
     @Mock
     private BoatService boatService;
+    @Mock
+    private BoatExportService boatExportService;
+    @Mock
+    private BoatSuggestionService boatSuggestionService;
+
+    private BoatImageDTO boatImage;
 
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
@@ -73,6 +97,213 @@ class BoatControllerTest extends AbstractRestControllerTest {
     }
 
 
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindAllBoats_NoTotal() throws Exception {
+        when(boatService.findBoatsSlice(any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(List.of(new BoatDTO(24L, "name", "desc")), Pageable.ofSize(1), true));
+
+        super.restMock.perform(get(getEndpoint())
+                .param("size", "1")
+                .param("total", "NONE"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.content[0].name").value("name"))
+            .andExpect(jsonPath("$.last").value(false))
+            .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        verify(boatService, never()).findALlBoats(any(Pageable.class));
+        verify(boatService, never()).findBoatsWithEstimatedTotal(any(Pageable.class));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindAllBoats_EstimatedTotal() throws Exception {
+        when(boatService.findBoatsWithEstimatedTotal(any(Pageable.class)))
+            .thenReturn(new PageImpl<>(List.of(new BoatDTO(24L, "name", "desc")), Pageable.ofSize(1), 1_000L));
+
+        super.restMock.perform(get(getEndpoint())
+                .param("size", "1")
+                .param("total", "ESTIMATE"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.totalElements").value(1_000));
+
+        verify(boatService, never()).findALlBoats(any(Pageable.class));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindAllBoats_InvalidTotal() throws Exception {
+        super.restMock.perform(get(getEndpoint())
+                .param("total", "SOME"))
+            .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindAllBoatsAfter() throws Exception {
+        final BoatCursorPageDTO page = new BoatCursorPageDTO(
+            List.of(new BoatDTO(24L, "name", "desc"), new BoatDTO(25L, "name-2", "desc")), "next-cursor");
+        when(boatService.findAllBoatsAfter(any(), anyInt())).thenReturn(page);
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint())
+                .param("after", "cursor")
+                .param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andReturn();
+
+        final BoatCursorPageDTO res = readMvcResultAs(result, BoatCursorPageDTO.class);
+        assertEquals(2, res.content().size());
+        assertEquals("name-2", res.content().get(1).name());
+        assertEquals("next-cursor", res.next());
+
+        verify(boatService).findAllBoatsAfter("cursor", 2);
+        verify(boatService, never()).findALlBoats(any(Pageable.class));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindAllBoatsAfter_FirstPage() throws Exception {
+        when(boatService.findAllBoatsAfter(any(), anyInt())).thenReturn(new BoatCursorPageDTO(List.of(), null));
+
+        super.restMock.perform(get(getEndpoint())
+                .param("after", ""))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.next").doesNotExist());
+
+        final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(boatService).findAllBoatsAfter(captor.capture(), eq(20));
+        assertTrue(StringUtils.isBlank(captor.getValue()));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindBoatsByIds() throws Exception {
+        when(boatService.findBoatsByIds(anyList()))
+            .thenReturn(List.of(new BoatLookupDTO(25L, new BoatDTO(25L, "Belem", "desc")), new BoatLookupDTO(12L, null)));
+
+        super.restMock.perform(get(getEndpoint())
+                .param("ids", "25,12"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$[0].id").value(25))
+            .andExpect(jsonPath("$[0].boat.name").value("Belem"))
+            .andExpect(jsonPath("$[1].id").value(12))
+            .andExpect(jsonPath("$[1].boat").doesNotExist());
+
+        verify(boatService).findBoatsByIds(List.of(25L, 12L));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindBoatsByIds_InvalidId() throws Exception {
+        super.restMock.perform(get(getEndpoint())
+                .param("ids", "25,abc"))
+            .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindBoatsByIds_AndAfter() throws Exception {
+        super.restMock.perform(get(getEndpoint())
+                .param("ids", "25,12")
+                .param("after", "cursor"))
+            .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_SearchBoats() throws Exception {
+        final BoatCursorPageDTO page = new BoatCursorPageDTO(List.of(new BoatDTO(24L, "Belem", "desc")), "next-cursor");
+        when(boatService.searchBoats(anyString(), any(), anyInt())).thenReturn(page);
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/search")
+                .param("q", "belem \"trois mats\"")
+                .param("after", "cursor"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andReturn();
+
+        final BoatCursorPageDTO res = readMvcResultAs(result, BoatCursorPageDTO.class);
+        assertEquals("Belem", res.content().get(0).name());
+        assertEquals("next-cursor", res.next());
+
+        verify(boatService).searchBoats("belem \"trois mats\"", "cursor", 20);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_SearchBoats_MissingQuery() throws Exception {
+        when(boatService.searchBoats(any(), any(), anyInt()))
+            .thenThrow(new BoatAPIException(EBoatAPIError.INVALID_REQUEST, "Query must not be blank"));
+
+        super.restMock.perform(get(getEndpoint() + "/search"))
+            .andExpect(status().isBadRequest());
+
+        verify(boatService).searchBoats(isNull(), isNull(), eq(20));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_SuggestBoats() throws Exception {
+        when(boatSuggestionService.suggestBoats(anyString(), anyInt()))
+            .thenReturn(List.of(new BoatSuggestionDTO(24L, "Belem"), new BoatSuggestionDTO(25L, "Belle Poule")));
+
+        super.restMock.perform(get(getEndpoint() + "/suggestions")
+                .param("q", "bel"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andExpect(jsonPath("$[0].id").value(24))
+            .andExpect(jsonPath("$[1].name").value("Belle Poule"));
+
+        verify(boatSuggestionService).suggestBoats("bel", 10);
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_ExportBoats() throws Exception {
+        when(boatExportService.exportBoats(any(EExportFormat.class), any(OutputStream.class)))
+            .thenAnswer(invocation -> {
+                invocation.getArgument(1, OutputStream.class).write("id;name;description\n24;name;desc\n".getBytes(StandardCharsets.UTF_8));
+                return 1L;
+            });
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/export")
+                .param("format", "CSV"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().string("id;name;description\n24;name;desc\n"));
+
+        assertEquals("text/csv", result.getResponse().getHeader(HttpHeaders.CONTENT_TYPE));
+        assertEquals("attachment; filename=\"boats.csv\"", result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION));
+        verify(boatExportService).exportBoats(eq(EExportFormat.CSV), any(OutputStream.class));
+        verifyNoInteractions(boatService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_ExportBoats_DefaultFormat() throws Exception {
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/export"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk());
+
+        assertEquals("application/x-ndjson", result.getResponse().getHeader(HttpHeaders.CONTENT_TYPE));
+        verify(boatExportService).exportBoats(eq(EExportFormat.NDJSON), any(OutputStream.class));
+    }
+
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
     void test_CreateBoat() throws Exception {
@@ -123,6 +354,32 @@ class BoatControllerTest extends AbstractRestControllerTest {
         verify(boatService).findBoatById(25L);
     }
 
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindBoatById_ETag() throws Exception {
+        final BoatDTO boat = new BoatDTO(25L, "name", "desc", null, 3L);
+        when(boatService.findBoatById(anyLong())).thenReturn(Optional.of(boat));
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+            .andReturn();
+
+        assertFalse(result.getResponse().getContentAsString().contains("version"));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindBoatById_NotModified() throws Exception {
+        final BoatDTO boat = new BoatDTO(25L, "name", "desc", null, 3L);
+        when(boatService.findBoatById(anyLong())).thenReturn(Optional.of(boat));
+
+        super.restMock.perform(get(getEndpoint() + "/25")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+    }
+
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
     void test_FindBoatById_NotFound() throws Exception {
@@ -159,13 +416,14 @@ class BoatControllerTest extends AbstractRestControllerTest {
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
     void test_DownloadBoatImage_NotFound() throws Exception {
-        when(boatService.downloadImageForBoat(anyLong()))
+        when(boatService.findImageForBoat(anyLong(), any(EImageSize.class)))
             .thenReturn(Optional.empty());
 
         super.restMock.perform(get(getEndpoint() + "/25/image"))
             .andExpect(status().isNotFound());
 
-        verify(boatService).downloadImageForBoat(25L);
+        verify(boatService).findImageForBoat(25L, EImageSize.ORIGINAL);
+        verify(boatService, never()).downloadImage(any(BoatImageDTO.class));
     }
 
     @Test
@@ -173,18 +431,26 @@ class BoatControllerTest extends AbstractRestControllerTest {
     void test_DownloadBoatImage() throws Exception {
         final InputStream stream = new ClassPathResource("/samples/boat.jpeg").getInputStream();
 
-        when(boatService.downloadImageForBoat(anyLong()))
-            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, stream.readAllBytes())));
+        final byte[] bytes = stream.readAllBytes();
+
+        mockImage(null);
+        when(boatService.downloadImage(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, bytes.length, new ByteArrayInputStream(bytes))));
 
         final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image"))
-            .andExpect(status().isOk())
+            .andExpect(request().asyncStarted())
             .andReturn();
 
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(bytes));
+
         final String contentType = result.getResponse().getHeader(HttpHeaders.CONTENT_TYPE);
         assertTrue(StringUtils.isNotBlank(contentType));
         assertEquals(MediaType.IMAGE_JPEG_VALUE, contentType);
+        assertEquals(String.valueOf(bytes.length), result.getResponse().getHeader(HttpHeaders.CONTENT_LENGTH));
 
-        verify(boatService).downloadImageForBoat(25L);
+        verify(boatService).downloadImage(boatImage);
     }
 
     @Test
@@ -192,25 +458,153 @@ class BoatControllerTest extends AbstractRestControllerTest {
     void test_DownloadBoatImage_UnknownMimeType() throws Exception {
         final InputStream stream = new ClassPathResource("/samples/boat.jpeg").getInputStream();
 
-        when(boatService.downloadImageForBoat(anyLong()))
-            .thenReturn(Optional.of(new FileResourceDTO(null, stream.readAllBytes())));
+        mockImage(null);
+        when(boatService.downloadImage(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileResourceDTO(null, -1L, stream)));
 
         final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image"))
-            .andExpect(status().isOk())
+            .andExpect(request().asyncStarted())
             .andReturn();
 
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk());
+
         final String contentType = result.getResponse().getHeader(HttpHeaders.CONTENT_TYPE);
         assertTrue(StringUtils.isNotBlank(contentType));
         assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, contentType);
 
-        verify(boatService).downloadImageForBoat(25L);
+        verify(boatService).downloadImage(boatImage);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_NotModified() throws Exception {
+        mockImage(new ImageVersionDTO("abcd", Instant.parse("2023-07-25T11:22:08Z")));
+
+        super.restMock.perform(get(getEndpoint() + "/25/image")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"abcd\""))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"abcd\""));
+
+        verify(boatService, never()).downloadImage(any(BoatImageDTO.class));
+        verify(boatService, never()).findImageMetadata(any(BoatImageDTO.class));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_Modified() throws Exception {
+        mockImage(new ImageVersionDTO("abcd", Instant.parse("2023-07-25T11:22:08Z")));
+        when(boatService.downloadImage(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 3L, new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"old\""))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"abcd\""))
+            .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Tue, 25 Jul 2023 11:22:08 GMT"))
+            .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_IfRangeOutdated() throws Exception {
+        mockImage(new ImageVersionDTO("abcd", null));
+        when(boatService.downloadImage(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 3L, new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image")
+                .header(HttpHeaders.RANGE, "bytes=1-")
+                .header(HttpHeaders.IF_RANGE, "\"old\""))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        verify(boatService, never()).downloadImageRange(any(BoatImageDTO.class), anyLong(), anyLong());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_Range() throws Exception {
+        mockImage(null);
+        when(boatService.findImageMetadata(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileMetadataDTO(MediaType.IMAGE_JPEG_VALUE, 100L)));
+        when(boatService.downloadImageRange(any(BoatImageDTO.class), anyLong(), anyLong()))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 10L, new ByteArrayInputStream(new byte[10]))));
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image")
+                .header(HttpHeaders.RANGE, "bytes=90-"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 90-99/100"))
+            .andExpect(content().bytes(new byte[10]));
+
+        // the row is read once, for the metadata and the range
+        verify(boatService, times(1)).findImageForBoat(25L, EImageSize.ORIGINAL);
+        verify(boatService).downloadImageRange(boatImage, 90L, 99L);
+        verify(boatService, never()).downloadImage(any(BoatImageDTO.class));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_RangeNotSatisfiable() throws Exception {
+        mockImage(null);
+        when(boatService.findImageMetadata(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileMetadataDTO(MediaType.IMAGE_JPEG_VALUE, 100L)));
+
+        super.restMock.perform(get(getEndpoint() + "/25/image")
+                .header(HttpHeaders.RANGE, "bytes=200-"))
+            .andExpect(status().isRequestedRangeNotSatisfiable())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"));
+
+        verify(boatService, never()).downloadImageRange(any(BoatImageDTO.class), anyLong(), anyLong());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_Thumbnail() throws Exception {
+        mockImage(new ImageVersionDTO("abcd-320", null));
+        when(boatService.downloadImage(any(BoatImageDTO.class)))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_JPEG_VALUE, 3L, new ByteArrayInputStream(new byte[]{1, 2, 3}))));
+
+        final MvcResult result = super.restMock.perform(get(getEndpoint() + "/25/image")
+                .param("size", "SMALL"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        super.restMock.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"abcd-320\""))
+            .andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+        verify(boatService).findImageForBoat(25L, EImageSize.SMALL);
+        verify(boatService).downloadImage(boatImage);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_DownloadBoatImage_InvalidSize() throws Exception {
+        super.restMock.perform(get(getEndpoint() + "/25/image")
+                .param("size", "HUGE"))
+            .andExpect(status().isBadRequest());
+
+        verify(boatService, never()).downloadImage(any(BoatImageDTO.class));
     }
 
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
     void test_UpdateBoatById() throws Exception {
         final BoatDTO boat = new BoatDTO(25L, "name", "desc");
-        when(boatService.updateBoat(anyLong(), any(BoatDTO.class)))
+        when(boatService.updateBoat(anyLong(), any(BoatDTO.class), any()))
             .thenReturn(boat);
 
         final MvcResult result = super.restMock.perform(put(getEndpoint() + "/25")
@@ -220,7 +614,7 @@ class BoatControllerTest extends AbstractRestControllerTest {
             .andReturn();
 
         final ArgumentCaptor<BoatDTO> captor = ArgumentCaptor.forClass(BoatDTO.class);
-        verify(boatService).updateBoat(eq(25L), captor.capture());
+        verify(boatService).updateBoat(eq(25L), captor.capture(), isNull());
 
         assertEquals(25L, captor.getValue().id());
         assertEquals("name", captor.getValue().name());
@@ -232,6 +626,51 @@ class BoatControllerTest extends AbstractRestControllerTest {
         assertEquals("desc", res.description());
     }
 
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_UpdateBoatById_IfMatch() throws Exception {
+        final BoatDTO boat = new BoatDTO(25L, "name", "desc");
+        when(boatService.updateBoat(anyLong(), any(BoatDTO.class), any()))
+            .thenReturn(new BoatDTO(25L, "name", "desc", null, 4L));
+
+        super.restMock.perform(put(getEndpoint() + "/25")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(boat)))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+        verify(boatService).updateBoat(eq(25L), any(BoatDTO.class), eq(3L));
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_UpdateBoatById_UpdatedMeanwhile() throws Exception {
+        final BoatDTO boat = new BoatDTO(25L, "name", "desc");
+        when(boatService.updateBoat(anyLong(), any(BoatDTO.class), any()))
+            .thenThrow(new BoatAPIException(EBoatAPIError.PRECONDITION_FAILED_ERROR, "Boat updated meanwhile"));
+
+        super.restMock.perform(put(getEndpoint() + "/25")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(boat)))
+            .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_UpdateBoatById_InvalidIfMatch() throws Exception {
+        final BoatDTO boat = new BoatDTO(25L, "name", "desc");
+
+        super.restMock.perform(put(getEndpoint() + "/25")
+                .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content(asJsonString(boat)))
+            .andExpect(status().isBadRequest());
+
+        verify(boatService, never()).updateBoat(anyLong(), any(BoatDTO.class), any());
+    }
+
     @Test
     @WithMockUser(authorities = "ROLE_ADMIN")
     void test_DeleteBoatById() throws Exception {
@@ -247,7 +686,13 @@ class BoatControllerTest extends AbstractRestControllerTest {
 
     @Override
     public Object buildResource() {
-        return new BoatController(boatService);
+        return new BoatController(boatService, boatExportService, boatSuggestionService);
+    }
+
+    private void mockImage(final ImageVersionDTO version) {
+        boatImage = new BoatImageDTO("image.jpeg", "boat-000000025", version);
+        when(boatService.findImageForBoat(anyLong(), any(EImageSize.class)))
+            .thenReturn(Optional.of(boatImage));
     }
 
     @Override
@@ -261,6 +706,10 @@ class BoatControllerTest extends AbstractRestControllerTest {
 
         final Map<String, RequestBuilder> map = new HashMap<>();
         map.put("findAllBoats", get(getEndpoint()));
+        map.put("findBoatsByIds", get(getEndpoint()).param("ids", "25"));
+        map.put("searchBoats", get(getEndpoint() + "/search").param("q", "belem"));
+        map.put("suggestBoats", get(getEndpoint() + "/suggestions").param("q", "belem"));
+        map.put("exportBoats", get(getEndpoint() + "/export"));
         map.put("createBoat", post(getEndpoint())
             .contentType(MediaType.APPLICATION_JSON_VALUE)
             .content(asJsonString(boat)));
@@ -0,0 +1,122 @@
+package com.ariche.boatapi.web.controllers;
+
+import com.ariche.boatapi.service.importmanager.BoatImportService;
+import com.ariche.boatapi.service.importmanager.dto.BoatImportDTO;
+import com.ariche.boatapi.service.importmanager.dto.EImportStatus;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class BoatImportControllerTest extends AbstractRestControllerTest {
+
+    private static final String CSV = "name;description\nTitanic;Unsinkable\n";
+
+    @Mock
+    private BoatImportService boatImportService;
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_ImportBoats() throws Exception {
+        final String[] uploaded = new String[1];
+        when(boatImportService.submitImport(any(InputStream.class))).thenAnswer(invocation -> {
+            uploaded[0] = readAll(invocation.getArgument(0));
+            return buildImport(EImportStatus.PENDING);
+        });
+
+        final MvcResult result = super.restMock.perform(post("/api/v1/boats:import")
+                .contentType(BoatImportController.TEXT_CSV_VALUE)
+                .content(CSV))
+            .andExpect(status().isAccepted())
+            .andExpect(header().exists(HttpHeaders.LOCATION))
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+            .andReturn();
+
+        assertTrue(result.getResponse().getHeader(HttpHeaders.LOCATION).endsWith("/api/v1/boats/imports/7"));
+        assertEquals(EImportStatus.PENDING, readMvcResultAs(result, BoatImportDTO.class).status());
+        assertEquals(CSV, uploaded[0]);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_ImportBoats_WrongContentType() throws Exception {
+        super.restMock.perform(post("/api/v1/boats:import")
+                .contentType(MediaType.APPLICATION_JSON_VALUE)
+                .content("{}"))
+            .andExpect(status().isUnsupportedMediaType());
+
+        verifyNoInteractions(boatImportService);
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindImportById() throws Exception {
+        when(boatImportService.findImportById(anyLong())).thenReturn(Optional.of(buildImport(EImportStatus.VALIDATING)));
+
+        super.restMock.perform(get(getEndpoint() + "/7"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("VALIDATING"))
+            .andExpect(jsonPath("$.copiedRows").value(1));
+
+        final ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+        verify(boatImportService).findImportById(captor.capture());
+        assertEquals(7L, captor.getValue());
+    }
+
+    @Test
+    @WithMockUser(authorities = "ROLE_ADMIN")
+    void test_FindImportById_NotFound() throws Exception {
+        when(boatImportService.findImportById(anyLong())).thenReturn(Optional.empty());
+
+        super.restMock.perform(get(getEndpoint() + "/7"))
+            .andExpect(status().isNotFound());
+    }
+
+    private static BoatImportDTO buildImport(final EImportStatus status) {
+        final Long copiedRows = status == EImportStatus.PENDING ? null : 1L;
+        return new BoatImportDTO(7L, status, (long) CSV.length(), copiedRows, null, null, null, Instant.now(), Instant.now());
+    }
+
+    private static String readAll(final InputStream inputStream) throws IOException {
+        return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object buildResource() {
+        return new BoatImportController(boatImportService);
+    }
+
+    @Override
+    public String getEndpoint() {
+        return "/api/v1/boats/imports";
+    }
+
+    @Override
+    protected Map<String, RequestBuilder> getDynamicTests() {
+        return Map.of(
+            "importBoats", post("/api/v1/boats:import")
+                .contentType(BoatImportController.TEXT_CSV_VALUE)
+                .content(CSV),
+            "findImportById", get(getEndpoint() + "/7"));
+    }
+}
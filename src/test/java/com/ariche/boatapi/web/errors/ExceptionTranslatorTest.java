@@ -26,6 +26,7 @@ import org.springframework.transaction.TransactionSystemException;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.util.Collections;
@@ -88,6 +89,19 @@ class ExceptionTranslatorTest {
         assertEquals("Invalid 'description'", errors.get(1).error());
     }
 
+    @Test
+    void test_HandleMethodArgumentTypeMismatchException() {
+        final MethodArgumentTypeMismatchException exception = mock(MethodArgumentTypeMismatchException.class);
+        when(exception.getName()).thenReturn("size");
+
+        final ResponseEntity<BoatAPIError> res = translator.handleMethodArgumentTypeMismatchException(exception);
+        assertEquals(HttpStatus.BAD_REQUEST, res.getStatusCode());
+
+        assertNotNull(res.getBody());
+        assertEquals("Invalid data", res.getBody().category());
+        assertEquals("Invalid 'size'", res.getBody().problems().get(0).error());
+    }
+
     @Test
     void test_HandleTransactionSystemException_ConstraintViolationException() {
         final ConstraintViolation<String> constraint = mock(ConstraintViolation.class);
@@ -0,0 +1,247 @@
+package com.ariche.boatapi.web.utils;
+
+import com.ariche.boatapi.service.storage.dto.FileMetadataDTO;
+import com.ariche.boatapi.service.storage.dto.FileResourceDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FileResponseUtilsTest {
+
+    private static final byte[] CONTENT = new byte[]{0, 1, 2, 3, 4, 5};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test_WrapFile_Stream() throws IOException {
+        final InputStream stream = spy(new ByteArrayInputStream(CONTENT));
+        final FileResourceDTO file = new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length, stream);
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFile(file, new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.IMAGE_PNG_VALUE, response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertEquals(CONTENT.length, response.getHeaders().getContentLength());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertNotNull(response.getBody());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(CONTENT, out.toByteArray());
+        verify(stream).close();
+    }
+
+    @Test
+    void test_WrapFile_UnknownLength() {
+        final FileResourceDTO file = new FileResourceDTO(null, -1L, InputStream.nullInputStream());
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFile(file, new MockHttpServletRequest());
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_LENGTH));
+    }
+
+    @Test
+    void test_WrapFile_Sendfile() throws IOException {
+        final Path path = Files.write(tempDir.resolve("boat.png"), CONTENT);
+        final InputStream stream = mock(InputStream.class);
+        final FileResourceDTO file = new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length, stream, path);
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(FileResponseUtils.SENDFILE_SUPPORT_ATTR, Boolean.TRUE);
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFile(file, request);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(CONTENT.length, response.getHeaders().getContentLength());
+        assertNull(response.getBody());
+
+        assertEquals(path.toAbsolutePath().toString(), request.getAttribute(FileResponseUtils.SENDFILE_FILENAME_ATTR));
+        assertEquals(0L, request.getAttribute(FileResponseUtils.SENDFILE_START_ATTR));
+        assertEquals((long) CONTENT.length, request.getAttribute(FileResponseUtils.SENDFILE_END_ATTR));
+        verify(stream).close();
+    }
+
+    @Test
+    void test_WrapFile_TransferTo() throws IOException {
+        final Path path = Files.write(tempDir.resolve("boat.png"), CONTENT);
+        final InputStream stream = mock(InputStream.class);
+        final FileResourceDTO file = new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length, stream, path);
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFile(file, new MockHttpServletRequest());
+        assertNotNull(response.getBody());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(CONTENT, out.toByteArray());
+        verify(stream, never()).read(any(byte[].class), anyInt(), anyInt());
+        verify(stream).close();
+    }
+
+    @Test
+    void test_ParseRanges() {
+        assertTrue(FileResponseUtils.parseRanges(null, null, "etag", null).isEmpty());
+        assertTrue(FileResponseUtils.parseRanges("bytes=0-10", "\"other\"", "etag", null).isEmpty());
+        assertTrue(FileResponseUtils.parseRanges("chars=0-10", null, "etag", null).isEmpty());
+        assertEquals(1, FileResponseUtils.parseRanges("bytes=0-10", "\"etag\"", "etag", null).size());
+
+        final List<HttpRange> ranges = FileResponseUtils.parseRanges("bytes=0-1, 4-", null, null, null);
+        assertEquals(2, ranges.size());
+        assertEquals(0L, ranges.get(0).getRangeStart(CONTENT.length));
+        assertEquals(CONTENT.length - 1L, ranges.get(1).getRangeEnd(CONTENT.length));
+    }
+
+    @Test
+    void test_MatchesIfRange() {
+        final Instant lastModified = Instant.parse("2023-07-25T11:22:08.123Z");
+        assertTrue(FileResponseUtils.matchesIfRange(null, null, null));
+        assertTrue(FileResponseUtils.matchesIfRange("\"etag\"", "etag", lastModified));
+        assertFalse(FileResponseUtils.matchesIfRange("\"other\"", "etag", lastModified));
+        assertFalse(FileResponseUtils.matchesIfRange("\"etag\"", null, lastModified));
+        assertFalse(FileResponseUtils.matchesIfRange("W/\"etag\"", "etag", lastModified));
+        assertTrue(FileResponseUtils.matchesIfRange("Tue, 25 Jul 2023 11:22:08 GMT", "etag", lastModified));
+        assertFalse(FileResponseUtils.matchesIfRange("Tue, 25 Jul 2023 11:22:09 GMT", "etag", lastModified));
+        assertFalse(FileResponseUtils.matchesIfRange("Tue, 25 Jul 2023 11:22:08 GMT", "etag", null));
+        assertFalse(FileResponseUtils.matchesIfRange("yesterday", "etag", lastModified));
+    }
+
+    @Test
+    void test_CheckNotModified_ETag() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/image");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"etag\"");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(FileResponseUtils.checkNotModified(new ServletWebRequest(request, response), "etag", null));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+        assertEquals("\"etag\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void test_CheckNotModified_LastModified() {
+        final Instant lastModified = Instant.parse("2023-07-25T11:22:08Z");
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/image");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "Tue, 25 Jul 2023 11:22:08 GMT");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(FileResponseUtils.checkNotModified(new ServletWebRequest(request, response), "etag", lastModified));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+    }
+
+    @Test
+    void test_CheckNotModified_Modified() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/image");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(FileResponseUtils.checkNotModified(new ServletWebRequest(request, response), "etag", Instant.EPOCH));
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals("\"etag\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void test_WrapFileRanges_Single() throws IOException {
+        final FileResponseUtils.RangeReader reader = mock(FileResponseUtils.RangeReader.class);
+        when(reader.read(anyLong(), anyLong()))
+            .thenReturn(Optional.of(new FileResourceDTO(MediaType.IMAGE_PNG_VALUE, 2L, new ByteArrayInputStream(new byte[]{4, 5}))));
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFileRanges(
+            HttpRange.parseRanges("bytes=-2"), new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length), reader);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 4-5/6", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(2L, response.getHeaders().getContentLength());
+        assertEquals(MediaType.IMAGE_PNG_VALUE, response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertNotNull(response.getBody());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        assertArrayEquals(new byte[]{4, 5}, out.toByteArray());
+        verify(reader).read(4L, 5L);
+    }
+
+    @Test
+    void test_WrapFileRanges_Multiple() throws IOException {
+        final FileResponseUtils.RangeReader reader = mock(FileResponseUtils.RangeReader.class);
+        when(reader.read(0L, 1L))
+            .thenReturn(Optional.of(new FileResourceDTO(null, 2L, new ByteArrayInputStream(new byte[]{'a', 'b'}))));
+        when(reader.read(4L, 5L))
+            .thenReturn(Optional.of(new FileResourceDTO(null, 2L, new ByteArrayInputStream(new byte[]{'e', 'f'}))));
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFileRanges(
+            HttpRange.parseRanges("bytes=0-1,4-5"), new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length), reader);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        final String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        assertNotNull(contentType);
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        assertNotNull(response.getBody());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        final String body = out.toString(StandardCharsets.US_ASCII);
+        assertTrue(body.contains("Content-Range: bytes 0-1/6\r\n\r\nab"));
+        assertTrue(body.contains("Content-Range: bytes 4-5/6\r\n\r\nef"));
+        assertTrue(body.endsWith("--\r\n"));
+    }
+
+    @Test
+    void test_WrapFileRanges_Unsatisfiable() {
+        final FileResponseUtils.RangeReader reader = mock(FileResponseUtils.RangeReader.class);
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFileRanges(
+            HttpRange.parseRanges("bytes=10-20"), new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length), reader);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */6", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        verify(reader, never()).read(anyLong(), anyLong());
+    }
+
+    @Test
+    void test_WrapFileRanges_Overlapping() {
+        final FileResponseUtils.RangeReader reader = mock(FileResponseUtils.RangeReader.class);
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFileRanges(
+            HttpRange.parseRanges("bytes=0-,0-,0-"), new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length), reader);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        verify(reader, never()).read(anyLong(), anyLong());
+    }
+
+    @Test
+    void test_WrapFileRanges_NotFound() {
+        final FileResponseUtils.RangeReader reader = mock(FileResponseUtils.RangeReader.class);
+        when(reader.read(anyLong(), anyLong())).thenReturn(Optional.empty());
+
+        final ResponseEntity<StreamingResponseBody> response = FileResponseUtils.wrapFileRanges(
+            HttpRange.parseRanges("bytes=0-1"), new FileMetadataDTO(MediaType.IMAGE_PNG_VALUE, CONTENT.length), reader);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void test_CloseQuietly() throws IOException {
+        final InputStream stream = mock(InputStream.class);
+        doThrow(IOException.class).when(stream).close();
+
+        assertDoesNotThrow(() -> FileResponseUtils.closeQuietly(new FileResourceDTO(null, 0L, stream)));
+    }
+}
@@ -26,4 +26,28 @@ class ResponseUtilsTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
     }
 
+    @Test
+    void test_WrapOrNotFound_ETag() {
+        final ResponseEntity<BoatDTO> response = ResponseUtils
+            .wrapOrNotFound(Optional.of(new BoatDTO(23L, "name", "toto", null, 4L)), BoatDTO::version);
+        assertTrue(response.hasBody());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"4\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void test_WrapOrNotFound_NoETag() {
+        final ResponseEntity<BoatDTO> response = ResponseUtils
+            .wrapOrNotFound(Optional.of(new BoatDTO(23L, "name", "toto")), BoatDTO::version);
+        assertTrue(response.hasBody());
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void test_WrapOrNotFound_ETag_NotFound() {
+        final ResponseEntity<BoatDTO> response = ResponseUtils.wrapOrNotFound(Optional.empty(), BoatDTO::version);
+        assertFalse(response.hasBody());
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
 }